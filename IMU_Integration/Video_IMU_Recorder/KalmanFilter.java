@@ -1,149 +0,0 @@
-import java.util.ArrayList;
-
-public class KalmanFilter {
-    private double x;        // 当前状态估计
-    private double P;        // 当前估计误差协方差
-    private double Q;        // 过程噪声协方差
-    private double R;        // 测量噪声协方差
-    
-    public KalmanFilter(double initialX, double initialP, double processNoise, double measurementNoise) {
-        x = initialX;
-        P = initialP;
-        Q = processNoise;
-        R = measurementNoise;
-    }
-
-    public double predict() {
-        // predict next state estimate 预测下一个状态估计
-        x = x;
-        P = P + Q;
-        return x;
-    }
-
-    public double update(double measurement) {
-        //  update the estimate based on measurements 基于测量更新状态估计
-        double K = P / (P + R);
-        x = x + K * (measurement - x);
-        P = (1 - K) * P;
-        return x;
-    }
-    
-    
-    
-    private double[] highpassFilter(double[] dim_quan, int a, double avg_dT) {
-    	double[] res;
-    	
-        // initialize KalmanFilter  (初始化卡尔曼滤波器) 
-        double initialX = 0.0;
-        double initialP = 1.0;
-        double processNoise = 0.01;
-        double measurementNoise = 0.1;
-        
-        KalmanFilter kalmanFilter = new KalmanFilter(initialX, initialP, processNoise, measurementNoise);
-        
-        // 模拟测量和滤波器更新
-        double[] measurements = dim_quan;
-        for (double measurement : measurements) {
-            // 预测下一个状态
-            kalmanFilter.predict();
-
-            // 基于测量更新状态
-            double filteredValue = kalmanFilter.update(measurement);
-
-            System.out.println("Measurement: " + measurement + " Filtered Value: " + filteredValue);
-        }
-    	
-    	return res;
-    }
-
-    
-    private void filterQuantity(ArrayList<double[]> quantity, double avg_dT) {
-    	
-    	if (avg_dT != 0) {
-            Butterworth filter = new Butterworth(1 / avg_dT);
-            for (int dim = 0; dim < quantity.get(0).length; ++dim) {
-                int final_dim = dim;
-                double[] dim_quantity = quantity.stream().mapToDouble(velo -> velo[final_dim]).toArray();
-                        
-                double[] filtered_dim = filter.highPassFilter(dim_quantity, 1, 0.2 * avg_dT);
-                for (int index = 0; index < quantity.size(); ++index)
-                    quantity.get(index)[final_dim] = filtered_dim[index];
-            }
-        }
-    }
-        
-}
-
-//请注意，此示例使用了Apache Commons Math库来进行矩阵和向量操作，并创建了一个简单的
-//三维卡尔曼滤波器。您需要根据您的实际应用程序替换示例中的初始状态和测量数据。确保您理解卡尔曼滤波的原理，
-//并根据您的具体需求进行适当的参数调整和数据输入。
-//import org.apache.commons.math3.filter.DefaultProcessModel;
-//import org.apache.commons.math3.filter.DefaultMeasurementModel;
-//import org.apache.commons.math3.filter.KalmanFilter;
-//import org.apache.commons.math3.filter.MeasurementModel;
-//import org.apache.commons.math3.filter.ProcessModel;
-//import org.apache.commons.math3.linear.ArrayRealVector;
-//import org.apache.commons.math3.linear.RealMatrix;
-//import org.apache.commons.math3.linear.RealVector;
-//import org.apache.commons.math3.linear.Array2DRowRealMatrix;
-//
-//public class ThreeDKalmanFilter {
-//
-//    public static void main(String[] args) {
-//        // Define the initial state and covariance
-//        RealVector initialState = new ArrayRealVector(new double[]{0, 0, 0}); // Initial state [x, y, z]
-//        RealMatrix initialCovariance = new Array2DRowRealMatrix(new double[][]{
-//            {1, 0, 0},
-//            {0, 1, 0},
-//            {0, 0, 1}
-//        }); // Initial covariance matrix
-//
-//        // Define the process model
-//        RealMatrix transitionMatrix = new Array2DRowRealMatrix(new double[][]{
-//            {1, 0, 0},
-//            {0, 1, 0},
-//            {0, 0, 1}
-//        }); // Transition matrix (identity matrix for constant velocity model)
-//        RealMatrix processNoise = new Array2DRowRealMatrix(new double[][]{
-//            {0.01, 0, 0},
-//            {0, 0.01, 0},
-//            {0, 0, 0.01}
-//        }); // Process noise covariance
-//
-//        ProcessModel processModel = new DefaultProcessModel(transitionMatrix, null, processNoise, initialState, initialCovariance);
-//
-//        // Define the measurement model
-//        RealMatrix measurementMatrix = new Array2DRowRealMatrix(new double[][]{
-//            {1, 0, 0},
-//            {0, 1, 0},
-//            {0, 0, 1}
-//        }); // Measurement matrix (identity matrix for direct measurements)
-//        RealMatrix measurementNoise = new Array2DRowRealMatrix(new double[][]{
-//            {0.1, 0, 0},
-//            {0, 0.1, 0},
-//            {0, 0, 0.1}
-//        }); // Measurement noise covariance
-//
-//        MeasurementModel measurementModel = new DefaultMeasurementModel(measurementMatrix, measurementNoise);
-//
-//        // Create the Kalman filter
-//        KalmanFilter filter = new KalmanFilter(processModel, measurementModel);
-//
-//        // Simulate measurements (replace this with your actual measurement data)
-//        RealVector measurement = new ArrayRealVector(new double[]{1, 2, 3}); // Replace with actual measurements
-//
-//        // Perform filtering
-//        filter.predict();
-//        filter.correct(measurement);
-//
-//        // Get the filtered state estimate
-//        RealVector estimatedState = filter.getStateEstimation();
-//
-//        // Print the estimated state
-//        System.out.println("Estimated State: " + estimatedState);
-//    }
-//}
-
-
-
-
@@ -0,0 +1,90 @@
+package com.nyu.video_imu_recorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/*
+Append-only container storing a whole burst as two files instead of one file per frame
+
+frames.jpegs holds the JPEGs back to back. frames.index starts with <int magic "BIDX"> <int version> followed by one
+20 byte entry per frame: <long timestamp> <long offset into frames.jpegs> <int length> (big-endian).
+
+Each frame gets its own range of the data file so the saver threads write in parallel, and its index entry is only
+appended once the data is durable. After a crash the index therefore never points at missing bytes: opening the
+container again (for reading or writing) ignores a partial trailing entry and frame data that was never indexed.
+*/
+public class BurstContainer implements FrameSink {
+
+    public static final String DATA_NAME = "frames.jpegs";
+    public static final String INDEX_NAME = "frames.index";
+    static final int INDEX_MAGIC = 0x42494458;
+    static final int INDEX_VERSION = 1;
+    static final int INDEX_HEADER_SIZE = 2 * Integer.BYTES;
+    static final int ENTRY_SIZE = 2 * Long.BYTES + Integer.BYTES;
+
+    private final FileChannel data;
+    private final FileChannel index;
+    // Guarded by this
+    private final ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+    private long data_end;
+    private long index_end;
+
+    public BurstContainer(File directory) throws IOException {
+        data = FileChannel.open(new File(directory, DATA_NAME).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        index = FileChannel.open(new File(directory, INDEX_NAME).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (index.size() < INDEX_HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_SIZE).putInt(INDEX_MAGIC).putInt(INDEX_VERSION);
+            header.flip();
+            index.truncate(0);
+            writeFully(index, header, 0);
+            index_end = INDEX_HEADER_SIZE;
+        } else {
+            // Continue an existing container from its last consistent frame
+            BurstContainerReader.Index valid = BurstContainerReader.readIndex(index, data.size());
+            index_end = INDEX_HEADER_SIZE + (long) valid.count * ENTRY_SIZE;
+            data_end = valid.data_end;
+            index.truncate(index_end);
+        }
+        data.truncate(data_end);
+    }
+
+    @Override
+    public void write(long timestamp, ByteBuffer frame) throws IOException {
+        int length = frame.remaining();
+        long offset;
+        synchronized (this) {
+            offset = data_end;
+            data_end += length;
+        }
+        writeFully(data, frame, offset);
+        data.force(false);
+
+        synchronized (this) {
+            entry.clear();
+            entry.putLong(timestamp).putLong(offset).putInt(length).flip();
+            writeFully(index, entry, index_end);
+            index_end += ENTRY_SIZE;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            index.force(true);
+        } finally {
+            data.close();
+            index.close();
+        }
+    }
+}
\ No newline at end of file
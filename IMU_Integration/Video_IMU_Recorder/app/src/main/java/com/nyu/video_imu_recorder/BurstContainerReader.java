@@ -0,0 +1,165 @@
+package com.nyu.video_imu_recorder;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+// Random access to the frames of a BurstContainer by timestamp, loading only the index
+public class BurstContainerReader implements Closeable {
+
+    static final class Index {
+        final long[] timestamps;
+        final long[] offsets;
+        final int[] lengths;
+        final int count;
+        final long data_end;
+
+        private Index(long[] timestamps, long[] offsets, int[] lengths, int count, long data_end) {
+            this.timestamps = timestamps;
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.count = count;
+            this.data_end = data_end;
+        }
+    }
+
+    private final FileChannel data;
+    private final Index index;
+
+    public BurstContainerReader(File directory) throws IOException {
+        data = FileChannel.open(new File(directory, BurstContainer.DATA_NAME).toPath(), StandardOpenOption.READ);
+        try (FileChannel index_channel = FileChannel.open(new File(directory, BurstContainer.INDEX_NAME).toPath(),
+                StandardOpenOption.READ)) {
+            index = readIndex(index_channel, data.size());
+        } catch (IOException exception) {
+            data.close();
+            throw exception;
+        }
+        sortByTimestamp(index);
+    }
+
+    // Reads the leading run of complete entries that point at data actually present in a data file of the given size
+    static Index readIndex(FileChannel index_channel, long data_size) throws IOException {
+        ByteBuffer entries = ByteBuffer.allocate((int) index_channel.size());
+        long position = 0;
+        while (entries.hasRemaining()) {
+            int read = index_channel.read(entries, position);
+            if (read < 0) break;
+            position += read;
+        }
+        entries.flip();
+        if (entries.remaining() < BurstContainer.INDEX_HEADER_SIZE || entries.getInt() != BurstContainer.INDEX_MAGIC) {
+            throw new IOException("Not a burst container index");
+        }
+        int version = entries.getInt();
+        if (version != BurstContainer.INDEX_VERSION) throw new IOException("Unsupported burst container version " + version);
+
+        int capacity = entries.remaining() / BurstContainer.ENTRY_SIZE;
+        long[] timestamps = new long[capacity];
+        long[] offsets = new long[capacity];
+        int[] lengths = new int[capacity];
+        int count = 0;
+        long data_end = 0;
+        while (count < capacity) {
+            long timestamp = entries.getLong();
+            long offset = entries.getLong();
+            int length = entries.getInt();
+            if (offset < 0 || length <= 0 || offset + length > data_size) break;
+            timestamps[count] = timestamp;
+            offsets[count] = offset;
+            lengths[count] = length;
+            data_end = Math.max(data_end, offset + length);
+            ++count;
+        }
+        return new Index(timestamps, offsets, lengths, count, data_end);
+    }
+
+    // Entries are appended in completion order, which is nearly sorted already, so insertion sort is close to linear
+    private static void sortByTimestamp(Index index) {
+        for (int next = 1; next < index.count; ++next) {
+            long timestamp = index.timestamps[next];
+            long offset = index.offsets[next];
+            int length = index.lengths[next];
+            int slot = next;
+            while (slot > 0 && index.timestamps[slot - 1] > timestamp) {
+                index.timestamps[slot] = index.timestamps[slot - 1];
+                index.offsets[slot] = index.offsets[slot - 1];
+                index.lengths[slot] = index.lengths[slot - 1];
+                --slot;
+            }
+            index.timestamps[slot] = timestamp;
+            index.offsets[slot] = offset;
+            index.lengths[slot] = length;
+        }
+    }
+
+    public int size() {
+        return index.count;
+    }
+
+    public long getTimestamp(int frame) {
+        return index.timestamps[frame];
+    }
+
+    public int getLength(int frame) {
+        return index.lengths[frame];
+    }
+
+    // Position of the frame with exactly this timestamp, or -1 if the container has none
+    public int indexOf(long timestamp) {
+        int low = 0, high = index.count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middle_timestamp = index.timestamps[middle];
+            if (middle_timestamp < timestamp) low = middle + 1;
+            else if (middle_timestamp > timestamp) high = middle - 1;
+            else return middle;
+        }
+        return -1;
+    }
+
+    // Reads the frame into the target buffer, which must have getLength(frame) bytes remaining
+    public void read(int frame, ByteBuffer target) throws IOException {
+        long position = index.offsets[frame];
+        int end = target.position() + index.lengths[frame];
+        int limit = target.limit();
+        target.limit(end);
+        try {
+            while (target.hasRemaining()) {
+                int read = data.read(target, position);
+                if (read < 0) throw new IOException("Frame data ends early");
+                position += read;
+            }
+        } finally {
+            target.limit(limit);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        data.close();
+    }
+
+    // Extracts frames into <timestamp>.jpeg files: java BurstContainerReader <container directory> <output directory> [timestamp]
+    public static void main(String[] args) throws IOException {
+        File output_directory = new File(args[1]);
+        try (BurstContainerReader reader = new BurstContainerReader(new File(args[0]))) {
+            int first = 0, last = reader.size() - 1;
+            if (args.length > 2) {
+                first = last = reader.indexOf(Long.parseLong(args[2]));
+                if (first < 0) throw new IllegalArgumentException("No frame with timestamp " + args[2]);
+            }
+            for (int frame = first; frame <= last; ++frame) {
+                ByteBuffer image_buffer = ByteBuffer.allocate(reader.getLength(frame));
+                reader.read(frame, image_buffer);
+                try (FileOutputStream image_output = new FileOutputStream(new File(output_directory, reader.getTimestamp(frame) + ".jpeg"))) {
+                    image_output.write(image_buffer.array());
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
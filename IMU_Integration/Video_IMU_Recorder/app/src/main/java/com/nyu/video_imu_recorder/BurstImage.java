@@ -11,6 +11,8 @@ import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
 import android.hardware.camera2.params.OutputConfiguration;
 import android.hardware.camera2.params.SessionConfiguration;
 import android.media.Image;
@@ -18,9 +20,9 @@ import android.media.ImageReader;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.HandlerThread;
-import android.os.SystemClock;
 import android.util.Log;
 import android.util.Size;
+import android.util.SizeF;
 import android.util.SparseIntArray;
 import android.view.Surface;
 import android.view.SurfaceHolder;
@@ -30,24 +32,74 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
 
+import com.nyu.imu_processing.FrameGate;
+import com.nyu.imu_processing.MotionHistory;
+import com.nyu.imu_processing.SessionMetrics;
+
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.security.SecureRandom;
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 public class BurstImage extends IMUCapture {
     private static final int CAMERA_PERMISSION = new SecureRandom().nextInt(100);
     private static final String CAM = "Camera_configuration";
+    private static final int IMAGE_SAVER_THREADS = 2;
+    private static final int DEFAULT_IMAGE_QUEUE_DEPTH = 8;
+    private static final long IMAGE_SAVER_SHUTDOWN_MS = 5000;
+    // Frame rate the AUTO capture profile steps down for, and how long it measures each size
+    private static final int DEFAULT_TARGET_FPS = 30;
+    private static final long PROBE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /*
+    Frame gating: a frame is skipped unless the device turned by this many rad or changed velocity by this many m/s
+    since the last kept frame (or that frame is older than the gap), and rejected if it is blurred by more pixels
+    */
+    private static final double GATE_MIN_ROTATION = 0.05;
+    private static final double GATE_MIN_VELOCITY_CHANGE = 0.2;
+    private static final double GATE_MAX_BLUR_PIXELS = 2;
+    private static final long GATE_MAX_GAP_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // About ten seconds of samples at 200 Hz
+    private static final int MOTION_HISTORY_CAPACITY = 1 << 11;
+    private static final long DEFAULT_EXPOSURE_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
     private HandlerThread callback_thread;
     private Handler callback_handler;
     private ImageReader image_reader;
     private CameraDevice camera_device;
+    private Surface preview_surface;
+    private boolean imu_recording;
     private File images_directory;
-    private long last_save_time = 0;
+    private CaptureProfile capture_profile;
+    private Size[] output_sizes;
+    // Size of the frames being captured and the one before the last change, owned by the camera callback thread and
+    // only changed once a session at the new size is configured
+    private Size image_size;
+    private Size previous_size;
+    // Only for the AUTO capture profile
+    private ThroughputProbe throughput_probe;
+    private final Nv21Packer nv21_packer = new Nv21Packer();
+    // Where a YUV burst keeps its frames until they are encoded
+    private File raw_directory;
+    // Only when frames are gated: written by the sensor thread, read by the camera callback thread
+    private MotionHistory rotation_history, acceleration_history;
+    /*
+    Null unless gating was asked for and the camera suits it. Set before the IMU recording starts and only read
+    afterwards, also by the sensor thread to decide whether the histories are kept.
+    */
+    private volatile FrameGate frame_gate;
+    // The rest is owned by the camera callback thread
+    // Focal length over sensor width, which times the image width gives the focal length in pixels
+    private double focal_length_ratio;
+    private long exposure_nanos = DEFAULT_EXPOSURE_NANOS;
+    private long gated_frames;
+    // Frames dropped because no pooled buffer was free; the saver counts them among its drops as well
+    private long unbuffered_frames;
+    // Read by the IMU writer thread when it samples the frame metrics
+    private volatile ImageSaver image_saver;
+    // Frames handed to the image reader listener so far, only touched by the camera callback thread
+    private long frame_count;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -56,6 +108,15 @@ public class BurstImage extends IMUCapture {
         Intent intent = getIntent();
         String[] file_names = {intent.getStringExtra("imu_data_name"), intent.getStringExtra("media_name")};
         String back_camera_id = intent.getStringExtra("back_camera_id");
+        String profile = intent.getStringExtra("capture_profile");
+        capture_profile = profile == null ? CaptureProfile.FULL_JPEG : CaptureProfile.valueOf(profile);
+        if (intent.getBooleanExtra("frame_gating", false)) {
+            rotation_history = new MotionHistory(MOTION_HISTORY_CAPACITY);
+            acceleration_history = new MotionHistory(MOTION_HISTORY_CAPACITY);
+        }
+        if (capture_profile == CaptureProfile.AUTO) {
+            throughput_probe = new ThroughputProbe(intent.getIntExtra("target_fps", DEFAULT_TARGET_FPS), PROBE_WINDOW_NANOS);
+        }
 
         // Set up background thread to handle image capturing events
         callback_thread = new HandlerThread("camera_callback_thread");
@@ -86,7 +147,7 @@ public class BurstImage extends IMUCapture {
     protected void onStop() {
         super.onStop();
         broadcast_record_status(BurstImage.class.getName());
-        camera_device.close();
+        if (camera_device != null) camera_device.close();
         stopIMURecording();
         callback_thread.quitSafely();
         try {
@@ -94,6 +155,24 @@ public class BurstImage extends IMUCapture {
         } catch (InterruptedException exception) {
             exception.printStackTrace();
         }
+        // The saver only exists once the camera opened; the permission may have been denied or the activity left before
+        if (image_saver == null) return;
+        try {
+            // No more frames can be handed off once the callback thread is gone; finish writing the queued ones
+            image_saver.shutdown(IMAGE_SAVER_SHUTDOWN_MS);
+            if (raw_directory != null) new DeferredEncoder(raw_directory, image_size, openFrameSink()).start();
+        } catch (InterruptedException | IOException exception) {
+            exception.printStackTrace();
+        }
+        Log.i(CAM, "Capture profile " + capture_profile + ", last frame size " + image_size);
+        if (frame_gate != null) {
+            Log.i(CAM, "Frames kept: " + frame_gate.getKept() + ", skipped as still: " + frame_gate.getStill()
+                    + ", rejected as blurred: " + frame_gate.getBlurred());
+        }
+        Log.i(CAM, "Images saved: " + image_saver.getSaved() + ", dropped: " + image_saver.getDropped() + " (of which "
+                + unbuffered_frames + " for lack of a free buffer), failed: "
+                + image_saver.getFailed() + ", average/max latency to storage (ns): " + image_saver.getAverageLatencyNanos()
+                + "/" + image_saver.getMaxLatencyNanos());
     }
 
     @Override
@@ -119,11 +198,13 @@ public class BurstImage extends IMUCapture {
             }
         }
 
-        // Get the back camera's highest resolution and use it to create the image reader
-        Size[] sizes = camera_manager.getCameraCharacteristics(camera_id)
-                .get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP).getOutputSizes(ImageFormat.JPEG);
-        final Size max_size = Arrays.stream(sizes).max(Comparator.comparing(size -> size.getWidth() * size.getHeight())).orElse(sizes[0]);
-        image_reader = ImageReader.newInstance(max_size.getWidth(), max_size.getHeight(), ImageFormat.JPEG, 2);
+        // Start the image reader at the capture profile's size among the back camera's sizes for its format
+        CameraCharacteristics characteristics = camera_manager.getCameraCharacteristics(camera_id);
+        output_sizes = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP).getOutputSizes(capture_profile.format());
+        if (rotation_history != null) startFrameGate(characteristics);
+        image_size = capture_profile.initialSize(output_sizes);
+        image_reader = newImageReader(image_size);
+        preview_surface = preview.getHolder().getSurface();
 
         // Callback passed to opening the camera to start using camera outputs once ready
         CameraDevice.StateCallback state_callback = new CameraDevice.StateCallback() {
@@ -132,7 +213,9 @@ public class BurstImage extends IMUCapture {
                 camera_device = camera;
                 try {
                     images_directory = setIMUFileAndGetMediaLocation(file_names[0], file_names[1]);
-                    configureCameraOutputs(preview);
+                    // Profiles only ever step down from the first size, so its buffers fit every frame
+                    startImageSaver(image_size);
+                    configureCameraOutputs(image_reader, image_size);
                 } catch (CameraAccessException | IOException exception) {
                     exception.printStackTrace();
                 }
@@ -150,71 +233,238 @@ public class BurstImage extends IMUCapture {
         camera_manager.openCamera(camera_id, state_callback, callback_handler);
     }
 
-    private void configureCameraOutputs(SurfaceView preview) throws CameraAccessException {
+    private void startFrameGate(CameraCharacteristics characteristics) {
+        // Frames are matched with the motion around them by timestamp, so the camera has to stamp them on the sensors' clock
+        Integer timestamp_source = characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+        float[] focal_lengths = characteristics.get(CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS);
+        SizeF sensor_size = characteristics.get(CameraCharacteristics.SENSOR_INFO_PHYSICAL_SIZE);
+        if (timestamp_source == null || timestamp_source != CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME
+                || focal_lengths == null || focal_lengths.length == 0 || sensor_size == null) {
+            Log.w(CAM, "Camera timestamps or lens data unsuitable for frame gating, saving every frame");
+            return;
+        }
+        focal_length_ratio = focal_lengths[0] / sensor_size.getWidth();
+        frame_gate = new FrameGate(rotation_history, acceleration_history, GATE_MIN_ROTATION, GATE_MIN_VELOCITY_CHANGE,
+                GATE_MAX_BLUR_PIXELS, GATE_MAX_GAP_NANOS);
+    }
+
+    @Override
+    protected void onSample(SensorChannel channel, long timestamp, float[] values) {
+        // The histories are only of use to an active gate
+        if (frame_gate == null) return;
+        if (channel == SensorChannel.GYROSCOPE) {
+            rotation_history.add(timestamp, values[0], values[1], values[2]);
+        } else if (channel == SensorChannel.LINEAR_ACCELERATION) {
+            acceleration_history.add(timestamp, values[0], values[1], values[2]);
+        }
+    }
+
+    @Override
+    protected int maxReportLatencyUs() {
+        // The gate needs the samples of a frame's exposure by the time the frame arrives, so nothing is batched
+        return frame_gate != null ? 0 : super.maxReportLatencyUs();
+    }
+
+    private ImageReader newImageReader(Size size) {
+        return ImageReader.newInstance(size.getWidth(), size.getHeight(), capture_profile.format(), 2);
+    }
+
+    private FrameSink openFrameSink() throws IOException {
+        // Either one append-only container for the whole burst or one file per frame in the images directory
+        return getIntent().getBooleanExtra("burst_container", false)
+                ? new BurstContainer(images_directory) : new ImageDirectorySink(images_directory);
+    }
+
+    private void startImageSaver(Size image_size) throws IOException {
+        FrameSink frame_sink;
+        if (capture_profile == CaptureProfile.YUV) {
+            // Raw frames are saved as they come and encoded into the burst's sink once it is over
+            raw_directory = DeferredEncoder.rawDirectory(images_directory, image_size);
+            if (!raw_directory.mkdirs() && !raw_directory.isDirectory()) {
+                throw new IOException("Raw frame directory cannot be created: " + raw_directory.getPath());
+            }
+            frame_sink = new ImageDirectorySink(raw_directory, DeferredEncoder.RAW_EXTENSION);
+        } else {
+            frame_sink = openFrameSink();
+        }
+        Intent intent = getIntent();
+        // Frames are written by a bounded pool so that a slow disk does not hold up the camera callback
+        String backpressure = intent.getStringExtra("image_backpressure");
+        image_saver = new ImageSaver(frame_sink, IMAGE_SAVER_THREADS, intent.getIntExtra("image_queue_depth", DEFAULT_IMAGE_QUEUE_DEPTH),
+                backpressure == null ? ImageSaver.Backpressure.DROP_OLDEST : ImageSaver.Backpressure.valueOf(backpressure),
+                ImageBufferPool.jpegCapacity(image_size.getWidth(), image_size.getHeight()));
+    }
+
+    /*
+    Also called again from the camera callback thread with a reader of a new size, which replaces the previous session.
+    The reader and its size take over once the new session is configured; if it fails, the reader is closed and the
+    previous one configured again.
+    */
+    private void configureCameraOutputs(ImageReader reader, Size size) throws CameraAccessException {
         // Package the camera data destinations (device screen and image reader) into a capture request
         CaptureRequest.Builder capture_request_builder = camera_device.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
-        Surface surface = preview.getHolder().getSurface();
-        capture_request_builder.addTarget(surface);
-        capture_request_builder.addTarget(image_reader.getSurface());
+        capture_request_builder.addTarget(preview_surface);
+        capture_request_builder.addTarget(reader.getSurface());
 
         // Callback passed to the creation of the camera capture session; handles displaying preview and feeding to image reader
         CameraCaptureSession.StateCallback state_callback = new CameraCaptureSession.StateCallback() {
             @Override
             public void onConfigured(@NonNull CameraCaptureSession session) {
-                image_reader.setOnImageAvailableListener(image_available_listener, callback_handler);
+                reader.setOnImageAvailableListener(image_available_listener, callback_handler);
+                ImageReader previous_reader = image_reader;
+                image_reader = reader;
                 try {
-                    startIMURecording();
-                    session.setRepeatingRequest(capture_request_builder.build(), null, null);
-                    Toast.makeText(BurstImage.this, "Configuration succeeded", Toast.LENGTH_LONG).show();
+                    if (!imu_recording) {
+                        imu_recording = true;
+                        startIMURecording();
+                        Toast.makeText(BurstImage.this, "Configuration succeeded", Toast.LENGTH_LONG).show();
+                    }
+                    session.setRepeatingRequest(capture_request_builder.build(), frame_gate == null ? null : capture_callback,
+                            callback_handler);
                 } catch (CameraAccessException exception) {
                     Toast.makeText(BurstImage.this, "Image capturing request failed", Toast.LENGTH_LONG).show();
                     exception.printStackTrace();
                 }
+                if (previous_reader != reader) {
+                    // The previous session stopped feeding its reader; close it after the frames it still has queued
+                    callback_handler.post(previous_reader::close);
+                    callback_handler.post(() -> {
+                        previous_size = image_size;
+                        image_size = size;
+                    });
+                }
             }
             @Override
             public void onConfigureFailed(@NonNull CameraCaptureSession session) {
                 Toast.makeText(BurstImage.this, "Configuration failed", Toast.LENGTH_LONG).show();
+                if (reader == image_reader) return;
+                // A size change failed: go back to the reader still at the previous size and stop probing
+                reader.close();
+                Log.e(CAM, "Frame size change to " + size + " failed, going back to the previous size");
+                callback_handler.post(throughput_probe::settle);
+                restoreCameraOutputs();
             }
         };
 
         // Use a capture request to start a camera capture session, which directs camera data appropriately
         SessionConfiguration session_configuration = new SessionConfiguration(SessionConfiguration.SESSION_REGULAR,
-                List.of(new OutputConfiguration(surface), new OutputConfiguration(image_reader.getSurface())),
+                List.of(new OutputConfiguration(preview_surface), new OutputConfiguration(reader.getSurface())),
                 ContextCompat.getMainExecutor(this), state_callback);
         camera_device.createCaptureSession(session_configuration);
     }
 
+    // Configures a session again with the reader in use before a failed size change
+    private void restoreCameraOutputs() {
+        ImageReader reader = image_reader;
+        try {
+            configureCameraOutputs(reader, new Size(reader.getWidth(), reader.getHeight()));
+        } catch (CameraAccessException | IllegalStateException exception) {
+            // The camera is closing
+            Log.e(CAM, "Previous frame size could not be restored");
+            exception.printStackTrace();
+        }
+    }
+
+    // Keeps the exposure time of the latest frame for the frame gate
+    private final CameraCaptureSession.CaptureCallback capture_callback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                       @NonNull TotalCaptureResult result) {
+            Long exposure = result.get(CaptureResult.SENSOR_EXPOSURE_TIME);
+            if (exposure != null) exposure_nanos = exposure;
+        }
+    };
+
     // Callback passed to image reader to save captured images
     private final ImageReader.OnImageAvailableListener image_available_listener = reader -> {
         Image image = reader.acquireLatestImage();
+        if (image == null) return;
+        metrics.add(SessionMetrics.FRAMES_ACQUIRED, 1);
         long timestamp = image.getTimestamp();
-        // Store bytes representing the image into a byte array
-        ByteBuffer image_buffer = image.getPlanes()[0].getBuffer();
-        byte[] image_bytes = new byte[image_buffer.remaining()];
-        image_buffer.get(image_bytes);
+        notifyCameraFrame(timestamp);
+        long frame_number = frame_count++;
+        if (frame_gate != null) {
+            // Leave out frames that add nothing over the last kept one or are too blurred to be of use
+            int decision = frame_gate.decide(timestamp, exposure_nanos, focal_length_ratio * image.getWidth());
+            notifyFrameGated(timestamp, frame_number, decision, frame_gate.getBlur());
+            if (decision != FrameGate.KEPT) {
+                image.close();
+                ++gated_frames;
+                if (throughput_probe != null) probeThroughput(timestamp);
+                return;
+            }
+        }
+        // Copy the image bytes into a pooled direct buffer so that the image can be returned to the reader right away
+        ByteBuffer image_buffer;
+        if (image.getFormat() == ImageFormat.YUV_420_888) {
+            // Raw frames are packed as NV21 for the deferred encoder instead of being encoded here
+            image_buffer = image_saver.acquireBuffer(Nv21Packer.size(image.getWidth(), image.getHeight()));
+            if (image_buffer != null) {
+                nv21_packer.pack(image, image_buffer);
+                image_buffer.flip();
+            }
+        } else {
+            ByteBuffer plane_buffer = image.getPlanes()[0].getBuffer();
+            image_buffer = image_saver.acquireBuffer(plane_buffer.remaining());
+            if (image_buffer != null) {
+                image_buffer.put(plane_buffer).flip();
+            }
+        }
         image.close();
 
-        File image_file = new File(images_directory, timestamp + ".jpeg");
+        // Hand the buffer off to be written out
+        if (image_buffer != null) {
+            image_saver.submit(timestamp, image_buffer);
+            // Note the frame (and with the first one the start of the recording) in the imu data file
+            notifyFrameRecorded(timestamp, frame_number);
+        } else {
+            // No marker, so that every frame marker in the imu data file belongs to a frame handed off to be saved
+            ++unbuffered_frames;
+        }
+        if (throughput_probe != null) probeThroughput(timestamp);
+    };
+
+    // Steps the AUTO capture profile's frame size down (or back) when the probe asks for it
+    private void probeThroughput(long timestamp) {
+        // Frames the gate left out were not lost to a lack of throughput
+        int verdict = throughput_probe.observe(timestamp, image_saver.getSaved() + gated_frames, image_saver.getDropped());
+        if (verdict == ThroughputProbe.MEASURING) return;
+        Log.i(CAM, String.format(Locale.US, "%s saved %.1f frames/s", image_size, throughput_probe.getRate()));
+        Size next_size = null;
+        if (verdict == ThroughputProbe.STEP_DOWN) {
+            next_size = CaptureProfile.stepDown(output_sizes, image_size);
+            if (next_size == null) throughput_probe.settle();
+        } else if (verdict == ThroughputProbe.STEP_BACK) {
+            next_size = previous_size;
+        }
+        if (next_size == null) {
+            Log.i(CAM, "Capturing at " + image_size);
+            return;
+        }
+        Log.i(CAM, (verdict == ThroughputProbe.STEP_BACK ? "Stepping back to " : "Stepping down to ") + next_size);
+        ImageReader next_reader = newImageReader(next_size);
         try {
-            // Write the byte data into the image file
-            FileOutputStream image_output = new FileOutputStream(image_file);
-            image_output.write(image_bytes);
-            image_output.flush();
-            image_output.close();
-            // Note the start time of the recording in the imu data file
-            notifyVideoStart(timestamp);
-        } catch (IOException exception) {
+            // The sizes are updated once the new session is configured
+            configureCameraOutputs(next_reader, next_size);
+        } catch (CameraAccessException | IllegalStateException exception) {
+            // The camera is closing, or the session could not be replaced; the current one keeps running
+            next_reader.close();
+            Log.e(CAM, "Frame size change failed");
             exception.printStackTrace();
         }
+    }
 
-        // Close and re-open the FileOutputStream object every 3 seconds to avoid overwhelming file write buffer
-        long current_time = SystemClock.elapsedRealtimeNanos();
-        if ((current_time - last_save_time > 3 * Math.pow(10, 9))) {
-            last_save_time = current_time;
-            stopIMURecording();
-            startIMURecording();
-        }
-    };
+    @Override
+    protected void sampleMetrics() {
+        super.sampleMetrics();
+        ImageSaver saver = image_saver;
+        if (saver == null) return;
+        metrics.set(SessionMetrics.FRAMES_SAVED, saver.getSaved());
+        metrics.set(SessionMetrics.FRAMES_DROPPED, saver.getDropped() + saver.getFailed());
+        metrics.set(SessionMetrics.FRAME_QUEUE_DEPTH, saver.getQueueDepth());
+        metrics.set(SessionMetrics.FRAME_LATENCY_P99, saver.getLatency().percentile(0.99));
+        metrics.set(SessionMetrics.FRAME_LATENCY_MAX, saver.getMaxLatencyNanos());
+    }
 
     protected File setIMUFileAndGetMediaLocation(String imu_data_name, String media_name) throws IOException {
         // Create a new folder to store captured images
@@ -0,0 +1,58 @@
+package com.nyu.video_imu_recorder;
+
+import android.graphics.ImageFormat;
+import android.util.Size;
+
+/*
+Resolution and format of the frames a burst captures
+
+FULL_JPEG takes the largest JPEG size, REDUCED_JPEG the largest one of the same aspect ratio with at most a quarter
+of its pixels. YUV takes the largest YUV_420_888 size and skips encoding while capturing: frames are saved as NV21
+and turned into JPEGs once the burst is over (see DeferredEncoder). AUTO starts like FULL_JPEG and, while a
+ThroughputProbe finds the saved frame rate short of the target, steps down to the next size with at most half the
+pixels.
+
+A recording's profile is chosen by passing its name as the "capture_profile" extra.
+*/
+public enum CaptureProfile {
+    FULL_JPEG, REDUCED_JPEG, YUV, AUTO;
+
+    public int format() {
+        return this == YUV ? ImageFormat.YUV_420_888 : ImageFormat.JPEG;
+    }
+
+    // The size to start capturing at, from the camera's output sizes for format()
+    public Size initialSize(Size[] sizes) {
+        Size largest = largest(sizes, null, Long.MAX_VALUE);
+        return this == REDUCED_JPEG ? orElse(largest(sizes, largest, area(largest) / 4), largest) : largest;
+    }
+
+    // The largest size with at most half the pixels of current, preferably of the same aspect ratio, or null
+    public static Size stepDown(Size[] sizes, Size current) {
+        long limit = area(current) / 2;
+        return orElse(largest(sizes, current, limit), largest(sizes, null, limit));
+    }
+
+    private static Size largest(Size[] sizes, Size aspect_of, long max_area) {
+        Size largest = null;
+        for (Size size : sizes) {
+            if (area(size) > max_area || (aspect_of != null && !sameAspectRatio(size, aspect_of))) continue;
+            if (largest == null || area(size) > area(largest)) largest = size;
+        }
+        return largest;
+    }
+
+    private static boolean sameAspectRatio(Size first, Size second) {
+        // Within 1%, as sizes are rounded to the hardware's alignment
+        long cross = (long) first.getWidth() * second.getHeight(), other = (long) second.getWidth() * first.getHeight();
+        return Math.abs(cross - other) * 100 <= Math.max(cross, other);
+    }
+
+    private static long area(Size size) {
+        return (long) size.getWidth() * size.getHeight();
+    }
+
+    private static Size orElse(Size size, Size other) {
+        return size != null ? size : other;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,92 @@
+package com.nyu.video_imu_recorder;
+
+/*
+Running estimate of the offset and drift between a source clock (sensor or camera timestamps) and a reference clock
+(SystemClock.elapsedRealtimeNanos) from pairs of readings taken when an event is delivered
+
+Every delivery happens some unknown time after the event, so the smallest delay seen within a window is taken as the
+best reading of that window. The window minima are then fitted with an exponentially weighted least squares line, so
+that both the offset and the rate difference of the two clocks follow slow changes without keeping any history.
+*/
+public final class ClockSync {
+
+    private final long window_nanos;
+    private final double forgetting_factor;
+    // Minimum delay seen in the current window and the source time it was seen at
+    private long window_start = Long.MIN_VALUE;
+    private long window_delay;
+    private long window_time;
+    // Weighted regression state, with source times taken relative to the first reading to keep precision
+    private long origin;
+    private double weight_sum, mean_time, mean_delay, time_variance, covariance;
+    private long anchor = Long.MIN_VALUE;
+    private long offset;
+    private double drift;
+
+    public ClockSync(long window_nanos, double forgetting_factor) {
+        this.window_nanos = window_nanos;
+        this.forgetting_factor = forgetting_factor;
+    }
+
+    // Returns true whenever a window closes and the estimate has been updated
+    public boolean observe(long source_time, long reference_time) {
+        long delay = reference_time - source_time;
+        if (window_start == Long.MIN_VALUE) {
+            origin = source_time;
+            startWindow(source_time, delay);
+            return false;
+        }
+        if (delay < window_delay) {
+            window_delay = delay;
+            window_time = source_time;
+        }
+        if (source_time - window_start < window_nanos) return false;
+
+        addPoint(window_time - origin, window_delay);
+        startWindow(source_time, delay);
+        return true;
+    }
+
+    private void startWindow(long source_time, long delay) {
+        window_start = source_time;
+        window_delay = delay;
+        window_time = source_time;
+    }
+
+    private void addPoint(double time, double delay) {
+        weight_sum = forgetting_factor * weight_sum + 1;
+        double time_step = time - mean_time;
+        double delay_step = delay - mean_delay;
+        mean_time += time_step / weight_sum;
+        mean_delay += delay_step / weight_sum;
+        time_variance = forgetting_factor * time_variance + time_step * (time - mean_time);
+        covariance = forgetting_factor * covariance + time_step * (delay - mean_delay);
+
+        drift = time_variance > 0 ? covariance / time_variance : 0;
+        anchor = (long) time + origin;
+        offset = Math.round(mean_delay + drift * (time - mean_time));
+    }
+
+    public boolean hasEstimate() {
+        return anchor != Long.MIN_VALUE;
+    }
+
+    // Source time at which getOffset() applies
+    public long getAnchor() {
+        return anchor;
+    }
+
+    // Reference time minus source time at the anchor, in nanoseconds
+    public long getOffset() {
+        return offset;
+    }
+
+    // Change of the offset per unit of source time, in parts per billion
+    public int getDriftPpb() {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, Math.round(drift * 1e9)));
+    }
+
+    public long toReference(long source_time) {
+        return source_time + offset + Math.round(drift * (source_time - anchor));
+    }
+}
\ No newline at end of file
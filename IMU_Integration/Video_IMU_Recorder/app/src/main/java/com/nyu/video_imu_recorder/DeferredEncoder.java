@@ -0,0 +1,84 @@
+package com.nyu.video_imu_recorder;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.util.Log;
+import android.util.Size;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/*
+Background thread that encodes the raw frames of a YUV burst into JPEGs once the burst is over
+
+During the burst, frames are saved as <timestamp>.nv21 in a directory named after their dimensions (see
+rawDirectory()), which costs the capture path a copy instead of an encode. Afterwards this thread encodes them in
+timestamp order into the burst's usual sink, so the result looks like that of a JPEG burst, and deletes each raw frame
+once its JPEG is written. A frame that fails stays behind, still readable as NV21.
+*/
+public class DeferredEncoder extends Thread {
+
+    public static final String RAW_EXTENSION = "nv21";
+    private static final String ENCODER = "Deferred_encoding";
+    private static final int JPEG_QUALITY = 95;
+    private final File raw_directory;
+    private final Size size;
+    private final FrameSink frame_sink;
+
+    public DeferredEncoder(File raw_directory, Size size, FrameSink frame_sink) {
+        super("deferred_encoder_thread");
+        this.raw_directory = raw_directory;
+        this.size = size;
+        this.frame_sink = frame_sink;
+    }
+
+    public static File rawDirectory(File images_directory, Size size) {
+        return new File(images_directory, RAW_EXTENSION + "_" + size.getWidth() + "x" + size.getHeight());
+    }
+
+    @Override
+    public void run() {
+        File[] frames = raw_directory.listFiles((directory, name) -> name.endsWith("." + RAW_EXTENSION));
+        if (frames == null) frames = new File[0];
+        Arrays.sort(frames, (first, second) -> Long.compare(timestamp(first), timestamp(second)));
+        byte[] nv21 = new byte[Nv21Packer.size(size.getWidth(), size.getHeight())];
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream(nv21.length / 4);
+        Rect bounds = new Rect(0, 0, size.getWidth(), size.getHeight());
+        int encoded = 0;
+        try {
+            for (File frame : frames) {
+                try (DataInputStream input = new DataInputStream(new FileInputStream(frame))) {
+                    input.readFully(nv21);
+                }
+                jpeg.reset();
+                new YuvImage(nv21, ImageFormat.NV21, size.getWidth(), size.getHeight(), null)
+                        .compressToJpeg(bounds, JPEG_QUALITY, jpeg);
+                frame_sink.write(timestamp(frame), ByteBuffer.wrap(jpeg.toByteArray()));
+                if (!frame.delete()) Log.w(ENCODER, "Raw frame could not be deleted: " + frame.getPath());
+                ++encoded;
+            }
+            if (!raw_directory.delete()) Log.w(ENCODER, "Raw frames left in " + raw_directory.getPath());
+        } catch (IOException exception) {
+            Log.e(ENCODER, "Encoding stopped, raw frames left in " + raw_directory.getPath());
+            exception.printStackTrace();
+        } finally {
+            try {
+                frame_sink.close();
+            } catch (IOException exception) {
+                exception.printStackTrace();
+            }
+        }
+        Log.i(ENCODER, encoded + " of " + frames.length + " raw frames encoded");
+    }
+
+    private static long timestamp(File frame) {
+        String name = frame.getName();
+        return Long.parseLong(name.substring(0, name.length() - RAW_EXTENSION.length() - 1));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,12 @@
+package com.nyu.video_imu_recorder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// Destination of the frames persisted by ImageSaver; write() is called concurrently from every saver thread
+public interface FrameSink extends Closeable {
+
+    // Writes the remaining bytes of the frame and returns once they are durable on storage
+    void write(long timestamp, ByteBuffer frame) throws IOException;
+}
\ No newline at end of file
@@ -0,0 +1,108 @@
+package com.nyu.video_imu_recorder;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+Background thread that makes the recording's output streams durable in groups instead of on every write
+
+A commit forces every registered stream and then records the committed lengths in the session journal. Commits happen
+once per interval, or sooner when the writers report more than the byte threshold since the last one, so at most one
+interval (or threshold) of data is at risk and the fsync cost never lands on the sensor, camera or IMU writer
+threads: all they do is add to a counter in written() and, past the threshold, unpark this thread.
+
+Registering and unregistering a stream waits for a commit in progress, so a stream can be closed right after
+unregister() returns.
+*/
+public class GroupCommitter extends Thread {
+
+    private static final String DURABILITY = "Durability";
+    private final SessionJournal journal;
+    private final long interval_nanos;
+    private final long byte_threshold;
+    private final AtomicLong uncommitted = new AtomicLong();
+    // Guarded by this
+    private final List<MappedFileOutputStream> streams = new ArrayList<>();
+    private final List<Integer> slots = new ArrayList<>();
+    private volatile boolean running = true;
+    private long commits;
+
+    public GroupCommitter(SessionJournal journal, long interval_ms, long byte_threshold) {
+        super("group_commit_thread");
+        if (interval_ms <= 0 || byte_threshold <= 0) throw new IllegalArgumentException("Commit interval and threshold must be positive");
+        this.journal = journal;
+        interval_nanos = TimeUnit.MILLISECONDS.toNanos(interval_ms);
+        this.byte_threshold = byte_threshold;
+    }
+
+    /*
+    Starts committing a stream whose fixed-width records (with a non-zero timestamp at timestamp_offset) begin at
+    data_start, so that the session journal can repair it after a crash
+    */
+    public synchronized void register(MappedFileOutputStream stream, File file, long data_start, int record_size,
+                                      int timestamp_offset) throws IOException {
+        int slot = journal.addStream(file, data_start, record_size, timestamp_offset);
+        streams.add(stream);
+        slots.add(slot);
+    }
+
+    // Commits the stream one last time and stops committing it
+    public synchronized void unregister(MappedFileOutputStream stream) throws IOException {
+        int index = streams.indexOf(stream);
+        if (index < 0) return;
+        journal.committed(slots.get(index), stream.commit());
+        streams.remove(index);
+        slots.remove(index);
+    }
+
+    // Called by the threads writing to the streams; cheap enough for every batch
+    public void written(long bytes) {
+        if (uncommitted.addAndGet(bytes) >= byte_threshold) LockSupport.unpark(this);
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            LockSupport.parkNanos(this, interval_nanos);
+            try {
+                commit();
+            } catch (IOException exception) {
+                // Keep recording; the next commit tries again and the journal still has the last good lengths
+                Log.e(DURABILITY, "Commit failed: " + exception.getMessage());
+            }
+        }
+    }
+
+    private synchronized void commit() throws IOException {
+        uncommitted.set(0);
+        for (int index = 0; index < streams.size(); ++index) {
+            long length = streams.get(index).commit();
+            if (length >= 0) journal.committed(slots.get(index), length);
+        }
+        ++commits;
+    }
+
+    // Streams registered and not yet unregistered, that is, not known to have been closed
+    public synchronized int getStreamCount() {
+        return streams.size();
+    }
+
+    public synchronized long getCommits() {
+        return commits;
+    }
+
+    // Stops the thread; streams still registered are committed a last time
+    public void finish() throws IOException, InterruptedException {
+        running = false;
+        LockSupport.unpark(this);
+        join();
+        commit();
+    }
+}
\ No newline at end of file
@@ -4,59 +4,253 @@ import android.content.Context;
 import android.content.Intent;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
+import android.hardware.SensorEventListener2;
 import android.hardware.SensorManager;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.SystemClock;
 import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.content.ContextCompat;
 
+import com.nyu.imu_processing.AttitudeEstimator;
+import com.nyu.imu_processing.AttitudeSnapshot;
+import com.nyu.imu_processing.IMURecord;
+import com.nyu.imu_processing.IMURingBuffer;
+import com.nyu.imu_processing.SessionMetrics;
+
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+Base of the recording activities: records the chosen sensors (see SensorChannel) into the IMU data file
+
+Each sensor has its own lane, a preallocated ring that only its samples go through, found from the event's sensor
+type by a scan of a small int array. The IMU writer drains every lane (and the sync channel's rings) as a batch of
+its own, so a sensor at a high rate neither waits on nor crowds out the others.
 
-public abstract class IMUCapture extends AppCompatActivity implements SensorEventListener {
+The gyroscope and accelerometer samples also drive an orientation estimate on the sensor thread, whose latest
+quaternion any thread can read through getAttitude() while recording.
+*/
+public abstract class IMUCapture extends AppCompatActivity implements SensorEventListener2 {
 
+    public static final int DEFAULT_SAMPLING_PERIOD_US = 5000;
+    // Lets the sensor hub hold events in its FIFO for up to this long before waking the application
+    private static final int MAX_REPORT_LATENCY_US = 100000;
+    private static final long FLUSH_TIMEOUT_MS = 500;
+    // Clock offsets are re-estimated and written to the IMU data file once per window
+    private static final long SYNC_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double SYNC_FORGETTING_FACTOR = 0.95;
+    // Durability policy: output is forced to storage this often, or after this many bytes, whichever comes first
+    public static final int DEFAULT_COMMIT_INTERVAL_MS = 1000;
+    public static final int DEFAULT_COMMIT_BYTES = 1 << 20;
+    // A health summary of the recording is appended to the IMU data file (and shown, if asked for) once per interval
+    private static final long SUMMARY_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
     private static final String FILE = "IMU_data_file";
+    private static final int LANE_CAPACITY = 1 << 13;
     private SensorManager sensor_manager;
-    private Sensor linear_accelerometer, gyroscope;
+    // Per lane, only the sensors of the chosen channels that the device has
+    private SensorChannel[] channels;
+    private Sensor[] sensors;
+    private int[] sensor_types;
+    private IMURingBuffer[] lanes;
+    // Last bias written by lanes with a bias channel, owned by the sensor thread
+    private float[][] biases;
+    private HandlerThread sensor_thread;
+    private Handler sensor_handler;
+    private int sampling_period_us;
+    private CountDownLatch pending_flushes;
     private File imu_data;
-    private FileOutputStream imu_output;
-    private long imu_start_time = -1;
+    private MappedFileOutputStream imu_output;
+    private IMUWriter imu_writer;
+    // Samples are published by the sensor thread into their lanes, sync events by the thread reporting them (see SyncChannel)
+    private final IMURingBuffer sensor_sync_ring = new IMURingBuffer(1 << 6);
+    private final SyncChannel sync_channel = new SyncChannel(sensor_sync_ring);
+    // Owned by the sensor thread and the camera callback thread respectively
+    private final ClockSync sensor_clock = new ClockSync(SYNC_WINDOW_NANOS, SYNC_FORGETTING_FACTOR);
+    private final ClockSync camera_clock = new ClockSync(SYNC_WINDOW_NANOS, SYNC_FORGETTING_FACTOR);
+    private boolean imu_started;
+    // Updated by the sensor thread only; read through its snapshot
+    private final AttitudeEstimator attitude = new AttitudeEstimator();
+    // Owned by the IMU writer thread, for the metrics overlay
+    private final double[] overlay_quaternion = new double[4];
+    private final double[] overlay_angles = new double[3];
+    // Created in onCreate() for the recorded sensors
+    protected SessionMetrics metrics;
+    private TextView metrics_overlay;
+    // Null when group commits are turned off (a commit interval of 0)
+    private SessionJournal session_journal;
+    private GroupCommitter committer;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
         sensor_manager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
-        linear_accelerometer = sensor_manager.getDefaultSensor(Sensor.TYPE_LINEAR_ACCELERATION);
-        gyroscope = sensor_manager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
+        byte[] channel_ids = getIntent().getByteArrayExtra("imu_channels");
+        openLanes(channel_ids == null ? SensorChannel.DEFAULT : channel_ids);
+        sampling_period_us = getIntent().getIntExtra("imu_sampling_period_us", DEFAULT_SAMPLING_PERIOD_US);
+        int commit_interval_ms = getIntent().getIntExtra("commit_interval_ms", DEFAULT_COMMIT_INTERVAL_MS);
+        if (commit_interval_ms > 0) {
+            // The journal of the session's streams is left behind if the session does not end cleanly. The system may
+            // restore a killed process straight into this activity, so a journal left behind is recovered here as well
+            // as when MainActivity starts.
+            List<String> repaired = new ArrayList<>();
+            try {
+                session_journal = SessionJournal.open(new File(getFilesDir(), SessionJournal.NAME), repaired);
+            } catch (IOException exception) {
+                Log.e(FILE, "Interrupted recording could not be repaired");
+                exception.printStackTrace();
+                session_journal = new SessionJournal(new File(getFilesDir(), SessionJournal.NAME));
+            }
+            for (String stream : repaired) Log.w(FILE, "Repaired " + stream);
+            if (!repaired.isEmpty()) {
+                Toast.makeText(this, "The last recording was interrupted; its files were repaired", Toast.LENGTH_LONG).show();
+            }
+            committer = new GroupCommitter(session_journal, commit_interval_ms,
+                    getIntent().getIntExtra("commit_bytes", DEFAULT_COMMIT_BYTES));
+            committer.start();
+        }
+
+        // Deliver sensor events on their own thread so that waiting for a flush does not block them
+        sensor_thread = new HandlerThread("imu_sensor_thread");
+        sensor_thread.start();
+        sensor_handler = new Handler(sensor_thread.getLooper());
+    }
+
+    private void openLanes(byte[] channel_ids) {
+        List<SensorChannel> available = new ArrayList<>();
+        List<Sensor> available_sensors = new ArrayList<>();
+        for (byte id : channel_ids) {
+            SensorChannel channel = SensorChannel.forId(id);
+            Sensor sensor = sensor_manager.getDefaultSensor(channel.sensor_type);
+            if (sensor == null) {
+                Log.w(FILE, "No sensor for channel " + channel + ", not recorded");
+            } else if (!available.contains(channel)) {
+                available.add(channel);
+                available_sensors.add(sensor);
+            }
+        }
+        int count = available.size();
+        channels = available.toArray(new SensorChannel[0]);
+        sensors = available_sensors.toArray(new Sensor[0]);
+        sensor_types = new int[count];
+        lanes = new IMURingBuffer[count];
+        biases = new float[count][];
+        byte[] sensor_ids = new byte[count];
+        for (int lane = 0; lane < count; ++lane) {
+            sensor_types[lane] = sensors[lane].getType();
+            lanes[lane] = new IMURingBuffer(LANE_CAPACITY);
+            sensor_ids[lane] = channels[lane].id;
+            if (channels[lane].hasBias()) {
+                // Not a number, so that the first bias is always written
+                biases[lane] = new float[3];
+                Arrays.fill(biases[lane], Float.NaN);
+            }
+        }
+        metrics = new SessionMetrics(sensor_ids);
+        if (!available.contains(SensorChannel.ACCELEROMETER)) {
+            Log.w(FILE, "No accelerometer channel, the orientation estimate follows the gyroscope alone and drifts");
+        }
     }
 
     @Override
-    public void onSensorChanged(SensorEvent event) {
-        long imu_time = SystemClock.elapsedRealtimeNanos();
-        // Resume any suspended thread waiting for IMU's start timestamp to become available
-        if (imu_start_time == -1) {
-            synchronized (IMUCapture.this) {
-                imu_start_time = imu_time;
-                notifyAll();
+    protected void onDestroy() {
+        // Leaving without stopping (back, or the system ending the activity) still closes and truncates the IMU data
+        // file; this needs the sensor thread for the FIFO flush, so it comes before the thread is stopped
+        stopIMURecording();
+        super.onDestroy();
+        sensor_thread.quitSafely();
+        if (committer != null) {
+            try {
+                committer.finish();
+                Log.i(FILE, committer.getCommits() + " group commits");
+                int open_streams = committer.getStreamCount();
+                if (open_streams == 0) {
+                    // Every stream has been closed, so the session ended cleanly
+                    session_journal.close();
+                } else {
+                    // Keep the journal so that the next session repairs the streams that were never closed
+                    session_journal.release();
+                    Log.w(FILE, open_streams + " output streams still open, session journal kept for recovery");
+                }
+            } catch (IOException | InterruptedException exception) {
+                exception.printStackTrace();
             }
         }
-        String data = imu_time + " " + event.sensor.getName() + " " + Arrays.toString(event.values) + '\n';
-        Log.v(FILE, "imu data: " + data);
-        try {
-            imu_output.write(data.getBytes(StandardCharsets.UTF_8));
-        } catch (IOException exception) {
-            exception.printStackTrace();
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        long receive_time = SystemClock.elapsedRealtimeNanos();
+        // Stamp samples with the time the hardware took them, not the time the (possibly batched) event got here
+        long imu_time = event.timestamp;
+        if (!imu_started) {
+            imu_started = true;
+            sync_channel.imuStarted(imu_time);
+        }
+        int type = event.sensor.getType();
+        int lane = 0;
+        while (lane < sensor_types.length && sensor_types[lane] != type) ++lane;
+        if (lane == sensor_types.length) return;
+        // Only publish into the sensor's lane; the writer thread does the file I/O
+        SensorChannel channel = channels[lane];
+        lanes[lane].offerSample(imu_time, channel.id, event.values, 0, channel.axes);
+        metrics.onSample(channel.id, imu_time);
+        float[] values = event.values;
+        if (channel == SensorChannel.GYROSCOPE) {
+            attitude.updateGyroscope(imu_time, values[0], values[1], values[2]);
+        } else if (channel == SensorChannel.ACCELEROMETER) {
+            attitude.updateAccelerometer(imu_time, values[0], values[1], values[2]);
+        }
+        onSample(channel, imu_time, values);
+        float[] bias = biases[lane];
+        if (bias != null && event.values.length >= channel.axes + bias.length && biasChanged(bias, event.values, channel.axes)) {
+            lanes[lane].offerSample(imu_time, channel.bias_id, bias, 0, bias.length);
+        }
+        if (sensor_clock.observe(imu_time, receive_time)) {
+            sync_channel.sensorClockSync(sensor_clock.getAnchor(), sensor_clock.getOffset(), sensor_clock.getDriftPpb());
+        }
+    }
+
+    // Sees every sample after it is published, on the sensor thread; must not block or allocate
+    protected void onSample(SensorChannel channel, long timestamp, float[] values) {}
+
+    /*
+    Latest orientation estimate (body to world, the world's z axis up, yaw relative to the start), readable from any
+    thread without blocking the sensor thread; its timestamp stays 0 until the first gyroscope or accelerometer sample
+    */
+    protected AttitudeSnapshot getAttitude() {
+        return attitude.getSnapshot();
+    }
+
+    // How long the sensor hub may batch events; subclasses that act on samples as frames arrive want them sooner
+    protected int maxReportLatencyUs() {
+        return MAX_REPORT_LATENCY_US;
+    }
+
+    // Copies the bias following the first axes values if it differs from the last one written
+    private static boolean biasChanged(float[] bias, float[] values, int axes) {
+        boolean changed = false;
+        for (int axis = 0; axis < bias.length; ++axis) {
+            if (bias[axis] != values[axes + axis]) {
+                bias[axis] = values[axes + axis];
+                changed = true;
+            }
         }
+        return changed;
     }
 
     @Override
@@ -64,52 +258,168 @@ public abstract class IMUCapture extends AppCompatActivity implements SensorEven
         Log.v(FILE, sensor.getName() + " accuracy changed to " + accuracy);
     }
 
+    @Override
+    public void onFlushCompleted(Sensor sensor) {
+        CountDownLatch flushes = pending_flushes;
+        if (flushes != null) flushes.countDown();
+    }
+
     protected void startIMURecording() {
         try {
-            imu_output = new FileOutputStream(imu_data, true);
-            sensor_manager.registerListener(this, linear_accelerometer, SensorManager.SENSOR_DELAY_NORMAL);
-            sensor_manager.registerListener(this, gyroscope, SensorManager.SENSOR_DELAY_NORMAL);
-        } catch (FileNotFoundException exception) {
-            Log.e(FILE, "FileOutputStream failed to be opened");
+            boolean write_header = imu_data.length() == 0;
+            // Write through a preallocated mapping of the file rather than a system call per batch
+            imu_output = new MappedFileOutputStream(imu_data);
+            // A fresh file starts with the header mapping sensor ids to sensor names
+            if (write_header) imu_output.write(encodeHeader());
+            if (getIntent().getBooleanExtra("metrics_overlay", false)) {
+                metrics_overlay = findViewById(R.id.metrics_overlay);
+                metrics_overlay.setVisibility(View.VISIBLE);
+            }
+            commitStream(imu_output, imu_data, imu_output.length(), IMURecord.SIZE, 0);
+            IMURingBuffer[] rings = Arrays.copyOf(lanes, lanes.length + 3);
+            rings[lanes.length] = sensor_sync_ring;
+            rings[lanes.length + 1] = sync_channel.getCameraRing();
+            rings[lanes.length + 2] = sync_channel.getControlRing();
+            imu_writer = new IMUWriter(imu_output, metrics, this::sampleMetrics, SUMMARY_INTERVAL_NANOS, committer, rings);
+            imu_writer.start();
+            StringBuilder fifo_sizes = new StringBuilder();
+            for (Sensor sensor : sensors) {
+                sensor_manager.registerListener(this, sensor, sampling_period_us, maxReportLatencyUs(), sensor_handler);
+                fifo_sizes.append(' ').append(sensor.getFifoMaxEventCount());
+            }
+            Log.i(FILE, "IMU sampling period " + sampling_period_us + " us, FIFO sizes" + fifo_sizes);
+        } catch (IOException exception) {
+            Log.e(FILE, "IMU data file failed to be opened");
             exception.printStackTrace();
             Toast.makeText(this, "IMU data storage file cannot be opened", Toast.LENGTH_LONG).show();
             finish();
         }
     }
 
+    // Does nothing if the recording is not running, for activities that stop before it started
     protected void stopIMURecording() {
+        if (imu_output == null) return;
+        // Have the sensor hub deliver the events still batched in its FIFO before unregistering
+        pending_flushes = new CountDownLatch(sensors.length);
+        try {
+            if (sensor_manager.flush(this) && !pending_flushes.await(FLUSH_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(FILE, "Timed out waiting for the sensor FIFO flush");
+            }
+        } catch (InterruptedException exception) {
+            exception.printStackTrace();
+        }
+        pending_flushes = null;
         sensor_manager.unregisterListener(this);
         try {
-            imu_output.flush();
+            imu_writer.finish();
+            stopCommitting(imu_output);
             imu_output.close();
-        } catch (IOException exception) {
-            Log.e(FILE, "FileOutputStream failed to close");
+        } catch (IOException | InterruptedException exception) {
+            Log.e(FILE, "IMU data file failed to close");
             Toast.makeText(this, "IMU data failed to save, data lost!", Toast.LENGTH_SHORT).show();
             exception.printStackTrace();
         }
+        imu_output = null;
+        imu_writer = null;
+        long overruns = getOverruns();
+        if (overruns > 0) Log.w(FILE, overruns + " IMU records dropped because the writer fell behind");
+        Log.i(FILE, "Latency between IMU and camera starting: " + sync_channel.getStartLatency());
+        Log.i(FILE, "Recording metrics:\n" + metrics.summary());
+        double[] quaternion = new double[4];
+        if (getAttitude().read(quaternion) != 0) Log.i(FILE, "Final orientation " + formatAttitude(quaternion, new double[3]));
     }
 
-    protected void notifyVideoStart(long video_start_time) {
-        if (imu_start_time == 0) return;
-        new Thread(() -> {
-            try {
-                // Wait in case IMU's starting timestamp is not yet available
-                synchronized (IMUCapture.this) {
-                    while (imu_start_time == -1) {
-                        wait();
-                    }
-                }
-                long latency = imu_start_time - video_start_time;
-                imu_start_time = 0;
-                // Calculate the time difference between the IMU starting and the camera starting
-                Log.i(FILE, "Latency: " + latency);
-                String latency_message = video_start_time + " video recording started. Latency between IMU and camera: "
-                        + Math.abs(latency) + " (" + (latency < 0 ? "IMU" : "camera") + " started sooner)\n";
-                imu_output.write(latency_message.getBytes(StandardCharsets.UTF_8));
-            } catch (InterruptedException | IOException exception) {
-                exception.printStackTrace();
+    // Roll, pitch and yaw of a quaternion in degrees
+    private static String formatAttitude(double[] quaternion, double[] angles) {
+        AttitudeEstimator.toEulerAngles(quaternion, angles);
+        return String.format(Locale.US, "roll %.1f pitch %.1f yaw %.1f deg", Math.toDegrees(angles[0]),
+                Math.toDegrees(angles[1]), Math.toDegrees(angles[2]));
+    }
+
+    private byte[] encodeHeader() {
+        List<Byte> ids = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (int lane = 0; lane < channels.length; ++lane) {
+            ids.add(channels[lane].id);
+            names.add(sensors[lane].getName());
+            if (channels[lane].hasBias()) {
+                ids.add(channels[lane].bias_id);
+                names.add(sensors[lane].getName() + " bias");
             }
-        }).start();
+        }
+        byte[] sensor_ids = new byte[ids.size()];
+        for (int index = 0; index < sensor_ids.length; ++index) sensor_ids[index] = ids.get(index);
+        return IMURecord.encodeHeader(sensor_ids, names.toArray(new String[0]));
+    }
+
+    private long getOverruns() {
+        long overruns = sensor_sync_ring.getOverruns() + sync_channel.getOverruns();
+        for (IMURingBuffer lane : lanes) overruns += lane.getOverruns();
+        return overruns;
+    }
+
+    // Has the group committer make a stream durable from now on, so that it can be repaired after a crash
+    protected void commitStream(MappedFileOutputStream stream, File file, long data_start, int record_size,
+                                int timestamp_offset) throws IOException {
+        if (committer != null) committer.register(stream, file, data_start, record_size, timestamp_offset);
+    }
+
+    // Call from the thread writing to a stream passed to commitStream()
+    protected void notifyWritten(long bytes) {
+        if (committer != null) committer.written(bytes);
+    }
+
+    // Commits the stream a last time; call before closing it
+    protected void stopCommitting(MappedFileOutputStream stream) throws IOException {
+        if (committer != null) committer.unregister(stream);
+    }
+
+    /*
+    Refreshes the gauges kept outside of the metrics just before each summary is written; called on the IMU writer
+    thread, so overrides must only read thread-safe state
+    */
+    protected void sampleMetrics() {
+        int depth = sensor_sync_ring.size() + sync_channel.size();
+        for (IMURingBuffer lane : lanes) depth += lane.size();
+        metrics.set(SessionMetrics.RING_DEPTH, depth);
+        metrics.set(SessionMetrics.RECORDS_DROPPED, getOverruns());
+        TextView overlay = metrics_overlay;
+        if (overlay != null) {
+            String attitude_line = getAttitude().read(overlay_quaternion) == 0 ? ""
+                    : "attitude " + formatAttitude(overlay_quaternion, overlay_angles) + '\n';
+            String summary = metrics.summary() + attitude_line;
+            overlay.post(() -> overlay.setText(summary));
+        }
+    }
+
+    // Tracks the camera clock (Image.getTimestamp()) against elapsed realtime; call from the camera callback thread
+    protected void notifyCameraFrame(long frame_timestamp) {
+        if (camera_clock.observe(frame_timestamp, SystemClock.elapsedRealtimeNanos())) {
+            sync_channel.cameraClockSync(camera_clock.getAnchor(), camera_clock.getOffset(), camera_clock.getDriftPpb());
+        }
+    }
+
+    /*
+    Notes a frame that went into the recording in the IMU data file; call from the camera callback thread. The first
+    one also marks the start of the recording, with the latency between the IMU and the camera starting.
+    */
+    protected void notifyFrameRecorded(long frame_timestamp, long frame_number) {
+        sync_channel.cameraStarted(frame_timestamp);
+        sync_channel.cameraFrame(frame_timestamp, frame_number);
+    }
+
+    // Notes the FrameGate decision on a frame in the IMU data file; call from the camera callback thread
+    protected void notifyFrameGated(long frame_timestamp, long frame_number, int decision, double blur) {
+        sync_channel.frameGated(frame_timestamp, frame_number, decision, blur);
+    }
+
+    // Call from the main thread, before the IMU recording stops and after it starts again respectively
+    protected void notifyRecordingPaused() {
+        sync_channel.paused(SystemClock.elapsedRealtimeNanos());
+    }
+
+    protected void notifyRecordingResumed() {
+        sync_channel.resumed(SystemClock.elapsedRealtimeNanos());
     }
 
     protected void broadcast_record_status(String status) {
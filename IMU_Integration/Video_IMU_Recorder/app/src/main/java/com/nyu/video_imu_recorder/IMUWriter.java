@@ -0,0 +1,92 @@
+package com.nyu.video_imu_recorder;
+
+import android.os.SystemClock;
+
+import com.nyu.imu_processing.IMURecord;
+import com.nyu.imu_processing.IMURingBuffer;
+import com.nyu.imu_processing.SessionMetrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+Background thread that drains IMU ring buffers into the IMU data file in large batches
+
+It also times every write and counts the bytes written into the session's metrics (and towards the next group
+commit, if there is a committer), and once per summary interval
+has the sampler refresh the gauges that live elsewhere (ring depths, frame counters) before appending the metrics
+summary to the file.
+*/
+public class IMUWriter extends Thread {
+
+    private static final long DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private final IMURingBuffer[] rings;
+    private final OutputStream output;
+    private final SessionMetrics metrics;
+    private final Runnable sampler;
+    private final GroupCommitter committer;
+    private final long summary_interval_nanos;
+    private long next_summary;
+    private volatile boolean running = true;
+    private IOException failure;
+
+    public IMUWriter(OutputStream output, SessionMetrics metrics, Runnable sampler, long summary_interval_nanos,
+                     GroupCommitter committer, IMURingBuffer... rings) {
+        super("imu_writer_thread");
+        this.output = output;
+        this.metrics = metrics;
+        this.sampler = sampler;
+        this.committer = committer;
+        this.summary_interval_nanos = summary_interval_nanos;
+        this.rings = rings;
+    }
+
+    @Override
+    public void run() {
+        try {
+            next_summary = System.nanoTime() + summary_interval_nanos;
+            while (running) {
+                // Sleep between drains while idle so that the next drain writes a whole batch
+                if (drainAll() == 0) LockSupport.parkNanos(this, DRAIN_INTERVAL_NANOS);
+                if (System.nanoTime() >= next_summary) writeSummary();
+            }
+            // Pick up whatever was published before finish() was called, and close the segment with a last summary
+            drainAll();
+            writeSummary();
+            output.flush();
+        } catch (IOException exception) {
+            failure = exception;
+        }
+    }
+
+    private int drainAll() throws IOException {
+        long start = System.nanoTime();
+        int drained = 0;
+        for (IMURingBuffer ring : rings) {
+            drained += ring.drainTo(output);
+        }
+        if (drained > 0) {
+            metrics.getWriteLatency().record(System.nanoTime() - start);
+            metrics.add(SessionMetrics.BYTES_WRITTEN, (long) drained * IMURecord.SIZE);
+            if (committer != null) committer.written((long) drained * IMURecord.SIZE);
+        }
+        return drained;
+    }
+
+    private void writeSummary() throws IOException {
+        next_summary = System.nanoTime() + summary_interval_nanos;
+        sampler.run();
+        // Stamped on the elapsed realtime clock, the sensor timestamps' base
+        metrics.writeSummary(SystemClock.elapsedRealtimeNanos(), output);
+    }
+
+    // Stops the writer after a final drain, rethrowing any failure hit while writing
+    public void finish() throws IOException, InterruptedException {
+        running = false;
+        LockSupport.unpark(this);
+        join();
+        if (failure != null) throw failure;
+    }
+}
\ No newline at end of file
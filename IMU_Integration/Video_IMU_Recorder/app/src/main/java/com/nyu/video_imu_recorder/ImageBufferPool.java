@@ -0,0 +1,45 @@
+package com.nyu.video_imu_recorder;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/*
+Fixed set of reusable direct buffers that captured frames are copied into
+
+Direct buffers keep the multi-megabyte frames out of the Java heap, so sustained capture produces no garbage. A frame
+larger than the pooled capacity gets a one-off buffer that is simply dropped once written.
+*/
+public class ImageBufferPool {
+
+    private final ArrayBlockingQueue<ByteBuffer> free_buffers;
+    private final int capacity;
+
+    public ImageBufferPool(int count, int capacity) {
+        this.capacity = capacity;
+        free_buffers = new ArrayBlockingQueue<>(count);
+        for (int index = 0; index < count; ++index) {
+            free_buffers.add(ByteBuffer.allocateDirect(capacity));
+        }
+    }
+
+    // Worst case JPEG size for a frame of the given dimensions, the size of its uncompressed YUV 4:2:0 data
+    public static int jpegCapacity(int width, int height) {
+        return width * height * 3 / 2;
+    }
+
+    // Returns a cleared buffer with room for size bytes, or null if every pooled buffer is in use
+    public ByteBuffer acquire(int size) {
+        if (size > capacity) return ByteBuffer.allocateDirect(size);
+        return free_buffers.poll();
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != capacity) return;
+        buffer.clear();
+        free_buffers.offer(buffer);
+    }
+
+    public int available() {
+        return free_buffers.size();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,38 @@
+package com.nyu.video_imu_recorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+// Stores every frame as its own <timestamp>.jpeg (or other extension) file in the images directory
+public class ImageDirectorySink implements FrameSink {
+
+    private final File images_directory;
+    private final String extension;
+
+    public ImageDirectorySink(File images_directory) {
+        this(images_directory, "jpeg");
+    }
+
+    public ImageDirectorySink(File images_directory, String extension) {
+        this.images_directory = images_directory;
+        this.extension = "." + extension;
+    }
+
+    @Override
+    public void write(long timestamp, ByteBuffer frame) throws IOException {
+        try (FileChannel image_output = FileChannel.open(new File(images_directory, timestamp + extension).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Write straight from the direct buffer, without copying through a heap array
+            while (frame.hasRemaining()) {
+                image_output.write(frame);
+            }
+            image_output.force(false);
+        }
+    }
+
+    @Override
+    public void close() {}
+}
\ No newline at end of file
@@ -0,0 +1,157 @@
+package com.nyu.video_imu_recorder;
+
+import com.nyu.imu_processing.Histogram;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Bounded pool of threads that persist captured frames so that the camera callback only has to hand them off
+
+The queue depth and what happens when it is full are fixed per recording: DROP_OLDEST discards the longest waiting
+frame, DROP_NEWEST discards the frame being handed off and BLOCK makes the camera callback wait for room. Each frame's
+latency is measured from hand-off until the FrameSink has made it durable on storage.
+
+Frames are handed off in buffers taken from acquireBuffer() and go back to the buffer pool once written or dropped.
+The pool holds one buffer more than can be queued or in the middle of being written, so the camera callback always
+finds a free one.
+*/
+public class ImageSaver {
+
+    public enum Backpressure { DROP_OLDEST, DROP_NEWEST, BLOCK }
+
+    private final ThreadPoolExecutor executor;
+    private final FrameSink frame_sink;
+    private final ImageBufferPool buffer_pool;
+    private final AtomicLong saved = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong total_latency = new AtomicLong();
+    private final Histogram latency = new Histogram();
+
+    private class SaveTask implements Runnable {
+        private final long timestamp;
+        private final ByteBuffer image_buffer;
+        private final long enqueue_time = System.nanoTime();
+
+        private SaveTask(long timestamp, ByteBuffer image_buffer) {
+            this.timestamp = timestamp;
+            this.image_buffer = image_buffer;
+        }
+
+        @Override
+        public void run() {
+            try {
+                frame_sink.write(timestamp, image_buffer);
+            } catch (IOException exception) {
+                failed.incrementAndGet();
+                exception.printStackTrace();
+                return;
+            } finally {
+                buffer_pool.release(image_buffer);
+            }
+            long frame_latency = System.nanoTime() - enqueue_time;
+            total_latency.addAndGet(frame_latency);
+            latency.record(frame_latency);
+            saved.incrementAndGet();
+        }
+
+        private void drop() {
+            buffer_pool.release(image_buffer);
+            dropped.incrementAndGet();
+        }
+    }
+
+    public ImageSaver(FrameSink frame_sink, int threads, int queue_depth, Backpressure backpressure, int buffer_capacity) {
+        this.frame_sink = frame_sink;
+        AtomicInteger thread_count = new AtomicInteger();
+        buffer_pool = new ImageBufferPool(threads + queue_depth + 1, buffer_capacity);
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queue_depth),
+                runnable -> new Thread(runnable, "image_saver_thread_" + thread_count.incrementAndGet()),
+                rejectionHandler(backpressure));
+        executor.prestartAllCoreThreads();
+    }
+
+    private RejectedExecutionHandler rejectionHandler(Backpressure backpressure) {
+        switch (backpressure) {
+            case DROP_OLDEST:
+                return (runnable, pool) -> {
+                    if (pool.isShutdown()) {
+                        ((SaveTask) runnable).drop();
+                        return;
+                    }
+                    Runnable oldest = pool.getQueue().poll();
+                    if (oldest != null) ((SaveTask) oldest).drop();
+                    pool.execute(runnable);
+                };
+            case BLOCK:
+                return (runnable, pool) -> {
+                    try {
+                        if (!pool.isShutdown()) {
+                            pool.getQueue().put(runnable);
+                            return;
+                        }
+                    } catch (InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                    }
+                    ((SaveTask) runnable).drop();
+                };
+            default:
+                return (runnable, pool) -> ((SaveTask) runnable).drop();
+        }
+    }
+
+    // Returns a buffer to copy a frame of the given size into, or null (counted as a drop) if none is free
+    public ByteBuffer acquireBuffer(int size) {
+        ByteBuffer image_buffer = buffer_pool.acquire(size);
+        if (image_buffer == null) dropped.incrementAndGet();
+        return image_buffer;
+    }
+
+    // Queues a filled (flipped) buffer from acquireBuffer() to be written to the frame sink
+    public void submit(long timestamp, ByteBuffer image_buffer) {
+        executor.execute(new SaveTask(timestamp, image_buffer));
+    }
+
+    // Stops accepting frames, waits for the queued ones to be written and closes the frame sink
+    public void shutdown(long timeout_ms) throws InterruptedException, IOException {
+        executor.shutdown();
+        executor.awaitTermination(timeout_ms, TimeUnit.MILLISECONDS);
+        frame_sink.close();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public long getSaved() {
+        return saved.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getAverageLatencyNanos() {
+        long count = saved.get();
+        return count == 0 ? 0 : total_latency.get() / count;
+    }
+
+    public long getMaxLatencyNanos() {
+        return latency.getMax();
+    }
+
+    public Histogram getLatency() {
+        return latency;
+    }
+}
\ No newline at end of file
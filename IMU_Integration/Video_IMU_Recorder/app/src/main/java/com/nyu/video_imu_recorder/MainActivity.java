@@ -11,6 +11,9 @@ import android.hardware.camera2.CameraMetadata;
 import android.os.Bundle;
 import android.util.Log;
 import android.util.Pair;
+import android.widget.ArrayAdapter;
+import android.widget.EditText;
+import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -20,9 +23,12 @@ import androidx.appcompat.widget.SwitchCompat;
 import androidx.camera.video.VideoRecordEvent;
 import androidx.core.content.ContextCompat;
 
+import java.io.File;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 
 public class MainActivity extends AppCompatActivity {
@@ -55,22 +61,46 @@ public class MainActivity extends AppCompatActivity {
     /*
     Currently, both imu and video data are stored under /sdcard/Android/data/com.nyu.video_imu_recorder
 
-    The IMU data is stored under the following format (A more sophisticated tabular format is also possible in Android)
+    The IMU data is stored as fixed-width binary records (see IMURecord), which IMURecord.exportText() converts into
+    the following text format (A more sophisticated tabular format is also possible in Android)
     <nano seconds elapsed since an external time instant> <sensor name> <[a comma-separated list with sensor data]>
     Example:
     1578699792815 Goldfish 3-axis Gyroscope [0.0, 0.0, 0.0]
-    TODO: try to set IMU sensor sampling period close to camera frame rate
+    Each video is accompanied by a .frames sidecar with the sensor timestamp of every frame (see FrameTimestamps)
+    The IMU sensor sampling period (in microseconds) is chosen on the main screen for every recording session, as is
+    whether to record the default sensors (linear acceleration, gyroscope and accelerometer) or every sensor in
+    SensorChannel, and the resolution and format of burst frames (see CaptureProfile) and whether to skip still and
+    blurred ones (see FrameGate)
     */
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        if (savedInstanceState == null) recoverInterruptedSession();
 
         // Prepare for launching data capturing activity
         SwitchCompat record_mode = findViewById(R.id.record_mode);
+        SwitchCompat container_mode = findViewById(R.id.container_mode);
+        SwitchCompat metrics_mode = findViewById(R.id.metrics_mode);
+        SwitchCompat sensors_mode = findViewById(R.id.sensors_mode);
+        SwitchCompat gating_mode = findViewById(R.id.gating_mode);
+        Spinner profile_mode = findViewById(R.id.profile_mode);
+        ArrayAdapter<CaptureProfile> profiles = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, CaptureProfile.values());
+        profiles.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        profile_mode.setAdapter(profiles);
         AppCompatButton record_start = findViewById(R.id.record_start);
+        EditText imu_period = findViewById(R.id.imu_period);
+        imu_period.setText(String.valueOf(IMUCapture.DEFAULT_SAMPLING_PERIOD_US));
         record_start.setOnClickListener(view -> {
+            int sampling_period_us;
+            try {
+                sampling_period_us = Integer.parseInt(imu_period.getText().toString());
+            } catch (NumberFormatException exception) {
+                Toast.makeText(this, "The IMU sampling period must be a whole number of microseconds", Toast.LENGTH_LONG).show();
+                return;
+            }
+
             // Set up broadcast receiver
             record_status_receiver = new RecordStatusReceiver();
             IntentFilter filter = new IntentFilter(getPackageName() + ".RECORD_STATUS");
@@ -83,6 +113,12 @@ public class MainActivity extends AppCompatActivity {
                 Pair<String, String> file_names = generateFileNames(record_count);
                 launch_record.putExtra("media_name", file_names.first);
                 launch_record.putExtra("imu_data_name", file_names.second);
+                launch_record.putExtra("imu_sampling_period_us", sampling_period_us);
+                launch_record.putExtra("burst_container", container_mode.isChecked());
+                launch_record.putExtra("metrics_overlay", metrics_mode.isChecked());
+                launch_record.putExtra("imu_channels", sensors_mode.isChecked() ? SensorChannel.ALL : SensorChannel.DEFAULT);
+                launch_record.putExtra("capture_profile", ((CaptureProfile) profile_mode.getSelectedItem()).name());
+                launch_record.putExtra("frame_gating", gating_mode.isChecked());
                 startActivity(launch_record);
             } catch (CameraAccessException exception) {
                 Toast.makeText(this, "The device does not have a usable back camera for recording.", Toast.LENGTH_LONG).show();
@@ -92,6 +128,20 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    // Repairs the files of a recording that was killed or crashed before it could stop cleanly (see SessionJournal)
+    private void recoverInterruptedSession() {
+        try {
+            List<String> repaired = SessionJournal.recover(new File(getFilesDir(), SessionJournal.NAME));
+            for (String stream : repaired) Log.w(VID, "Repaired " + stream);
+            if (!repaired.isEmpty()) {
+                Toast.makeText(this, "The last recording was interrupted; its files were repaired", Toast.LENGTH_LONG).show();
+            }
+        } catch (IOException exception) {
+            Log.e(VID, "Interrupted recording could not be repaired");
+            exception.printStackTrace();
+        }
+    }
+
     private String findBackCameraId() throws CameraAccessException {
         /*
         Locate back-facing camera (Technically this should be implemented like below, but it doesn't work because of emulator I think)
@@ -115,8 +165,8 @@ public class MainActivity extends AppCompatActivity {
         SimpleDateFormat date_format = new SimpleDateFormat("MMM_dd_yyyy", Locale.US);
         String date = date_format.format(new Date());
         String media_name = date + "_media_" + record_count;
-        // TODO: migrate to a more organized format such as csv
-        String imu_data_name = date + "_IMU_data_" + record_count + ".txt";
+        // Binary records (see IMURecord), which IMUArchiveWriter.convert() compresses into a seekable IMUArchive
+        String imu_data_name = date + "_IMU_data_" + record_count + ".bin";
         return new Pair<>(media_name, imu_data_name);
     }
 
@@ -0,0 +1,124 @@
+package com.nyu.video_imu_recorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+Appending OutputStream that writes through a memory mapping of the file
+
+The file is grown and mapped in fixed increments, so a write is a memory copy instead of a system call and the file
+is not extended one append at a time. Bytes past the last write are preallocation only; close() truncates the file
+back to the length that was actually written.
+
+commit() makes what has been written so far durable and may be called from another thread than the one writing (see
+GroupCommitter). The writer only publishes its length after each write; the mappings are handed over under a lock
+that is taken once per chunk, and a chunk the writer has moved past is forced by the next commit.
+*/
+public class MappedFileOutputStream extends OutputStream {
+
+    public static final int DEFAULT_CHUNK_SIZE = 4 << 20;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int chunk_size;
+    private volatile MappedByteBuffer mapping;
+    // Start of the current mapping within the file
+    private long mapping_start;
+    // Length written so far, published for commit()
+    private volatile long written;
+    // Guards the hand-over of mappings between the writer and commit()
+    private final Object mapping_lock = new Object();
+    // Filled chunk that has not been forced yet, guarded by mapping_lock
+    private MappedByteBuffer retired;
+
+    public MappedFileOutputStream(File output, int chunk_size) throws IOException {
+        this.chunk_size = chunk_size;
+        file = new RandomAccessFile(output, "rw");
+        channel = file.getChannel();
+        // Continue after any data already in the file, the same as opening a FileOutputStream in append mode
+        mapping_start = channel.size();
+        written = mapping_start;
+        mapping = channel.map(FileChannel.MapMode.READ_WRITE, mapping_start, chunk_size);
+    }
+
+    public MappedFileOutputStream(File output) throws IOException {
+        this(output, DEFAULT_CHUNK_SIZE);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        MappedByteBuffer target = ensureMapped();
+        target.put((byte) b);
+        written = mapping_start + target.position();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            MappedByteBuffer target = ensureMapped();
+            int count = Math.min(len, target.remaining());
+            target.put(b, off, count);
+            off += count;
+            len -= count;
+            written = mapping_start + target.position();
+        }
+    }
+
+    private MappedByteBuffer ensureMapped() throws IOException {
+        if (mapping == null) throw new IOException("Stream closed");
+        if (!mapping.hasRemaining()) {
+            // Mapping past the end of the file grows it by another chunk
+            MappedByteBuffer next = channel.map(FileChannel.MapMode.READ_WRITE, mapping_start + mapping.position(), chunk_size);
+            synchronized (mapping_lock) {
+                // Only happens if the writer filled two chunks between commits
+                if (retired != null) retired.force();
+                retired = mapping;
+                mapping_start += mapping.position();
+                mapping = next;
+            }
+        }
+        return mapping;
+    }
+
+    // Number of bytes in the file that have actually been written
+    public long length() {
+        return mapping == null ? -1 : written;
+    }
+
+    // Forces what has been written to storage and returns the length that is durable, or -1 once closed
+    public long commit() throws IOException {
+        long length;
+        MappedByteBuffer current, previous;
+        synchronized (mapping_lock) {
+            length = written;
+            current = mapping;
+            previous = retired;
+            retired = null;
+        }
+        if (current == null) return -1;
+        if (previous != null) previous.force();
+        current.force();
+        // The file size changes with every chunk mapped, and the data is only retrievable with it
+        channel.force(false);
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mapping == null) return;
+        long length = written;
+        synchronized (mapping_lock) {
+            mapping = null;
+            retired = null;
+        }
+        try {
+            channel.truncate(length);
+            channel.force(true);
+        } finally {
+            file.close();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,64 @@
+package com.nyu.video_imu_recorder;
+
+import android.media.Image;
+
+import java.nio.ByteBuffer;
+
+/*
+Packs YUV_420_888 images into tightly packed NV21 (the luma rows, then interleaved V and U rows), the layout YuvImage
+encodes from
+
+Planes come with row padding and, depending on the device, planar or semi-planar chroma. Rows are bulk-copied out of
+the plane buffers and the chroma interleaved from reused row arrays, so packing allocates nothing once the rows have
+been sized. Call from one thread only.
+*/
+public class Nv21Packer {
+
+    private byte[] u_row = new byte[0];
+    private byte[] v_row = new byte[0];
+    private byte[] chroma_row = new byte[0];
+
+    // Bytes of a packed frame of the given (even) dimensions
+    public static int size(int width, int height) {
+        return width * height * 3 / 2;
+    }
+
+    public void pack(Image image, ByteBuffer target) {
+        Image.Plane[] planes = image.getPlanes();
+        pack(planes[0].getBuffer(), planes[0].getRowStride(), planes[1].getBuffer(), planes[2].getBuffer(),
+                planes[1].getRowStride(), planes[1].getPixelStride(), image.getWidth(), image.getHeight(), target);
+    }
+
+    // Puts size(width, height) bytes into the target; the plane buffers are read from their start and left untouched
+    public void pack(ByteBuffer y, int y_row_stride, ByteBuffer u, ByteBuffer v, int chroma_row_stride,
+                     int chroma_pixel_stride, int width, int height, ByteBuffer target) {
+        ByteBuffer rows = y.duplicate();
+        for (int line = 0; line < height; ++line) {
+            int start = line * y_row_stride;
+            rows.limit(start + width).position(start);
+            target.put(rows);
+        }
+
+        int chroma_width = width / 2;
+        // The last row of a plane can end right after its last sample
+        int span = (chroma_width - 1) * chroma_pixel_stride + 1;
+        if (u_row.length < span) {
+            u_row = new byte[span];
+            v_row = new byte[span];
+        }
+        if (chroma_row.length < 2 * chroma_width) chroma_row = new byte[2 * chroma_width];
+        ByteBuffer u_rows = u.duplicate(), v_rows = v.duplicate();
+        for (int line = 0; line < height / 2; ++line) {
+            int start = line * chroma_row_stride;
+            u_rows.limit(start + span).position(start);
+            u_rows.get(u_row, 0, span);
+            v_rows.limit(start + span).position(start);
+            v_rows.get(v_row, 0, span);
+            for (int column = 0, index = 0; column < chroma_width; ++column, index += chroma_pixel_stride) {
+                chroma_row[2 * column] = v_row[index];
+                chroma_row[2 * column + 1] = u_row[index];
+            }
+            target.put(chroma_row, 0, 2 * chroma_width);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,61 @@
+package com.nyu.video_imu_recorder;
+
+import android.hardware.Sensor;
+
+import com.nyu.imu_processing.IMURecord;
+
+/*
+Sensors the IMU data file can record, each under its numeric channel id (the IMURecord sensor id)
+
+A channel knows the Android sensor type feeding it and which of the event's values go into its records. The
+uncalibrated gyroscope reports its drift estimate after the rates; those three values go to a second channel, only
+when they change.
+
+The default set adds the raw accelerometer to the linear acceleration and gyroscope, as the orientation estimate
+(see IMUCapture) needs gravity for its reference of up.
+
+A recording's sensor set is chosen by passing the channel ids as the "imu_channels" byte array extra.
+*/
+public enum SensorChannel {
+    LINEAR_ACCELERATION(IMURecord.LINEAR_ACCELERATION, Sensor.TYPE_LINEAR_ACCELERATION, 3),
+    GYROSCOPE(IMURecord.GYROSCOPE, Sensor.TYPE_GYROSCOPE, 3),
+    ACCELEROMETER(IMURecord.ACCELEROMETER, Sensor.TYPE_ACCELEROMETER, 3),
+    GYROSCOPE_UNCALIBRATED(IMURecord.GYROSCOPE_UNCALIBRATED, Sensor.TYPE_GYROSCOPE_UNCALIBRATED, 3, IMURecord.GYROSCOPE_BIAS),
+    MAGNETIC_FIELD(IMURecord.MAGNETIC_FIELD, Sensor.TYPE_MAGNETIC_FIELD, 3),
+    ROTATION_VECTOR(IMURecord.ROTATION_VECTOR, Sensor.TYPE_ROTATION_VECTOR, 3),
+    PRESSURE(IMURecord.PRESSURE, Sensor.TYPE_PRESSURE, 1);
+
+    public static final byte[] DEFAULT = {IMURecord.LINEAR_ACCELERATION, IMURecord.GYROSCOPE, IMURecord.ACCELEROMETER};
+    public static final byte[] ALL = {IMURecord.LINEAR_ACCELERATION, IMURecord.GYROSCOPE, IMURecord.ACCELEROMETER,
+            IMURecord.GYROSCOPE_UNCALIBRATED, IMURecord.MAGNETIC_FIELD, IMURecord.ROTATION_VECTOR, IMURecord.PRESSURE};
+    // No bias channel
+    public static final byte NONE = -1;
+
+    public final byte id;
+    public final int sensor_type;
+    // Values of an event that go into a sample record, the rest (if any) are the bias
+    public final int axes;
+    public final byte bias_id;
+
+    SensorChannel(byte id, int sensor_type, int axes) {
+        this(id, sensor_type, axes, NONE);
+    }
+
+    SensorChannel(byte id, int sensor_type, int axes, byte bias_id) {
+        this.id = id;
+        this.sensor_type = sensor_type;
+        this.axes = axes;
+        this.bias_id = bias_id;
+    }
+
+    public boolean hasBias() {
+        return bias_id != NONE;
+    }
+
+    public static SensorChannel forId(byte id) {
+        for (SensorChannel channel : values()) {
+            if (channel.id == id) return channel;
+        }
+        throw new IllegalArgumentException("Unknown sensor channel " + id);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,198 @@
+package com.nyu.video_imu_recorder;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Small journal of the output streams of the recording in progress and how much of each is known to be durable
+
+The journal lists, per stream, its path and the layout of its fixed-width records:
+<int magic "SJNL"> <int version> <int stream count> then per stream
+<short path length> <UTF-8 path> <long data start> <int record size> <int timestamp offset> <long committed length>
+The list only changes when a stream is opened and is then replaced as a whole (written aside and renamed over), while
+committed() overwrites one stream's committed length in place.
+
+A journal left behind means the recording ended without stopping cleanly. recover() then repairs every stream: the
+records up to the committed length are durable, and after it a mapped writer leaves whatever reached storage followed
+by zeroed preallocation, so the stream is cut after the last whole record with a non-zero timestamp. Records carry
+no checksum, so one torn across two pages by a power loss can survive with its timestamp and zeroed values. A new
+session must recover a journal left behind before writing its own over it; open() does both.
+*/
+public class SessionJournal implements Closeable {
+
+    public static final String NAME = "session.journal";
+    static final int MAGIC = 0x534A4E4C;
+    static final int VERSION = 1;
+
+    private static class Stream {
+        private final String path;
+        private final long data_start;
+        private final int record_size;
+        private final int timestamp_offset;
+        private long committed;
+        // Position of the committed length within the journal
+        private long committed_position;
+
+        private Stream(String path, long data_start, int record_size, int timestamp_offset, long committed) {
+            this.path = path;
+            this.data_start = data_start;
+            this.record_size = record_size;
+            this.timestamp_offset = timestamp_offset;
+            this.committed = committed;
+        }
+    }
+
+    private final File journal;
+    private final List<Stream> streams = new ArrayList<>();
+    private final ByteBuffer committed_buffer = ByteBuffer.allocate(Long.BYTES);
+    private FileChannel channel;
+
+    public SessionJournal(File journal) {
+        this.journal = journal;
+    }
+
+    /*
+    Repairs the streams of a journal left behind at the same path (adding recover()'s lines to repaired), then starts
+    a new journal there; the first addStream() would otherwise replace the old journal before anything read it
+    */
+    public static SessionJournal open(File journal, List<String> repaired) throws IOException {
+        repaired.addAll(recover(journal));
+        return new SessionJournal(journal);
+    }
+
+    // Adds a stream (or restarts one that was reopened to append) and returns its slot for committed()
+    public synchronized int addStream(File file, long data_start, int record_size, int timestamp_offset) throws IOException {
+        if (record_size <= 0 || timestamp_offset < 0 || timestamp_offset + Long.BYTES > record_size) {
+            throw new IllegalArgumentException("Records must be non-empty and hold the timestamp");
+        }
+        String path = file.getAbsolutePath();
+        int slot = 0;
+        while (slot < streams.size() && !streams.get(slot).path.equals(path)) ++slot;
+        Stream stream = new Stream(path, data_start, record_size, timestamp_offset, data_start);
+        if (slot < streams.size()) {
+            streams.set(slot, stream);
+        } else {
+            streams.add(stream);
+        }
+        rewrite();
+        return slot;
+    }
+
+    public synchronized void committed(int slot, long length) throws IOException {
+        Stream stream = streams.get(slot);
+        if (channel == null || length <= stream.committed) return;
+        stream.committed = length;
+        committed_buffer.clear();
+        committed_buffer.putLong(0, length);
+        channel.write(committed_buffer, stream.committed_position);
+        channel.force(false);
+    }
+
+    private void rewrite() throws IOException {
+        int size = 3 * Integer.BYTES;
+        List<byte[]> paths = new ArrayList<>();
+        for (Stream stream : streams) {
+            byte[] path = stream.path.getBytes(StandardCharsets.UTF_8);
+            paths.add(path);
+            size += Short.BYTES + path.length + 2 * Long.BYTES + 2 * Integer.BYTES;
+        }
+        ByteBuffer contents = ByteBuffer.allocate(size);
+        contents.putInt(MAGIC).putInt(VERSION).putInt(streams.size());
+        for (int index = 0; index < streams.size(); ++index) {
+            Stream stream = streams.get(index);
+            contents.putShort((short) paths.get(index).length).put(paths.get(index)).putLong(stream.data_start)
+                    .putInt(stream.record_size).putInt(stream.timestamp_offset);
+            stream.committed_position = contents.position();
+            contents.putLong(stream.committed);
+        }
+        contents.flip();
+
+        if (channel != null) channel.close();
+        File aside = new File(journal.getPath() + ".new");
+        try (FileChannel aside_channel = FileChannel.open(aside.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (contents.hasRemaining()) aside_channel.write(contents);
+            aside_channel.force(true);
+        }
+        Files.move(aside.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(journal.toPath(), StandardOpenOption.WRITE);
+    }
+
+    // Ends the session cleanly: the streams are complete, so the journal is no longer needed
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel == null) return;
+        channel.close();
+        channel = null;
+        Files.deleteIfExists(journal.toPath());
+    }
+
+    // Closes the journal but leaves it in place for recover(), for a session that ends with streams still open
+    public synchronized void release() throws IOException {
+        if (channel == null) return;
+        channel.close();
+        channel = null;
+    }
+
+    /*
+    Repairs the streams of a session that did not end cleanly and deletes its journal. Returns one line per stream
+    that had to be cut, or an empty list if there was no journal or nothing to repair.
+    */
+    public static List<String> recover(File journal) throws IOException {
+        List<String> repaired = new ArrayList<>();
+        if (!journal.exists()) return repaired;
+        ByteBuffer contents = ByteBuffer.wrap(Files.readAllBytes(journal.toPath()));
+        try {
+            if (contents.getInt() != MAGIC || contents.getInt() != VERSION) throw new IOException("Not a session journal");
+            int count = contents.getInt();
+            for (int index = 0; index < count; ++index) {
+                byte[] path = new byte[contents.getShort() & 0xFFFF];
+                contents.get(path);
+                Stream stream = new Stream(new String(path, StandardCharsets.UTF_8), contents.getLong(),
+                        contents.getInt(), contents.getInt(), contents.getLong());
+                String result = repair(stream);
+                if (result != null) repaired.add(result);
+            }
+        } catch (BufferUnderflowException exception) {
+            throw new IOException("Truncated session journal", exception);
+        } finally {
+            Files.deleteIfExists(journal.toPath());
+        }
+        return repaired;
+    }
+
+    private static String repair(Stream stream) throws IOException {
+        File file = new File(stream.path);
+        if (!file.exists()) return null;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            // Start from the last committed record boundary, or the first record if the journal looks wrong
+            long committed = stream.committed;
+            if (committed < stream.data_start || committed > size) committed = stream.data_start;
+            long end = stream.data_start + (committed - stream.data_start) / stream.record_size * stream.record_size;
+
+            ByteBuffer timestamp = ByteBuffer.allocate(Long.BYTES);
+            while (end + stream.record_size <= size) {
+                timestamp.clear();
+                while (timestamp.hasRemaining() && channel.read(timestamp, end + stream.timestamp_offset + timestamp.position()) > 0) {}
+                if (timestamp.hasRemaining() || timestamp.getLong(0) == 0) break;
+                end += stream.record_size;
+            }
+            if (end == size) return null;
+            channel.truncate(end);
+            channel.force(true);
+            return stream.path + ": cut from " + size + " to " + end + " bytes, " + (end - committed)
+                    + " bytes past the last commit recovered";
+        }
+    }
+}
\ No newline at end of file
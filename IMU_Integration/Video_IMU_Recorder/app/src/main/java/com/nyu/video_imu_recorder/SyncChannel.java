@@ -0,0 +1,104 @@
+package com.nyu.video_imu_recorder;
+
+import com.nyu.imu_processing.FrameGate;
+import com.nyu.imu_processing.IMURecord;
+import com.nyu.imu_processing.IMURingBuffer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Channel for the sync events of a recording, which the IMU writer puts into the IMU data file as marker records
+alongside the samples
+
+Each thread that reports events has its own single-producer ring: the sensor thread shares the sample ring, the
+camera callback thread and the main (control) thread get one each, and the IMU writer drains all of them. Reporting
+an event is therefore a write into a preallocated array that never creates a thread or waits on a monitor.
+
+The VIDEO_START marker needs both the IMU's and the camera's start time. Each side publishes its own start and then
+looks for the other's, so at least one of them sees both, and a compare-and-set makes sure only one writes the marker.
+*/
+public class SyncChannel {
+
+    private static final int CAMERA_RING_CAPACITY = 1 << 10;
+    private static final int CONTROL_RING_CAPACITY = 1 << 4;
+    private final IMURingBuffer sensor_ring;
+    private final IMURingBuffer camera_ring = new IMURingBuffer(CAMERA_RING_CAPACITY);
+    private final IMURingBuffer control_ring = new IMURingBuffer(CONTROL_RING_CAPACITY);
+    // Zero until the first sample or frame arrives
+    private final AtomicLong imu_start_time = new AtomicLong();
+    private final AtomicLong camera_start_time = new AtomicLong();
+    private final AtomicBoolean start_written = new AtomicBoolean();
+
+    public SyncChannel(IMURingBuffer sensor_ring) {
+        this.sensor_ring = sensor_ring;
+    }
+
+    public IMURingBuffer getCameraRing() {
+        return camera_ring;
+    }
+
+    public IMURingBuffer getControlRing() {
+        return control_ring;
+    }
+
+    // Sensor thread: the timestamp of the first sample, only the first call counts
+    public void imuStarted(long timestamp) {
+        if (!imu_start_time.compareAndSet(0, timestamp)) return;
+        long camera_start = camera_start_time.get();
+        if (camera_start != 0) writeStart(sensor_ring, timestamp, camera_start);
+    }
+
+    public void sensorClockSync(long anchor, long offset, int drift_ppb) {
+        sensor_ring.offerMarker(anchor, IMURecord.SENSOR_CLOCK_SYNC, offset, drift_ppb);
+    }
+
+    // Camera thread: the timestamp of the first recorded frame, only the first call counts
+    public void cameraStarted(long timestamp) {
+        if (camera_start_time.get() != 0 || !camera_start_time.compareAndSet(0, timestamp)) return;
+        long imu_start = imu_start_time.get();
+        if (imu_start != 0) writeStart(camera_ring, imu_start, timestamp);
+    }
+
+    public void cameraFrame(long timestamp, long frame_number) {
+        camera_ring.offerMarker(timestamp, IMURecord.CAMERA_FRAME, frame_number, 0);
+    }
+
+    public void frameGated(long timestamp, long frame_number, int decision, double blur) {
+        camera_ring.offerMarker(timestamp, IMURecord.FRAME_GATE, frame_number, FrameGate.encode(decision, blur));
+    }
+
+    public void cameraClockSync(long anchor, long offset, int drift_ppb) {
+        camera_ring.offerMarker(anchor, IMURecord.CAMERA_CLOCK_SYNC, offset, drift_ppb);
+    }
+
+    // Main thread: pausing and resuming, stamped on elapsed realtime
+    public void paused(long timestamp) {
+        control_ring.offerMarker(timestamp, IMURecord.RECORDING_PAUSED, 0, 0);
+    }
+
+    public void resumed(long timestamp) {
+        control_ring.offerMarker(timestamp, IMURecord.RECORDING_RESUMED, 0, 0);
+    }
+
+    private void writeStart(IMURingBuffer ring, long imu_start, long camera_start) {
+        if (start_written.compareAndSet(false, true)) {
+            // The latency between the IMU and the camera starting, negative when the IMU started sooner
+            ring.offerMarker(camera_start, IMURecord.VIDEO_START, imu_start - camera_start, 0);
+        }
+    }
+
+    // Latency between the IMU and the camera starting, or 0 while one of them has not started
+    public long getStartLatency() {
+        long imu_start = imu_start_time.get(), camera_start = camera_start_time.get();
+        return imu_start == 0 || camera_start == 0 ? 0 : imu_start - camera_start;
+    }
+
+    public int size() {
+        return camera_ring.size() + control_ring.size();
+    }
+
+    public long getOverruns() {
+        return camera_ring.getOverruns() + control_ring.getOverruns();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,89 @@
+package com.nyu.video_imu_recorder;
+
+/*
+Decides, from the frames saved and dropped over fixed windows, whether a burst sustains its target frame rate
+
+Call observe() for every frame with the saver's running totals. At the end of each window it compares the rate of
+saved frames against the target: a window at or above it without drops settles on the current size, anything less
+asks for a smaller size. If a smaller size saved no more frames than the one before, resolution is not what holds the
+rate back, and the probe settles on going back to the previous size. The first window after a (re)configuration is
+only a warm-up and is not judged.
+*/
+public class ThroughputProbe {
+
+    public static final int MEASURING = 0;
+    public static final int SUSTAINED = 1;
+    public static final int STEP_DOWN = 2;
+    public static final int STEP_BACK = 3;
+    // Share of the target that counts as sustaining it, for the jitter of frame delivery
+    private static final double TOLERANCE = 0.9;
+    // Smallest gain in rate that makes a step down worth it
+    private static final double MIN_GAIN = 1.05;
+
+    private final double target_fps;
+    private final long window_nanos;
+    private boolean settled;
+    private boolean warming_up = true;
+    private long window_start = -1;
+    private long window_saved, window_dropped;
+    // Rate at the previous size, 0 before the first step down
+    private double previous_rate;
+    private double rate;
+
+    public ThroughputProbe(double target_fps, long window_nanos) {
+        if (target_fps <= 0 || window_nanos <= 0) throw new IllegalArgumentException("Target and window must be positive");
+        this.target_fps = target_fps;
+        this.window_nanos = window_nanos;
+    }
+
+    public int observe(long timestamp, long saved, long dropped) {
+        if (settled) return MEASURING;
+        if (window_start < 0) {
+            startWindow(timestamp, saved, dropped);
+            return MEASURING;
+        }
+        long elapsed = timestamp - window_start;
+        if (elapsed < window_nanos) return MEASURING;
+        boolean judged = !warming_up;
+        warming_up = false;
+        double window_rate = (saved - window_saved) * 1e9 / elapsed;
+        boolean drops = dropped > window_dropped;
+        startWindow(timestamp, saved, dropped);
+        if (!judged) return MEASURING;
+
+        rate = window_rate;
+        if (!drops && rate >= target_fps * TOLERANCE) {
+            settled = true;
+            return SUSTAINED;
+        }
+        if (previous_rate > 0 && rate < previous_rate * MIN_GAIN) {
+            settled = true;
+            return STEP_BACK;
+        }
+        previous_rate = rate;
+        // The next window after the change of size is a warm-up again
+        warming_up = true;
+        window_start = -1;
+        return STEP_DOWN;
+    }
+
+    private void startWindow(long timestamp, long saved, long dropped) {
+        window_start = timestamp;
+        window_saved = saved;
+        window_dropped = dropped;
+    }
+
+    // Stops probing, for example when there is no smaller size to step down to
+    public void settle() {
+        settled = true;
+    }
+
+    public boolean isSettled() {
+        return settled;
+    }
+
+    // Saved frames per second over the last judged window
+    public double getRate() {
+        return rate;
+    }
+}
\ No newline at end of file
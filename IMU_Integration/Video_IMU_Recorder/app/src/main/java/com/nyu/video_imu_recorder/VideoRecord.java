@@ -2,10 +2,13 @@ package com.nyu.video_imu_recorder;
 
 import android.Manifest;
 import android.content.pm.PackageManager;
+import android.hardware.camera2.CameraCaptureSession;
 import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
 import android.os.Bundle;
-import android.os.SystemClock;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -13,6 +16,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.OptIn;
 import androidx.camera.camera2.Camera2Config;
 import androidx.camera.camera2.interop.Camera2CameraInfo;
+import androidx.camera.camera2.interop.Camera2Interop;
 import androidx.camera.camera2.interop.ExperimentalCamera2Interop;
 import androidx.camera.core.CameraInfo;
 import androidx.camera.core.CameraSelector;
@@ -24,6 +28,7 @@ import androidx.camera.video.Quality;
 import androidx.camera.video.QualitySelector;
 import androidx.camera.video.Recorder;
 import androidx.camera.video.Recording;
+import androidx.camera.video.RecordingStats;
 import androidx.camera.video.VideoCapture;
 import androidx.camera.video.VideoRecordEvent;
 import androidx.camera.view.PreviewView;
@@ -31,6 +36,8 @@ import androidx.core.content.ContextCompat;
 import androidx.core.util.Consumer;
 
 import com.google.common.util.concurrent.ListenableFuture;
+import com.nyu.imu_processing.FrameTimestamps;
+import com.nyu.imu_processing.SessionMetrics;
 
 import java.io.File;
 import java.io.IOException;
@@ -45,9 +52,14 @@ public class VideoRecord extends IMUCapture implements CameraXConfig.Provider {
 
     private static final int CAMERA_PERMISSION = new SecureRandom().nextInt(100);
     private static final String CAM = "Capture_use_cases";
+    // The frame timestamp sidecar grows by 20 bytes a frame, so it is mapped in much smaller steps than the IMU data
+    private static final int FRAME_TIMESTAMPS_CHUNK_SIZE = 1 << 16;
     private VideoCapture<Recorder> video_capture;
     private Recording video_recording;
-    private long last_save_time = 0;
+    private volatile FrameTimestamps.Writer frame_timestamps;
+    private MappedFileOutputStream frames_output;
+    // Whether captured frames are currently going into the video (recording started and not paused)
+    private volatile boolean frames_recording;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -81,6 +93,13 @@ public class VideoRecord extends IMUCapture implements CameraXConfig.Provider {
         });
     }
 
+    @Override
+    protected void onDestroy() {
+        // Close the sidecar before the session journal is closed with the activity
+        closeFrameTimestamps();
+        super.onDestroy();
+    }
+
     @Override
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
@@ -115,7 +134,10 @@ public class VideoRecord extends IMUCapture implements CameraXConfig.Provider {
         QualitySelector quality_selector = QualitySelector.from(available_qualities.findFirst().orElseThrow(NoSuchElementException::new));
         Recorder recorder = new Recorder.Builder().setExecutor(ContextCompat.getMainExecutor(this))
                 .setQualitySelector(quality_selector).build();
-        return VideoCapture.withOutput(recorder);
+        // Hook into the Camera2 capture results to get the sensor timestamp of every frame
+        VideoCapture.Builder<Recorder> video_capture_builder = new VideoCapture.Builder<>(recorder);
+        new Camera2Interop.Extender<>(video_capture_builder).setSessionCaptureCallback(frame_callback);
+        return video_capture_builder.build();
     }
 
     private void bindPreviewAndVideo(ProcessCameraProvider camera_provider, PreviewView camera_preview) {
@@ -143,6 +165,11 @@ public class VideoRecord extends IMUCapture implements CameraXConfig.Provider {
         File video_location = setIMUFileAndGetMediaLocation(imu_data_name, media_name);
         video_location = new File(video_location.getParentFile(), video_location.getName() + ".mp4");
         FileOutputOptions output_options = new FileOutputOptions.Builder(video_location).build();
+        File frames_location = new File(video_location.getParentFile(), video_location.getName() + FrameTimestamps.FILE_SUFFIX);
+        frames_output = new MappedFileOutputStream(frames_location, FRAME_TIMESTAMPS_CHUNK_SIZE);
+        frame_timestamps = new FrameTimestamps.Writer(frames_output);
+        // Sensor timestamps sit 8 bytes into each entry, after the frame number
+        commitStream(frames_output, frames_location, FrameTimestamps.HEADER_SIZE, FrameTimestamps.ENTRY_SIZE, Long.BYTES);
         // Enable writing to IMU data file, start recording, and listen for sensor data
         startIMURecording();
         video_recording = video_capture.getOutput().prepareRecording(this, output_options)
@@ -151,17 +178,25 @@ public class VideoRecord extends IMUCapture implements CameraXConfig.Provider {
 
     // This is the callback handed to video capture to handle recording related events
     private final Consumer<VideoRecordEvent> record_event_listener = video_record_event -> {
+        // Every event, the periodic status ones included, reports how much of the video has been written so far
+        RecordingStats stats = video_record_event.getRecordingStats();
+        metrics.set(SessionMetrics.MEDIA_BYTES_WRITTEN, stats.getNumBytesRecorded());
+        metrics.set(SessionMetrics.MEDIA_DURATION, stats.getRecordedDurationNanos());
 
         if (video_record_event instanceof VideoRecordEvent.Start) {
-            // Note the start time of the recording in the imu data file
-            notifyVideoStart(SystemClock.elapsedRealtimeNanos());
+            // The start of the recording is noted in the imu data file with the timestamp of the first frame
+            frames_recording = true;
             Toast.makeText(this, "Recording started", Toast.LENGTH_SHORT).show();
 
         } else if (video_record_event instanceof VideoRecordEvent.Pause) {
+            frames_recording = false;
+            notifyRecordingPaused();
             stopIMURecording();
             Toast.makeText(this, "Recording paused", Toast.LENGTH_SHORT).show();
         } else if (video_record_event instanceof VideoRecordEvent.Resume) {
             startIMURecording();
+            notifyRecordingResumed();
+            frames_recording = true;
             Toast.makeText(this, "Recording resumed", Toast.LENGTH_SHORT).show();
 
         } else if (video_record_event instanceof VideoRecordEvent.Finalize) {
@@ -176,17 +211,52 @@ public class VideoRecord extends IMUCapture implements CameraXConfig.Provider {
             } else {
                 Toast.makeText(this, "Recording success", Toast.LENGTH_SHORT).show();
             }
+            frames_recording = false;
+            closeFrameTimestamps();
             broadcast_record_status(final_message);
             Log.i(CAM, "Video path: " + finalize_event.getOutputResults().getOutputUri().getPath());
-            return;
         }
+    };
 
-        // Close and re-open the FileOutputStream object every 3 seconds to avoid overwhelming file write buffer
-        long current_time = video_record_event.getRecordingStats().getRecordedDurationNanos();
-        if ((current_time - last_save_time > 3 * Math.pow(10, 9))) {
-            last_save_time = current_time;
-            stopIMURecording();
-            startIMURecording();
+    // Camera2 callback for every frame the camera captures, on the camera thread; notes when the frames going into the video were taken
+    private final CameraCaptureSession.CaptureCallback frame_callback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request,
+                                       @NonNull TotalCaptureResult result) {
+            Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+            if (timestamp == null) return;
+            notifyCameraFrame(timestamp);
+            FrameTimestamps.Writer writer = frame_timestamps;
+            if (!frames_recording || writer == null) return;
+            Long exposure_time = result.get(CaptureResult.SENSOR_EXPOSURE_TIME);
+            // Guards against the sidecar being closed from the main thread in the middle of a write
+            synchronized (writer) {
+                if (frame_timestamps != writer) return;
+                try {
+                    notifyFrameRecorded(timestamp, result.getFrameNumber());
+                    writer.write(result.getFrameNumber(), timestamp, exposure_time == null ? 0 : exposure_time);
+                    notifyWritten(FrameTimestamps.ENTRY_SIZE);
+                } catch (IOException exception) {
+                    Log.e(CAM, "Frame timestamp failed to be written: " + exception.getMessage());
+                }
+            }
         }
     };
+
+    // Called on finalizing the recording and again on destroy, in case the activity goes before the recording finalizes
+    private void closeFrameTimestamps() {
+        FrameTimestamps.Writer writer = frame_timestamps;
+        if (writer == null) return;
+        frame_timestamps = null;
+        synchronized (writer) {
+            try {
+                Log.i(CAM, writer.getCount() + " frame timestamps saved");
+                stopCommitting(frames_output);
+                writer.close();
+            } catch (IOException exception) {
+                Log.e(CAM, "Frame timestamp file failed to close");
+                exception.printStackTrace();
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+package com.nyu.video_imu_recorder;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class BurstContainerTest {
+
+    private static ByteBuffer frame(int length, int fill) {
+        ByteBuffer frame = ByteBuffer.allocateDirect(length);
+        while (frame.hasRemaining()) frame.put((byte) fill);
+        frame.flip();
+        return frame;
+    }
+
+    @Test
+    public void reader_findsFramesByTimestampAndSurvivesTruncatedTail() throws IOException {
+        File directory = Files.createTempDirectory("container").toFile();
+        BurstContainer container = new BurstContainer(directory);
+        // Out of order completion, as with several saver threads
+        container.write(300, frame(30, 3));
+        container.write(100, frame(10, 1));
+        container.write(200, frame(20, 2));
+        container.close();
+
+        // Simulate a crash while appending a fourth frame: half its index entry and only part of its data made it out
+        File index_file = new File(directory, BurstContainer.INDEX_NAME);
+        File data_file = new File(directory, BurstContainer.DATA_NAME);
+        try (RandomAccessFile index = new RandomAccessFile(index_file, "rw");
+             RandomAccessFile data = new RandomAccessFile(data_file, "rw")) {
+            index.seek(index.length());
+            index.writeLong(400);
+            index.writeLong(60);
+            data.setLength(70);
+        }
+
+        try (BurstContainerReader reader = new BurstContainerReader(directory)) {
+            assertEquals(3, reader.size());
+            assertEquals(100, reader.getTimestamp(0));
+            assertEquals(-1, reader.indexOf(400));
+            int frame = reader.indexOf(200);
+            ByteBuffer image_buffer = ByteBuffer.allocate(reader.getLength(frame));
+            reader.read(frame, image_buffer);
+            assertEquals(20, image_buffer.position());
+            assertEquals(2, image_buffer.get(19));
+        }
+
+        // Reopening for writing drops the partial tail and continues after the last complete frame
+        container = new BurstContainer(directory);
+        container.write(400, frame(5, 4));
+        container.close();
+        assertEquals(65, data_file.length());
+        try (BurstContainerReader reader = new BurstContainerReader(directory)) {
+            assertEquals(4, reader.size());
+            assertEquals(3, reader.indexOf(400));
+        }
+
+        index_file.delete();
+        data_file.delete();
+        directory.delete();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,31 @@
+package com.nyu.video_imu_recorder;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ClockSyncTest {
+
+    @Test
+    public void observe_recoversOffsetAndDriftThroughDeliveryJitter() {
+        ClockSync clock = new ClockSync(1_000_000_000L, 0.95);
+        Random random = new Random(7);
+        long offset = 3_000_000L;
+        double drift = 20e-6;
+        boolean updated = false;
+        // 200 Hz samples for two minutes, delivered between 0.1 and 20 ms late
+        for (long source_time = 0; source_time < 120_000_000_000L; source_time += 5_000_000L) {
+            long true_reference = source_time + offset + Math.round(drift * source_time);
+            long delay = 100_000L + (long) (random.nextDouble() * random.nextDouble() * 20_000_000L);
+            updated |= clock.observe(source_time, true_reference + delay);
+        }
+
+        assertTrue(updated);
+        assertTrue(clock.hasEstimate());
+        assertEquals(20_000, clock.getDriftPpb(), 2_000);
+        long probe = 100_000_000_000L;
+        assertEquals(probe + offset + Math.round(drift * probe), clock.toReference(probe), 200_000);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,38 @@
+package com.nyu.video_imu_recorder;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class ImageSaverTest {
+
+    @Test
+    public void submit_blockingWritesEveryFrameFromPooledBuffers() throws IOException, InterruptedException {
+        File images_directory = Files.createTempDirectory("burst").toFile();
+        ImageSaver image_saver = new ImageSaver(new ImageDirectorySink(images_directory), 2, 1, ImageSaver.Backpressure.BLOCK, 64);
+        for (int frame = 0; frame < 20; ++frame) {
+            ByteBuffer image_buffer = image_saver.acquireBuffer(frame + 1);
+            assertNotNull(image_buffer);
+            for (int index = 0; index <= frame; ++index) image_buffer.put((byte) frame);
+            image_buffer.flip();
+            image_saver.submit(frame, image_buffer);
+        }
+        image_saver.shutdown(5000);
+
+        assertEquals(20, image_saver.getSaved());
+        assertEquals(0, image_saver.getDropped());
+        for (int frame = 0; frame < 20; ++frame) {
+            File image_file = new File(images_directory, frame + ".jpeg");
+            byte[] image_bytes = Files.readAllBytes(image_file.toPath());
+            assertEquals(frame + 1, image_bytes.length);
+            assertEquals(frame, image_bytes[frame]);
+            image_file.delete();
+        }
+        images_directory.delete();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.nyu.video_imu_recorder;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class MappedFileOutputStreamTest {
+
+    @Test
+    public void close_truncatesToWrittenLengthAcrossChunks() throws IOException {
+        File output = File.createTempFile("imu", ".bin");
+        output.deleteOnExit();
+        byte[] data = new byte[100];
+        for (int index = 0; index < data.length; ++index) data[index] = (byte) index;
+
+        MappedFileOutputStream stream = new MappedFileOutputStream(output, 16);
+        stream.write(data, 0, 40);
+        stream.write(data[40]);
+        stream.write(data, 41, 9);
+        assertEquals(50, stream.length());
+        stream.close();
+        assertEquals(50, output.length());
+
+        // Reopening appends after the truncated end, like a FileOutputStream in append mode
+        stream = new MappedFileOutputStream(output, 32);
+        stream.write(data, 50, 50);
+        stream.close();
+        assertArrayEquals(data, Files.readAllBytes(output.toPath()));
+    }
+}
\ No newline at end of file
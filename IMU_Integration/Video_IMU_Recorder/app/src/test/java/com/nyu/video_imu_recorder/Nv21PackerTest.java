@@ -0,0 +1,47 @@
+package com.nyu.video_imu_recorder;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class Nv21PackerTest {
+
+    private static final int WIDTH = 4;
+    private static final int HEIGHT = 2;
+    // Luma 0..7, chroma U 20, 21 and V 30, 31
+    private static final byte[] NV21 = {0, 1, 2, 3, 4, 5, 6, 7, 30, 20, 31, 21};
+
+    private static ByteBuffer luma(int row_stride) {
+        ByteBuffer y = ByteBuffer.allocate(row_stride + WIDTH);
+        for (int index = 0; index < WIDTH; ++index) {
+            y.put(index, (byte) index).put(row_stride + index, (byte) (WIDTH + index));
+        }
+        return y;
+    }
+
+    @Test
+    public void pack_planarChromaWithRowPadding() {
+        ByteBuffer u = ByteBuffer.wrap(new byte[] {20, 21});
+        ByteBuffer v = ByteBuffer.wrap(new byte[] {30, 31});
+        ByteBuffer target = ByteBuffer.allocateDirect(Nv21Packer.size(WIDTH, HEIGHT));
+        new Nv21Packer().pack(luma(8), 8, u, v, 2, 1, WIDTH, HEIGHT, target);
+        assertFalse(target.hasRemaining());
+        byte[] packed = new byte[NV21.length];
+        ((ByteBuffer) target.flip()).get(packed);
+        assertArrayEquals(NV21, packed);
+    }
+
+    @Test
+    public void pack_semiPlanarChromaViews() {
+        // NV12 memory: the U plane starts at the first byte and the V plane at the second, both with a pixel stride of 2
+        byte[] chroma = {20, 30, 21, 31};
+        ByteBuffer u = ByteBuffer.wrap(chroma, 0, 3).slice();
+        ByteBuffer v = ByteBuffer.wrap(chroma, 1, 3).slice();
+        ByteBuffer target = ByteBuffer.allocate(Nv21Packer.size(WIDTH, HEIGHT));
+        new Nv21Packer().pack(luma(WIDTH), WIDTH, u, v, 4, 2, WIDTH, HEIGHT, target);
+        assertArrayEquals(NV21, target.array());
+        assertEquals(0, u.position());
+    }
+}
\ No newline at end of file
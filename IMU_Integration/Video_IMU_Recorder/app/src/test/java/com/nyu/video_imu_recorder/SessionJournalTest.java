@@ -0,0 +1,132 @@
+package com.nyu.video_imu_recorder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SessionJournalTest {
+
+    private static final int HEADER = 5;
+    private static final int RECORD = 21;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void writeRecords(MappedFileOutputStream stream, long first, int count) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD);
+        for (long timestamp = first; timestamp < first + count; ++timestamp) {
+            record.putLong(0, timestamp).put(8, (byte) 1);
+            stream.write(record.array(), 0, RECORD);
+        }
+    }
+
+    @Test
+    public void recover_cutsUncleanStreamAfterLastRecord() throws Exception {
+        File journal_file = new File(folder.getRoot(), SessionJournal.NAME);
+        File data = folder.newFile("imu.bin");
+        SessionJournal journal = new SessionJournal(journal_file);
+        GroupCommitter committer = new GroupCommitter(journal, 10, 1 << 20);
+        committer.start();
+
+        // Small chunks so that commits have to force chunks the writer already moved past
+        MappedFileOutputStream stream = new MappedFileOutputStream(data, 64);
+        stream.write(new byte[HEADER]);
+        committer.register(stream, data, HEADER, RECORD, 0);
+        writeRecords(stream, 1, 40);
+        committer.written(40 * RECORD);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (committer.getCommits() < 2 && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        assertTrue(committer.getCommits() >= 2);
+        writeRecords(stream, 41, 10);
+
+        // The process dies here: the stream is never closed, leaving preallocated zeros, and the journal stays behind
+        committer.finish();
+        assertTrue(journal_file.exists());
+        long written = HEADER + 50 * RECORD;
+        assertTrue(data.length() > written);
+
+        List<String> repaired = SessionJournal.recover(journal_file);
+        assertEquals(1, repaired.size());
+        assertEquals(written, data.length());
+        assertFalse(journal_file.exists());
+        try (RandomAccessFile file = new RandomAccessFile(data, "r")) {
+            file.seek(written - RECORD);
+            assertEquals(50, file.readLong());
+        }
+        // Nothing left to do on the next launch
+        assertTrue(SessionJournal.recover(journal_file).isEmpty());
+    }
+
+    @Test
+    public void open_repairsJournalLeftBehindBeforeReplacingIt() throws Exception {
+        File journal_file = new File(folder.getRoot(), SessionJournal.NAME);
+        File interrupted = folder.newFile("interrupted.bin"), next = folder.newFile("next.bin");
+        SessionJournal journal = new SessionJournal(journal_file);
+        MappedFileOutputStream stream = new MappedFileOutputStream(interrupted, 256);
+        int slot = journal.addStream(interrupted, 0, RECORD, 0);
+        writeRecords(stream, 1, 4);
+        journal.committed(slot, stream.commit());
+        // The process dies with the stream open; the system restores it straight into the next session
+        journal.release();
+        assertTrue(interrupted.length() > 4 * RECORD);
+
+        List<String> repaired = new ArrayList<>();
+        SessionJournal restored = SessionJournal.open(journal_file, repaired);
+        assertEquals(1, repaired.size());
+        assertEquals(4 * RECORD, interrupted.length());
+        restored.addStream(next, 0, RECORD, 0);
+        restored.release();
+
+        // The new journal lists only the new session's stream, which recovery leaves alone
+        assertTrue(SessionJournal.recover(journal_file).isEmpty());
+        assertEquals(4 * RECORD, interrupted.length());
+        stream.close();
+    }
+
+    @Test
+    public void close_endsSessionCleanly() throws Exception {
+        File journal_file = new File(folder.getRoot(), SessionJournal.NAME);
+        File data = folder.newFile("frames.bin");
+        SessionJournal journal = new SessionJournal(journal_file);
+        GroupCommitter committer = new GroupCommitter(journal, 1000, 1 << 20);
+        MappedFileOutputStream stream = new MappedFileOutputStream(data);
+        committer.register(stream, data, 0, RECORD, 8);
+        writeRecords(stream, 1, 3);
+        committer.unregister(stream);
+        stream.close();
+        assertTrue(journal_file.exists());
+        journal.close();
+        assertFalse(journal_file.exists());
+        assertEquals(3 * RECORD, data.length());
+    }
+
+    @Test
+    public void recover_ignoresCommittedLengthPastEndOfFile() throws IOException {
+        File journal_file = new File(folder.getRoot(), SessionJournal.NAME);
+        File data = folder.newFile("imu.bin");
+        SessionJournal journal = new SessionJournal(journal_file);
+        MappedFileOutputStream stream = new MappedFileOutputStream(data, 256);
+        int slot = journal.addStream(data, 0, RECORD, 0);
+        writeRecords(stream, 1, 4);
+        journal.committed(slot, 1 << 20);
+        stream.close();
+        // A partial record after the last whole one, as a writer without preallocation would leave it
+        try (RandomAccessFile file = new RandomAccessFile(data, "rw")) {
+            file.seek(file.length());
+            file.writeLong(5);
+            file.writeShort(1);
+        }
+
+        SessionJournal.recover(journal_file);
+        assertEquals(4 * RECORD, data.length());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,87 @@
+package com.nyu.video_imu_recorder;
+
+import com.nyu.imu_processing.IMURecord;
+import com.nyu.imu_processing.IMURingBuffer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class SyncChannelTest {
+
+    private static ByteBuffer drain(IMURingBuffer... rings) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (IMURingBuffer ring : rings) ring.drainTo(output);
+        return ByteBuffer.wrap(output.toByteArray());
+    }
+
+    @Test
+    public void startMarker_writtenByWhicheverSideStartsSecond() throws IOException {
+        IMURingBuffer sensor_ring = new IMURingBuffer(16);
+        SyncChannel camera_first = new SyncChannel(sensor_ring);
+        camera_first.cameraStarted(1000);
+        camera_first.cameraStarted(2000);
+        camera_first.imuStarted(900);
+        ByteBuffer records = drain(sensor_ring, camera_first.getCameraRing());
+        assertEquals(IMURecord.SIZE, records.limit());
+        assertEquals(1000, records.getLong(0));
+        assertEquals(IMURecord.VIDEO_START, records.get(8));
+        assertEquals(-100, records.getLong(9));
+
+        SyncChannel imu_first = new SyncChannel(sensor_ring);
+        imu_first.imuStarted(1100);
+        imu_first.cameraStarted(1000);
+        imu_first.imuStarted(5000);
+        records = drain(sensor_ring, imu_first.getCameraRing());
+        assertEquals(IMURecord.SIZE, records.limit());
+        assertEquals(100, records.getLong(9));
+        assertEquals(100, imu_first.getStartLatency());
+    }
+
+    @Test
+    public void startMarker_writtenExactlyOnceUnderRace() throws Exception {
+        for (int round = 0; round < 200; ++round) {
+            IMURingBuffer sensor_ring = new IMURingBuffer(16);
+            SyncChannel channel = new SyncChannel(sensor_ring);
+            CountDownLatch go = new CountDownLatch(1);
+            Thread sensor = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException exception) {
+                    return;
+                }
+                channel.imuStarted(5);
+            });
+            sensor.start();
+            go.countDown();
+            channel.cameraStarted(7);
+            sensor.join();
+            assertEquals(1, sensor_ring.size() + channel.getCameraRing().size());
+        }
+    }
+
+    @Test
+    public void events_goToTheReportingThreadsRing() throws IOException {
+        IMURingBuffer sensor_ring = new IMURingBuffer(16);
+        SyncChannel channel = new SyncChannel(sensor_ring);
+        channel.cameraFrame(10, 42);
+        channel.cameraClockSync(11, 300, -2);
+        channel.paused(12);
+        channel.resumed(13);
+        channel.sensorClockSync(14, 400, 3);
+
+        ByteBuffer camera = drain(channel.getCameraRing());
+        assertEquals(IMURecord.CAMERA_FRAME, camera.get(8));
+        assertEquals(42, camera.getLong(9));
+        assertEquals(IMURecord.CAMERA_CLOCK_SYNC, camera.get(IMURecord.SIZE + 8));
+        ByteBuffer control = drain(channel.getControlRing());
+        assertEquals(IMURecord.RECORDING_PAUSED, control.get(8));
+        assertEquals(IMURecord.RECORDING_RESUMED, control.get(IMURecord.SIZE + 8));
+        assertEquals(IMURecord.SENSOR_CLOCK_SYNC, drain(sensor_ring).get(8));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,65 @@
+package com.nyu.video_imu_recorder;
+
+import android.util.Size;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ThroughputProbeTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    /*
+    Simulates ten seconds of a burst whose saved frame rate at each size is fps[size], dropping frames while the rate is
+    short of the target, and returns the probe's verdicts in order. A step down moves on to the next size.
+    */
+    private static List<Integer> simulate(ThroughputProbe probe, int target, int... fps) {
+        List<Integer> verdicts = new ArrayList<>();
+        int size = 0;
+        long timestamp = 0, saved = 0, dropped = 0;
+        while (timestamp < 10 * SECOND) {
+            timestamp += SECOND / fps[size];
+            ++saved;
+            if (fps[size] < target) ++dropped;
+            int verdict = probe.observe(timestamp, saved, dropped);
+            if (verdict == ThroughputProbe.MEASURING) continue;
+            verdicts.add(verdict);
+            if (verdict == ThroughputProbe.STEP_DOWN) ++size;
+        }
+        return verdicts;
+    }
+
+    @Test
+    public void observe_stepsDownUntilTargetIsSustained() {
+        ThroughputProbe probe = new ThroughputProbe(30, SECOND);
+        assertEquals(Arrays.asList(ThroughputProbe.STEP_DOWN, ThroughputProbe.STEP_DOWN, ThroughputProbe.SUSTAINED),
+                simulate(probe, 30, 12, 20, 30));
+        assertTrue(probe.isSettled());
+        assertEquals(30, probe.getRate(), 1);
+    }
+
+    @Test
+    public void observe_stepsBackWhenSmallerFramesDoNotHelp() {
+        ThroughputProbe probe = new ThroughputProbe(60, SECOND);
+        assertEquals(Arrays.asList(ThroughputProbe.STEP_DOWN, ThroughputProbe.STEP_BACK), simulate(probe, 60, 24, 24, 24));
+        assertTrue(probe.isSettled());
+    }
+
+    @Test
+    public void captureProfile_picksAndStepsDownSizesOfTheSameAspectRatio() {
+        Size[] sizes = {new Size(4000, 3000), new Size(3840, 2160), new Size(2000, 1500), new Size(1920, 1080),
+                new Size(1600, 1200), new Size(640, 480), new Size(320, 240)};
+        assertEquals(new Size(4000, 3000), CaptureProfile.FULL_JPEG.initialSize(sizes));
+        assertEquals(new Size(2000, 1500), CaptureProfile.REDUCED_JPEG.initialSize(sizes));
+        assertEquals(new Size(2000, 1500), CaptureProfile.stepDown(sizes, new Size(4000, 3000)));
+        assertEquals(new Size(640, 480), CaptureProfile.stepDown(sizes, new Size(1600, 1200)));
+        // No 16:9 size left that small, so any aspect ratio will do
+        assertEquals(new Size(640, 480), CaptureProfile.stepDown(sizes, new Size(1920, 1080)));
+        assertNull(CaptureProfile.stepDown(sizes, new Size(320, 240)));
+    }
+}
\ No newline at end of file
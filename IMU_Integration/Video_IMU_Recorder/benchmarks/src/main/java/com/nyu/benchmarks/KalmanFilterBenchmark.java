@@ -0,0 +1,56 @@
+package com.nyu.benchmarks;
+
+import com.nyu.imu_processing.KalmanFilter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// One predict/update step per op, for the scalar filter and the 9-state filter used for 3-axis IMU integration
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KalmanFilterBenchmark {
+
+    private KalmanFilter scalar;
+    private KalmanFilter three_axis;
+    private final double[] acceleration = {0.1, -0.2, 9.81};
+    private final double[] position = {0.01, 0.02, 0.03};
+    private double measurement;
+
+    @Setup
+    public void setUp() {
+        scalar = new KalmanFilter(0.0, 1.0, 0.01, 0.1);
+        three_axis = KalmanFilter.positionVelocityBias(3, 0.005, 0.5, 0.01, 0.05);
+    }
+
+    @Benchmark
+    public double scalarPredictUpdate() {
+        measurement += 0.001;
+        scalar.predict();
+        return scalar.update(measurement);
+    }
+
+    @Benchmark
+    public double threeAxisPredictUpdate() {
+        three_axis.predict(acceleration, 0);
+        return three_axis.update(position, 0);
+    }
+
+    @Benchmark
+    public double threeAxisPredict() {
+        return three_axis.predict(acceleration, 0);
+    }
+}
\ No newline at end of file
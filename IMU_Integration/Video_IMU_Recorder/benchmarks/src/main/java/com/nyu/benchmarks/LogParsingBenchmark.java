@@ -0,0 +1,82 @@
+package com.nyu.benchmarks;
+
+import com.nyu.imu_processing.IMURecord;
+import com.nyu.imu_processing.IMUTextLog;
+import com.nyu.imu_processing.IMUTextLogParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Reading a whole IMU log of the given number of samples per op: the binary log exported as text, and that text parsed
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogParsingBenchmark {
+
+    @Param({"120000"})
+    public int samples;
+
+    private byte[] log;
+    private File text_log;
+
+    @Setup
+    public void generate() throws IOException {
+        byte[] header = IMURecord.encodeHeader(new byte[] {IMURecord.LINEAR_ACCELERATION, IMURecord.GYROSCOPE},
+                new String[] {"Linear Acceleration", "Gyroscope"});
+        ByteBuffer buffer = ByteBuffer.allocate(header.length + samples * IMURecord.SIZE);
+        buffer.put(header);
+        float[] values = new float[3];
+        for (int index = 0; index < samples; ++index) {
+            values[0] = 0.001f * index;
+            values[1] = -0.002f * index;
+            values[2] = 9.81f;
+            byte sensor_id = index % 2 == 0 ? IMURecord.LINEAR_ACCELERATION : IMURecord.GYROSCOPE;
+            IMURecord.putSample(buffer, header.length + index * IMURecord.SIZE, 1_000_000_000L + 2_500_000L * index,
+                    sensor_id, values);
+        }
+        log = buffer.array();
+
+        text_log = File.createTempFile("imu", ".txt");
+        try (Writer text_output = new OutputStreamWriter(new FileOutputStream(text_log), StandardCharsets.UTF_8)) {
+            IMURecord.exportText(new ByteArrayInputStream(log), text_output);
+        }
+    }
+
+    @TearDown
+    public void deleteTextLog() {
+        text_log.delete();
+    }
+
+    @Benchmark
+    public void exportText() throws IOException {
+        IMURecord.exportText(new ByteArrayInputStream(log), Writer.nullWriter());
+    }
+
+    @Benchmark
+    public IMUTextLog parseText() throws IOException {
+        return IMUTextLogParser.parse(text_log);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,60 @@
+package com.nyu.benchmarks;
+
+import com.nyu.imu_processing.IMURecord;
+import com.nyu.imu_processing.IMURingBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/*
+The per-sample work onSensorChanged() does on the sensor thread: encoding one record of a channel's axes from the
+event values, alone and through the ring buffer (the sensor's lane) that the writer thread drains. Draining happens
+inline whenever the ring fills, so its cost is spread over the samples it writes.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordEncodingBenchmark {
+
+    private final float[] values = {0.01f, -0.02f, 9.81f};
+    private final OutputStream discard = OutputStream.nullOutputStream();
+    private ByteBuffer buffer;
+    private IMURingBuffer ring;
+    private long timestamp;
+
+    @Setup
+    public void setUp() {
+        buffer = ByteBuffer.allocate(IMURecord.SIZE);
+        ring = new IMURingBuffer(1 << 14);
+    }
+
+    @Benchmark
+    public ByteBuffer putSample() {
+        IMURecord.putSample(buffer, 0, timestamp += 5_000_000, IMURecord.LINEAR_ACCELERATION, values, 0, values.length);
+        return buffer;
+    }
+
+    @Benchmark
+    public boolean offerSample() throws IOException {
+        timestamp += 5_000_000;
+        if (ring.offerSample(timestamp, IMURecord.GYROSCOPE, values, 0, values.length)) return true;
+        ring.drainTo(discard);
+        return ring.offerSample(timestamp, IMURecord.GYROSCOPE, values, 0, values.length);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,46 @@
+package com.nyu.benchmarks;
+
+import com.nyu.imu_processing.StrapdownIntegrator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// One strapdown integration step per op; at 200 Hz, 200 ops/s is real time
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrapdownBenchmark {
+
+    @Param({"TRAPEZOIDAL", "RK4"})
+    public StrapdownIntegrator.Method method;
+
+    private StrapdownIntegrator integrator;
+    private final double[] gyroscope = {0.01, -0.02, 0.3};
+    private final double[] acceleration = {0.1, 0.2, -0.05};
+    private long timestamp;
+
+    @Setup
+    public void setUp() {
+        integrator = new StrapdownIntegrator(method);
+    }
+
+    @Benchmark
+    public double[] step() {
+        integrator.step(timestamp += 5_000_000, 0.005, gyroscope, 0, acceleration, 0);
+        return integrator.getPosition();
+    }
+}
\ No newline at end of file
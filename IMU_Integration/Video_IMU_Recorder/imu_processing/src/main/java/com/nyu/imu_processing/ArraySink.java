@@ -0,0 +1,28 @@
+package com.nyu.imu_processing;
+
+// End of a chain that stores the stream into a preallocated array, for callers that do want the whole series
+public class ArraySink implements SampleSink {
+
+    private final double[] values;
+    private final int channels;
+    private int count;
+
+    public ArraySink(double[] values, int channels) {
+        this.values = values;
+        this.channels = channels;
+    }
+
+    @Override
+    public void accept(long timestamp, double[] sample, int offset) {
+        System.arraycopy(sample, offset, values, count * channels, channels);
+        ++count;
+    }
+
+    public double[] getValues() {
+        return values;
+    }
+
+    public int getCount() {
+        return count;
+    }
+}
\ No newline at end of file
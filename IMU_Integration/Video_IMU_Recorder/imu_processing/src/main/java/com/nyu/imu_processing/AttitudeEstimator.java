@@ -0,0 +1,144 @@
+package com.nyu.imu_processing;
+
+/*
+Streaming attitude estimator (Mahony complementary filter) fed straight from gyroscope and accelerometer events
+
+Every gyroscope sample rotates the orientation (body to world, w, x, y, z) by its angular rate over the time since the
+previous one. The latest accelerometer sample, which at rest points up in the body frame, corrects the drift: the
+cross product of the measured and the estimated up direction is fed back into the rate with a proportional gain and
+through an integral term that learns the gyroscope bias. Accelerations far from 1 g are mostly the device's own motion
+and skip the correction. Roll and pitch converge from the first accelerometer sample; yaw has no reference and starts
+at zero.
+
+Events may arrive in any interleaving of the two sensors, as long as each stream is in time order. State is a fixed
+set of fields, updates allocate nothing, and every gyroscope update publishes the orientation to the snapshot, which
+other threads read without blocking the one calling the update methods. Call the update methods from one thread only.
+*/
+public class AttitudeEstimator {
+
+    public static final double DEFAULT_PROPORTIONAL_GAIN = 0.5;
+    public static final double DEFAULT_INTEGRAL_GAIN = 0.01;
+    private static final double GRAVITY = 9.80665;
+    // Accelerations further than this share of 1 g from it are not used as the up direction
+    private static final double GRAVITY_TOLERANCE = 0.2;
+    // Gaps longer than this (a paused recording) restart the integration instead of spanning them
+    private static final long MAX_STEP_NANOS = 100_000_000L;
+
+    private final double proportional_gain;
+    private final double integral_gain;
+    private final AttitudeSnapshot snapshot = new AttitudeSnapshot();
+    private double qw = 1, qx, qy, qz;
+    // Integral feedback, the negated gyroscope bias estimate (rad/s)
+    private double bias_x, bias_y, bias_z;
+    // Latest normalized up direction, valid once an accelerometer sample within tolerance arrived
+    private double up_x, up_y, up_z;
+    private boolean up_valid;
+    private boolean aligned;
+    private long last_gyroscope = -1;
+
+    public AttitudeEstimator() {
+        this(DEFAULT_PROPORTIONAL_GAIN, DEFAULT_INTEGRAL_GAIN);
+    }
+
+    public AttitudeEstimator(double proportional_gain, double integral_gain) {
+        if (proportional_gain < 0 || integral_gain < 0) throw new IllegalArgumentException("Gains must not be negative");
+        this.proportional_gain = proportional_gain;
+        this.integral_gain = integral_gain;
+    }
+
+    public AttitudeSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    // Accelerometer sample (m/s^2, gravity included)
+    public void updateAccelerometer(long timestamp, float x, float y, float z) {
+        double norm = Math.sqrt((double) x * x + (double) y * y + (double) z * z);
+        up_valid = Math.abs(norm - GRAVITY) <= GRAVITY_TOLERANCE * GRAVITY;
+        if (!up_valid) return;
+        up_x = x / norm;
+        up_y = y / norm;
+        up_z = z / norm;
+        if (!aligned) {
+            // Start level with the measured up direction: the shortest rotation taking it onto the world's z axis
+            aligned = true;
+            if (up_z < -0.999999) {
+                qw = 0;
+                qx = 1;
+                qy = 0;
+                qz = 0;
+            } else {
+                qw = 1 + up_z;
+                qx = up_y;
+                qy = -up_x;
+                qz = 0;
+                normalize();
+            }
+            snapshot.publish(timestamp, qw, qx, qy, qz);
+        }
+    }
+
+    // Gyroscope sample (rad/s)
+    public void updateGyroscope(long timestamp, float x, float y, float z) {
+        long previous = last_gyroscope;
+        last_gyroscope = timestamp;
+        if (previous < 0 || timestamp <= previous || timestamp - previous > MAX_STEP_NANOS) return;
+        double dt = (timestamp - previous) * 1e-9;
+        double rate_x = x, rate_y = y, rate_z = z;
+
+        if (up_valid) {
+            // World up in the body frame as the orientation has it
+            double estimate_x = 2 * (qx * qz - qw * qy);
+            double estimate_y = 2 * (qw * qx + qy * qz);
+            double estimate_z = qw * qw - qx * qx - qy * qy + qz * qz;
+            double error_x = up_y * estimate_z - up_z * estimate_y;
+            double error_y = up_z * estimate_x - up_x * estimate_z;
+            double error_z = up_x * estimate_y - up_y * estimate_x;
+            if (integral_gain > 0) {
+                bias_x += integral_gain * error_x * dt;
+                bias_y += integral_gain * error_y * dt;
+                bias_z += integral_gain * error_z * dt;
+            }
+            rate_x += proportional_gain * error_x + bias_x;
+            rate_y += proportional_gain * error_y + bias_y;
+            rate_z += proportional_gain * error_z + bias_z;
+        }
+
+        // q += q (0, rate) dt / 2
+        double half_dt = 0.5 * dt;
+        double w = qw, i = qx, j = qy, k = qz;
+        qw = w + (-i * rate_x - j * rate_y - k * rate_z) * half_dt;
+        qx = i + (w * rate_x + j * rate_z - k * rate_y) * half_dt;
+        qy = j + (w * rate_y - i * rate_z + k * rate_x) * half_dt;
+        qz = k + (w * rate_z + i * rate_y - j * rate_x) * half_dt;
+        normalize();
+        snapshot.publish(timestamp, qw, qx, qy, qz);
+    }
+
+    private void normalize() {
+        double norm = Math.sqrt(qw * qw + qx * qx + qy * qy + qz * qz);
+        qw /= norm;
+        qx /= norm;
+        qy /= norm;
+        qz /= norm;
+    }
+
+    // Starts over from the identity orientation and no bias
+    public void reset() {
+        qw = 1;
+        qx = qy = qz = 0;
+        bias_x = bias_y = bias_z = 0;
+        up_valid = aligned = false;
+        last_gyroscope = -1;
+    }
+
+    /*
+    Roll, pitch and yaw (rad, rotations about x, y and z applied in z-y-x order) of a quaternion as read from the
+    snapshot, into the first three entries of angles
+    */
+    public static void toEulerAngles(double[] quaternion, double[] angles) {
+        double w = quaternion[0], x = quaternion[1], y = quaternion[2], z = quaternion[3];
+        angles[0] = Math.atan2(2 * (w * x + y * z), 1 - 2 * (x * x + y * y));
+        angles[1] = Math.asin(Math.max(-1, Math.min(1, 2 * (w * y - z * x))));
+        angles[2] = Math.atan2(2 * (w * z + x * y), 1 - 2 * (y * y + z * z));
+    }
+}
\ No newline at end of file
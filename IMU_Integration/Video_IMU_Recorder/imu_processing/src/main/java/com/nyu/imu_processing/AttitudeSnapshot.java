@@ -0,0 +1,45 @@
+package com.nyu.imu_processing;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+Latest orientation quaternion published by one writer for any number of readers, without locks or allocation
+
+A sequence lock: the writer makes the version odd, stores the timestamp and the quaternion (as raw double bits in
+an AtomicLongArray), then makes the version even again. A reader copies the values between two reads of the version
+and retries if the version was odd or changed in between, so it never sees half of an update and never holds up the
+writer.
+*/
+public final class AttitudeSnapshot {
+
+    private final AtomicLong version = new AtomicLong();
+    // Timestamp, then w, x, y, z
+    private final AtomicLongArray values = new AtomicLongArray(5);
+
+    // Writer only
+    public void publish(long timestamp, double w, double x, double y, double z) {
+        long next = version.get() + 1;
+        version.set(next);
+        values.set(0, timestamp);
+        values.set(1, Double.doubleToRawLongBits(w));
+        values.set(2, Double.doubleToRawLongBits(x));
+        values.set(3, Double.doubleToRawLongBits(y));
+        values.set(4, Double.doubleToRawLongBits(z));
+        version.set(next + 1);
+    }
+
+    // Copies the latest quaternion (w, x, y, z) into the array and returns its timestamp, 0 if nothing was published yet
+    public long read(double[] quaternion) {
+        while (true) {
+            long before = version.get();
+            if ((before & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+            long timestamp = values.get(0);
+            for (int index = 0; index < 4; ++index) quaternion[index] = Double.longBitsToDouble(values.get(index + 1));
+            if (version.get() == before) return timestamp;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,122 @@
+package com.nyu.imu_processing;
+
+/*
+Coefficients of an IIR filter realised as a cascade of second-order sections
+
+Butterworth designs place each pair of analog prototype poles in one biquad (bilinear transform, pre-warped at the
+cutoff) and an odd order adds a first-order section. A band-pass is the high-pass at its lower edge followed by the
+low-pass at its upper edge. Sections run in transposed direct form II; the caller owns the state, two values per
+section, so one design can filter any number of channels or threads at once.
+*/
+public final class BiquadCascade {
+
+    private final int sections;
+    // Normalised coefficients per section (a0 = 1)
+    private final double[] b0, b1, b2, a1, a2;
+    // Decay rate of the slowest pole of the design, in radians per sample
+    private final double slowest_decay;
+
+    private BiquadCascade(int sections, double slowest_decay) {
+        this.sections = sections;
+        this.slowest_decay = slowest_decay;
+        b0 = new double[sections];
+        b1 = new double[sections];
+        b2 = new double[sections];
+        a1 = new double[sections];
+        a2 = new double[sections];
+    }
+
+    public static BiquadCascade lowPass(int order, double cutoff_hz, double sample_rate_hz) {
+        return butterworth(order, cutoff_hz, sample_rate_hz, false);
+    }
+
+    public static BiquadCascade highPass(int order, double cutoff_hz, double sample_rate_hz) {
+        return butterworth(order, cutoff_hz, sample_rate_hz, true);
+    }
+
+    public static BiquadCascade bandPass(int order, double low_hz, double high_hz, double sample_rate_hz) {
+        if (low_hz >= high_hz) throw new IllegalArgumentException("Band-pass lower edge must lie below the upper edge");
+        BiquadCascade high_pass = highPass(order, low_hz, sample_rate_hz);
+        BiquadCascade low_pass = lowPass(order, high_hz, sample_rate_hz);
+        BiquadCascade band_pass = new BiquadCascade(high_pass.sections + low_pass.sections,
+                Math.min(high_pass.slowest_decay, low_pass.slowest_decay));
+        band_pass.copySections(high_pass, 0);
+        band_pass.copySections(low_pass, high_pass.sections);
+        return band_pass;
+    }
+
+    private void copySections(BiquadCascade source, int first) {
+        System.arraycopy(source.b0, 0, b0, first, source.sections);
+        System.arraycopy(source.b1, 0, b1, first, source.sections);
+        System.arraycopy(source.b2, 0, b2, first, source.sections);
+        System.arraycopy(source.a1, 0, a1, first, source.sections);
+        System.arraycopy(source.a2, 0, a2, first, source.sections);
+    }
+
+    private static BiquadCascade butterworth(int order, double cutoff_hz, double sample_rate_hz, boolean high_pass) {
+        if (order < 1) throw new IllegalArgumentException("Filter order must be at least 1");
+        if (cutoff_hz <= 0 || cutoff_hz >= sample_rate_hz / 2) {
+            throw new IllegalArgumentException("Cutoff must lie between 0 and the Nyquist frequency");
+        }
+        double w0 = 2 * Math.PI * cutoff_hz / sample_rate_hz;
+        // The pole pair closest to the imaginary axis decays at w0 sin(pi / 2N)
+        BiquadCascade cascade = new BiquadCascade((order + 1) / 2, w0 * Math.sin(Math.PI / (2 * order)));
+
+        double cos_w0 = Math.cos(w0);
+        for (int section = 0; section < order / 2; ++section) {
+            // Quality factor of the pole pair at angle (2k + 1) pi / 2N from the imaginary axis
+            double q = 1 / (2 * Math.sin((2 * section + 1) * Math.PI / (2 * order)));
+            double alpha = Math.sin(w0) / (2 * q);
+            double a0 = 1 + alpha;
+            double gain = (high_pass ? 1 + cos_w0 : 1 - cos_w0) / 2;
+            cascade.b0[section] = gain / a0;
+            cascade.b1[section] = (high_pass ? -2 : 2) * gain / a0;
+            cascade.b2[section] = gain / a0;
+            cascade.a1[section] = -2 * cos_w0 / a0;
+            cascade.a2[section] = (1 - alpha) / a0;
+        }
+        if (order % 2 == 1) {
+            int section = cascade.sections - 1;
+            double k = Math.tan(w0 / 2);
+            cascade.b0[section] = (high_pass ? 1 : k) / (1 + k);
+            cascade.b1[section] = high_pass ? -cascade.b0[section] : cascade.b0[section];
+            cascade.a1[section] = (k - 1) / (k + 1);
+        }
+        return cascade;
+    }
+
+    public int getSections() {
+        return sections;
+    }
+
+    // Size of the state one channel needs, starting at the offset passed to process()
+    public int getStateSize() {
+        return 2 * sections;
+    }
+
+    // Samples after which a transient has decayed by exp(-time_constants)
+    public int settlingSamples(double time_constants) {
+        return (int) Math.ceil(time_constants / slowest_decay);
+    }
+
+    public double process(double[] state, int offset, double value) {
+        for (int section = 0; section < sections; ++section, offset += 2) {
+            double filtered = b0[section] * value + state[offset];
+            state[offset] = b1[section] * value - a1[section] * filtered + state[offset + 1];
+            state[offset + 1] = b2[section] * value - a2[section] * filtered;
+            value = filtered;
+        }
+        return value;
+    }
+
+    // Sets the state to what a constant input of the given value leaves behind, so filtering starts without a step
+    public void settle(double[] state, int offset, double value) {
+        for (int section = 0; section < sections; ++section, offset += 2) {
+            double dc_gain = (b0[section] + b1[section] + b2[section]) / (1 + a1[section] + a2[section]);
+            double filtered = dc_gain * value;
+            state[offset] = filtered - b0[section] * value;
+            state[offset + 1] = b2[section] * value - a2[section] * filtered;
+            value = filtered;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,137 @@
+package com.nyu.imu_processing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/*
+Butterworth low-pass, high-pass or band-pass filtering of whole recordings, one column per axis, on a fork-join pool
+
+In zero-phase mode every column is filtered forward and then backward, which cancels the phase lag of the IIR filter
+and squares its magnitude response. As in scipy's sosfiltfilt, the ends are extended by odd reflection and each pass
+starts from the steady state of its first value; the reflection is as long as the filter takes to settle, so no
+transient reaches either end of the data.
+
+Every axis is its own task. Columns longer than the segment length are also cut into segments that are filtered
+independently: each segment is filtered together with enough neighbouring samples on either side for the filter's
+transient to die out (20 time constants of its slowest pole) before the part it writes back, so segment borders are
+invisible in the result. Designs with a very low cutoff relative to the segment length are not cut.
+*/
+public class ButterworthFilterBank {
+
+    public static final int DEFAULT_SEGMENT_LENGTH = 1 << 20;
+    private static final double SETTLE_TIME_CONSTANTS = 20;
+
+    private final BiquadCascade cascade;
+    private final boolean zero_phase;
+    private final ForkJoinPool pool;
+    private final int segment_length;
+    private final int settle_samples;
+    // Length of the odd reflection added at each end in zero-phase mode (bounded by the data length when filtering)
+    private final int pad_length;
+
+    public ButterworthFilterBank(BiquadCascade cascade, boolean zero_phase, ForkJoinPool pool, int segment_length) {
+        this.cascade = cascade;
+        this.zero_phase = zero_phase;
+        this.pool = pool;
+        this.segment_length = segment_length;
+        settle_samples = cascade.settlingSamples(SETTLE_TIME_CONSTANTS);
+        pad_length = Math.max(3 * (cascade.getStateSize() + 1), settle_samples);
+    }
+
+    public ButterworthFilterBank(BiquadCascade cascade) {
+        this(cascade, true, ForkJoinPool.commonPool(), DEFAULT_SEGMENT_LENGTH);
+    }
+
+    public static ButterworthFilterBank lowPass(int order, double cutoff_hz, double sample_rate_hz) {
+        return new ButterworthFilterBank(BiquadCascade.lowPass(order, cutoff_hz, sample_rate_hz));
+    }
+
+    public static ButterworthFilterBank highPass(int order, double cutoff_hz, double sample_rate_hz) {
+        return new ButterworthFilterBank(BiquadCascade.highPass(order, cutoff_hz, sample_rate_hz));
+    }
+
+    public static ButterworthFilterBank bandPass(int order, double low_hz, double high_hz, double sample_rate_hz) {
+        return new ButterworthFilterBank(BiquadCascade.bandPass(order, low_hz, high_hz, sample_rate_hz));
+    }
+
+    // Filters every axis of the store in place
+    public void filter(SampleStore store) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int axis = 0; axis < store.getAxes(); ++axis) submit(store.column(axis), store.size(), tasks);
+        join(tasks);
+    }
+
+    // Filters the first count values of each column in place
+    public void filter(double[][] columns, int count) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (double[] column : columns) submit(column, count, tasks);
+        join(tasks);
+    }
+
+    public void filter(double[] column, int count) {
+        filter(new double[][] {column}, count);
+    }
+
+    private void submit(double[] column, int count, List<ForkJoinTask<?>> tasks) {
+        if (count <= segment_length || 4L * settle_samples > segment_length) {
+            tasks.add(pool.submit(() -> filterRange(column, 0, count)));
+            return;
+        }
+        // Segments read their surroundings from a copy, since neighbouring segments overwrite them meanwhile
+        double[] source = Arrays.copyOf(column, count);
+        for (int start = 0; start < count; start += segment_length) {
+            int segment_start = start, segment_end = Math.min(start + segment_length, count);
+            tasks.add(pool.submit(() -> filterSegment(source, column, segment_start, segment_end)));
+        }
+    }
+
+    private static void join(List<ForkJoinTask<?>> tasks) {
+        for (ForkJoinTask<?> task : tasks) task.join();
+    }
+
+    private void filterSegment(double[] source, double[] column, int start, int end) {
+        int low = Math.max(0, start - settle_samples);
+        int high = zero_phase ? Math.min(source.length, end + settle_samples) : end;
+        double[] buffer = Arrays.copyOfRange(source, low, high);
+        filterRange(buffer, 0, buffer.length);
+        System.arraycopy(buffer, start - low, column, start, end - start);
+    }
+
+    private void filterRange(double[] data, int from, int count) {
+        if (count == 0) return;
+        double[] state = new double[cascade.getStateSize()];
+        int end = from + count - 1;
+        if (!zero_phase) {
+            cascade.settle(state, 0, data[from]);
+            for (int index = from; index <= end; ++index) data[index] = cascade.process(state, 0, data[index]);
+            return;
+        }
+
+        int pad = Math.min(pad_length, count - 1);
+        // Reflection past the end, taken before the forward pass overwrites the data
+        double[] tail = new double[pad];
+        for (int index = 0; index < pad; ++index) tail[index] = 2 * data[end] - data[end - 1 - index];
+
+        // Forward over the reflection before the start, the data and the reflection after the end
+        cascade.settle(state, 0, 2 * data[from] - data[from + pad]);
+        for (int index = pad; index >= 1; --index) cascade.process(state, 0, 2 * data[from] - data[from + index]);
+        for (int index = from; index <= end; ++index) data[index] = cascade.process(state, 0, data[index]);
+        for (int index = 0; index < pad; ++index) tail[index] = cascade.process(state, 0, tail[index]);
+
+        // Backward over the same, keeping only the data
+        cascade.settle(state, 0, pad > 0 ? tail[pad - 1] : data[end]);
+        for (int index = pad - 1; index >= 0; --index) cascade.process(state, 0, tail[index]);
+        for (int index = end; index >= from; --index) data[index] = cascade.process(state, 0, data[index]);
+    }
+
+    public boolean isZeroPhase() {
+        return zero_phase;
+    }
+
+    public BiquadCascade getCascade() {
+        return cascade;
+    }
+}
\ No newline at end of file
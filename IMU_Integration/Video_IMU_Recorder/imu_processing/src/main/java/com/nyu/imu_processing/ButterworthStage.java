@@ -0,0 +1,59 @@
+package com.nyu.imu_processing;
+
+import java.util.Arrays;
+
+/*
+Causal Butterworth filter applied to every channel of a stream
+
+The filter is a BiquadCascade with its own state per channel, so it can run sample by sample for as long as the
+input lasts. ButterworthFilterBank runs the same designs over whole recordings, forward and backward.
+*/
+public class ButterworthStage extends FilterStage {
+
+    private final BiquadCascade cascade;
+    private final int state_size;
+    private final double[] state;
+    private final double[] output;
+
+    public ButterworthStage(int channels, BiquadCascade cascade) {
+        super(channels);
+        this.cascade = cascade;
+        state_size = cascade.getStateSize();
+        state = new double[channels * state_size];
+        output = new double[channels];
+    }
+
+    public static ButterworthStage lowPass(int channels, int order, double cutoff_hz, double sample_rate_hz) {
+        return new ButterworthStage(channels, BiquadCascade.lowPass(order, cutoff_hz, sample_rate_hz));
+    }
+
+    public static ButterworthStage highPass(int channels, int order, double cutoff_hz, double sample_rate_hz) {
+        return new ButterworthStage(channels, BiquadCascade.highPass(order, cutoff_hz, sample_rate_hz));
+    }
+
+    public static ButterworthStage bandPass(int channels, int order, double low_hz, double high_hz,
+                                            double sample_rate_hz) {
+        return new ButterworthStage(channels, BiquadCascade.bandPass(order, low_hz, high_hz, sample_rate_hz));
+    }
+
+    public double process(int channel, double value) {
+        return cascade.process(state, channel * state_size, value);
+    }
+
+    // Filters count values of one channel in place, continuing from that channel's current state
+    public void filter(int channel, double[] column, int from, int count) {
+        for (int index = from; index < from + count; ++index) column[index] = process(channel, column[index]);
+    }
+
+    @Override
+    public void accept(long timestamp, double[] values, int offset) {
+        for (int channel = 0; channel < channels; ++channel) {
+            output[channel] = process(channel, values[offset + channel]);
+        }
+        downstream.accept(timestamp, output, 0);
+    }
+
+    public void reset() {
+        Arrays.fill(state, 0);
+    }
+}
\ No newline at end of file
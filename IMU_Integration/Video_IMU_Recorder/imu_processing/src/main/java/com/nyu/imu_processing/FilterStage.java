@@ -0,0 +1,27 @@
+package com.nyu.imu_processing;
+
+// Streaming stage that transforms each sample and pushes the result to the next stage of a chain
+public abstract class FilterStage implements SampleSink {
+
+    protected final int channels;
+    protected SampleSink downstream = (timestamp, values, offset) -> {};
+
+    protected FilterStage(int channels) {
+        this.channels = channels;
+    }
+
+    // Connects the next stage and returns it, so chains read kalman.then(butterworth).then(output)
+    public <T extends SampleSink> T then(T next) {
+        downstream = next;
+        return next;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    @Override
+    public void finish() {
+        downstream.finish();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,101 @@
+package com.nyu.imu_processing;
+
+/*
+Decides from the concurrently recorded motion whether a burst frame is worth saving
+
+A frame is BLURRED when the fastest rotation during its exposure would smear the image by more than the blur limit:
+rotating at w rad/s for an exposure of t seconds moves the image by about w * t * f pixels for a focal length of f
+pixels. Otherwise it is STILL, and skipped, when neither the rotation (integral of |rotation rate|) nor the change of
+velocity (integral of |linear acceleration|) since the last kept frame reaches its threshold, unless the last kept
+frame is older than the longest gap. Everything else is KEPT.
+
+Frames whose motion the histories do not cover yet (the samples of their exposure have not arrived) are kept and
+their blur reported as unknown (NaN): the gate only drops a frame when the data says so. Call from one thread only.
+*/
+public final class FrameGate {
+
+    public static final int KEPT = 0;
+    public static final int STILL = 1;
+    public static final int BLURRED = 2;
+    private static final String[] NAMES = {"kept", "still", "blurred"};
+    // Blur (in tenths of a pixel) of frame gate markers whose blur was unknown
+    public static final int UNKNOWN_BLUR = 0xFFFFFF;
+
+    private final MotionHistory rotation;
+    private final MotionHistory acceleration;
+    private final double min_rotation;
+    private final double min_velocity_change;
+    private final double max_blur_pixels;
+    private final long max_gap_nanos;
+    private long last_kept = -1;
+    private double blur = Double.NaN;
+    private long kept, still, blurred;
+
+    /*
+    min_rotation in rad, min_velocity_change in m/s and max_blur_pixels are the thresholds above; either history may be
+    null to leave its kind of motion out
+    */
+    public FrameGate(MotionHistory rotation, MotionHistory acceleration, double min_rotation, double min_velocity_change,
+                     double max_blur_pixels, long max_gap_nanos) {
+        if (min_rotation < 0 || min_velocity_change < 0 || max_blur_pixels <= 0 || max_gap_nanos <= 0) {
+            throw new IllegalArgumentException("Gate thresholds must be positive");
+        }
+        this.rotation = rotation;
+        this.acceleration = acceleration;
+        this.min_rotation = min_rotation;
+        this.min_velocity_change = min_velocity_change;
+        this.max_blur_pixels = max_blur_pixels;
+        this.max_gap_nanos = max_gap_nanos;
+    }
+
+    public static String name(int decision) {
+        return NAMES[decision];
+    }
+
+    // Extra of an IMURecord.FRAME_GATE marker: the decision, with the blur in tenths of a pixel above it
+    public static int encode(int decision, double blur) {
+        long tenths = Double.isNaN(blur) ? UNKNOWN_BLUR : Math.min(Math.round(blur * 10), UNKNOWN_BLUR - 1);
+        return (int) (tenths << 8) | decision;
+    }
+
+    // Decides on the frame whose exposure starts at the timestamp, for an image with the given focal length in pixels
+    public int decide(long timestamp, long exposure_nanos, double focal_length_pixels) {
+        double peak_rate = rotation == null ? Double.NaN : rotation.peak(timestamp, timestamp + exposure_nanos);
+        blur = peak_rate * exposure_nanos * 1e-9 * focal_length_pixels;
+        if (blur > max_blur_pixels) {
+            ++blurred;
+            return BLURRED;
+        }
+        if (last_kept >= 0 && timestamp - last_kept < max_gap_nanos && isStill(last_kept, timestamp)) {
+            ++still;
+            return STILL;
+        }
+        last_kept = timestamp;
+        ++kept;
+        return KEPT;
+    }
+
+    private boolean isStill(long from, long to) {
+        double turned = rotation == null ? 0 : rotation.integral(from, to);
+        double velocity_change = acceleration == null ? 0 : acceleration.integral(from, to);
+        // NaN compares false, so uncovered motion never counts as still
+        return turned < min_rotation && velocity_change < min_velocity_change;
+    }
+
+    // Estimated blur of the last frame decided on, in pixels, or NaN if it was unknown
+    public double getBlur() {
+        return blur;
+    }
+
+    public long getKept() {
+        return kept;
+    }
+
+    public long getStill() {
+        return still;
+    }
+
+    public long getBlurred() {
+        return blurred;
+    }
+}
\ No newline at end of file
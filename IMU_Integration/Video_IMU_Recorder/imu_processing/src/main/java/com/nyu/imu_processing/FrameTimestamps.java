@@ -0,0 +1,128 @@
+package com.nyu.imu_processing;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+Sidecar file with the sensor timestamp of every frame of a recorded video, so that frames can be matched to IMU
+samples without decoding the video
+
+The file sits next to the video with FILE_SUFFIX appended to its name and is <int magic "VFTS"> <byte version>
+followed by one 20 byte entry per frame in recording order (big-endian):
+<long camera frame number> <long sensor timestamp (ns)> <int exposure time (ns)>
+Timestamps are on the camera clock, the same as Image.getTimestamp(), which the CAMERA_CLOCK_SYNC markers of the IMU
+data file relate to elapsed realtime. Entries are fixed-width, so the entry of frame i is at HEADER_SIZE + i *
+ENTRY_SIZE and looking one up is a single read. Frame numbers come from the camera and skip whatever frames it
+dropped before the encoder saw them.
+
+A recording that was not closed leaves zeroed preallocated space behind the last entry, which read() ignores along
+with a partial trailing entry.
+*/
+public final class FrameTimestamps {
+
+    public static final String FILE_SUFFIX = ".frames";
+    public static final int MAGIC = 0x56465453;
+    public static final byte VERSION = 1;
+    public static final int HEADER_SIZE = Integer.BYTES + Byte.BYTES;
+    public static final int ENTRY_SIZE = 2 * Long.BYTES + Integer.BYTES;
+
+    private final long[] frame_numbers;
+    private final long[] timestamps;
+    private final int[] exposure_times;
+
+    private FrameTimestamps(long[] frame_numbers, long[] timestamps, int[] exposure_times) {
+        this.frame_numbers = frame_numbers;
+        this.timestamps = timestamps;
+        this.exposure_times = exposure_times;
+    }
+
+    // Appends entries to the sidecar; the camera callback calls write() once per captured frame
+    public static final class Writer implements Closeable {
+        private final OutputStream output;
+        private final ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+        private long count;
+
+        public Writer(OutputStream output) throws IOException {
+            this.output = output;
+            output.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).put(VERSION).array());
+        }
+
+        public void write(long frame_number, long timestamp, long exposure_time) throws IOException {
+            entry.putLong(0, frame_number).putLong(8, timestamp)
+                    .putInt(16, (int) Math.min(Math.max(exposure_time, 0), Integer.MAX_VALUE));
+            output.write(entry.array(), 0, ENTRY_SIZE);
+            ++count;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+        }
+    }
+
+    public static FrameTimestamps read(File sidecar) throws IOException {
+        ByteBuffer contents;
+        try (FileChannel channel = FileChannel.open(sidecar.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("Frame timestamp file too large: " + sidecar);
+            contents = ByteBuffer.allocate((int) channel.size());
+            while (contents.hasRemaining() && channel.read(contents) >= 0) {}
+        }
+        contents.flip();
+        if (contents.remaining() < HEADER_SIZE || contents.getInt() != MAGIC) {
+            throw new IOException("Not a frame timestamp file: " + sidecar);
+        }
+        byte version = contents.get();
+        if (version != VERSION) throw new IOException("Unsupported frame timestamp file version " + version);
+
+        int count = contents.remaining() / ENTRY_SIZE;
+        long[] frame_numbers = new long[count];
+        long[] timestamps = new long[count];
+        int[] exposure_times = new int[count];
+        int frames = 0;
+        for (; frames < count; ++frames) {
+            frame_numbers[frames] = contents.getLong();
+            timestamps[frames] = contents.getLong();
+            exposure_times[frames] = contents.getInt();
+            if (timestamps[frames] == 0) break;
+        }
+        return new FrameTimestamps(Arrays.copyOf(frame_numbers, frames), Arrays.copyOf(timestamps, frames),
+                Arrays.copyOf(exposure_times, frames));
+    }
+
+    public int size() {
+        return timestamps.length;
+    }
+
+    public long getFrameNumber(int frame) {
+        return frame_numbers[frame];
+    }
+
+    public long getTimestamp(int frame) {
+        return timestamps[frame];
+    }
+
+    public int getExposureTime(int frame) {
+        return exposure_times[frame];
+    }
+
+    // Index of the frame whose timestamp is closest to the given camera clock time, or -1 if there are no frames
+    public int nearestFrame(long timestamp) {
+        if (timestamps.length == 0) return -1;
+        int index = Arrays.binarySearch(timestamps, timestamp);
+        if (index >= 0) return index;
+        int after = -index - 1;
+        if (after == 0) return 0;
+        if (after == timestamps.length) return after - 1;
+        return timestamp - timestamps[after - 1] <= timestamps[after] - timestamp ? after - 1 : after;
+    }
+}
\ No newline at end of file
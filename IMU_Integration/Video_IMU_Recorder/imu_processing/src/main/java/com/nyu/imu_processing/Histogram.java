@@ -0,0 +1,72 @@
+package com.nyu.imu_processing;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+Fixed-size, lock-free histogram of non-negative long values (typically nanoseconds)
+
+Buckets are log-linear: every power of two is split into SUB_BUCKETS equal buckets, so a value is placed within
+1/SUB_BUCKETS of itself whatever its magnitude, and the whole range of long fits in BUCKETS counters allocated up
+front. record() is one atomic increment plus a compare-and-set for a new maximum, so it can be called from sensor
+and camera callbacks while another thread reads percentiles.
+*/
+public final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    public static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int sub_bucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub_bucket;
+    }
+
+    // Largest value that falls into the bucket
+    static long bucketLimit(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    // Negative values (a clock stepping backwards) are counted as zero
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) current = max.get();
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /*
+    Upper limit of the bucket holding the given fraction (0 to 1) of the recorded values, capped at the maximum, or 0
+    if nothing has been recorded. Values recorded while this runs may or may not be taken into account.
+    */
+    public long percentile(double fraction) {
+        if (fraction < 0 || fraction > 1) throw new IllegalArgumentException("Percentile fraction must be within [0, 1]");
+        long total = count.get();
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; ++bucket) {
+            seen += counts.get(bucket);
+            if (seen >= rank) return Math.min(bucketLimit(bucket), max.get());
+        }
+        return max.get();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,81 @@
+package com.nyu.imu_processing;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/*
+Compressed columnar archive of a recorded IMU session, written by IMUArchiveWriter and read by IMUArchiveReader
+
+File:    <int magic "IMUA"> <byte version> <blocks...> <sensor table> <block index> <long table offset> <int magic>
+Blocks hold up to BLOCK_SAMPLES samples of one sensor (or events), encoded as columns and then deflated:
+    <varint count> <timestamps: zigzag varint deltas from the previous one, the first from 0>
+    per axis <byte mode> then, quantized: zigzag varint deltas of round(value / quantum)
+                                or float: 4 byte float bits XORed with the previous value's bits
+    events instead, sorted by timestamp: timestamps as above, <byte type> each, then zigzag varint values and extras
+A column falls back to floats in a block where a value cannot be quantized (NaN, infinite or out of range).
+Sensor table: <byte count> per sensor <short name length> <UTF-8 name> <byte axes> <double quantum, 0 for floats>
+Block index: <int count> per block <byte sensor, EVENTS for events> <int samples> <long first timestamp>
+             <long last timestamp> <long file offset> <int stored length> <int decoded length>
+Everything is big-endian.
+*/
+public final class IMUArchive {
+
+    public static final int MAGIC = 0x494D5541;
+    public static final int INDEX_MAGIC = 0x494D5558;
+    public static final byte VERSION = 1;
+    public static final int BLOCK_SAMPLES = 4096;
+    public static final int EVENTS = 0xFF;
+    static final byte FLOAT_COLUMN = 0;
+    static final byte QUANTIZED_COLUMN = 1;
+    static final int INDEX_ENTRY_SIZE = Byte.BYTES + Integer.BYTES + 3 * Long.BYTES + 2 * Integer.BYTES;
+    static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+
+    private IMUArchive() {}
+
+    // Growable byte array that columns are encoded into
+    static final class Encoder {
+        byte[] bytes = new byte[1 << 16];
+        int length;
+
+        private void ensure(int extra) {
+            if (length + extra > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, length + extra));
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            bytes[length++] = (byte) value;
+        }
+
+        void writeInt(int value) {
+            ensure(4);
+            for (int shift = 24; shift >= 0; shift -= 8) bytes[length++] = (byte) (value >>> shift);
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        void writeSignedVarLong(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+    }
+
+    static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte next = buffer.get();
+            value |= (long) (next & 0x7F) << shift;
+            if (next >= 0) return value;
+        }
+    }
+
+    static long readSignedVarLong(ByteBuffer buffer) {
+        long value = readVarLong(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
\ No newline at end of file
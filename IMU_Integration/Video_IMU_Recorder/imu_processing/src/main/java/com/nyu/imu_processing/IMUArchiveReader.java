@@ -0,0 +1,242 @@
+package com.nyu.imu_processing;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/*
+Reads an IMUArchive, decoding only the blocks that a read asks for
+
+Opening an archive reads just its sensor table and block index. A read for a time range goes through the index and
+inflates and decodes only the blocks of that sensor whose time span overlaps the range.
+*/
+public class IMUArchiveReader implements Closeable {
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final String[] names;
+    private final int[] axes;
+    private final double[] quanta;
+    private final int block_count;
+    private final int[] block_sensor, block_samples, stored_length, decoded_length;
+    private final long[] first_timestamp, last_timestamp, block_offset;
+    private final Inflater inflater = new Inflater();
+    private ByteBuffer stored = ByteBuffer.allocate(1 << 16);
+    private byte[] decoded = new byte[1 << 16];
+    private SampleStore block = new SampleStore(1, IMUArchive.BLOCK_SAMPLES);
+
+    public IMUArchiveReader(File archive) throws IOException {
+        file = new RandomAccessFile(archive, "r");
+        channel = file.getChannel();
+        try {
+            long size = channel.size();
+            ByteBuffer header = read(0, Integer.BYTES + Byte.BYTES);
+            if (size < header.capacity() + IMUArchive.TRAILER_SIZE || header.getInt() != IMUArchive.MAGIC) {
+                throw new IOException("Not an IMU archive");
+            }
+            byte version = header.get();
+            if (version != IMUArchive.VERSION) throw new IOException("Unsupported IMU archive version " + version);
+            ByteBuffer trailer = read(size - IMUArchive.TRAILER_SIZE, IMUArchive.TRAILER_SIZE);
+            long table_offset = trailer.getLong();
+            if (trailer.getInt() != IMUArchive.INDEX_MAGIC) throw new IOException("IMU archive was not closed");
+
+            ByteBuffer table = read(table_offset, (int) (size - IMUArchive.TRAILER_SIZE - table_offset));
+            int sensor_count = table.get() & 0xFF;
+            names = new String[sensor_count];
+            axes = new int[sensor_count];
+            quanta = new double[sensor_count];
+            for (int sensor = 0; sensor < sensor_count; ++sensor) {
+                byte[] name = new byte[table.getShort() & 0xFFFF];
+                table.get(name);
+                names[sensor] = new String(name, StandardCharsets.UTF_8);
+                axes[sensor] = table.get() & 0xFF;
+                quanta[sensor] = table.getDouble();
+            }
+
+            block_count = table.getInt();
+            block_sensor = new int[block_count];
+            block_samples = new int[block_count];
+            first_timestamp = new long[block_count];
+            last_timestamp = new long[block_count];
+            block_offset = new long[block_count];
+            stored_length = new int[block_count];
+            decoded_length = new int[block_count];
+            for (int index = 0; index < block_count; ++index) {
+                block_sensor[index] = table.get() & 0xFF;
+                block_samples[index] = table.getInt();
+                first_timestamp[index] = table.getLong();
+                last_timestamp[index] = table.getLong();
+                block_offset[index] = table.getLong();
+                stored_length[index] = table.getInt();
+                decoded_length[index] = table.getInt();
+            }
+        } catch (IOException | RuntimeException exception) {
+            file.close();
+            throw exception;
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new IOException("IMU archive is truncated");
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    public int getSensorCount() {
+        return names.length;
+    }
+
+    // Sensor number of the named sensor, or -1
+    public int findSensor(String name) {
+        for (int sensor = 0; sensor < names.length; ++sensor) {
+            if (names[sensor].equals(name)) return sensor;
+        }
+        return -1;
+    }
+
+    public String getSensorName(int sensor) {
+        return names[sensor];
+    }
+
+    public int getAxes(int sensor) {
+        return axes[sensor];
+    }
+
+    public double getQuantum(int sensor) {
+        return quanta[sensor];
+    }
+
+    public int getBlockCount() {
+        return block_count;
+    }
+
+    public long getSampleCount(int sensor) {
+        long count = 0;
+        for (int index = 0; index < block_count; ++index) {
+            if (block_sensor[index] == sensor) count += block_samples[index];
+        }
+        return count;
+    }
+
+    public SampleStore read(int sensor) throws IOException {
+        return read(sensor, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    // Samples of one sensor with from <= timestamp < to
+    public SampleStore read(int sensor, long from, long to) throws IOException {
+        SampleStore samples = new SampleStore(axes[sensor], IMUArchive.BLOCK_SAMPLES);
+        for (int index = 0; index < block_count; ++index) {
+            if (block_sensor[index] != sensor || last_timestamp[index] < from || first_timestamp[index] >= to) continue;
+            ByteBuffer data = inflate(index);
+            decodeSamples(data, sensor);
+            int low = 0, high = block.size();
+            long[] timestamps = block.timestamps();
+            while (low < high && timestamps[low] < from) ++low;
+            while (high > low && timestamps[high - 1] >= to) --high;
+            samples.append(block, low, high - low);
+        }
+        return samples;
+    }
+
+    // Every sensor and the events with from <= timestamp < to (in time order), in the same form as a parsed text log
+    public IMUTextLog read(long from, long to) throws IOException {
+        IMUTextLog log = new IMUTextLog();
+        for (int sensor = 0; sensor < names.length; ++sensor) {
+            log.getSensors().put(names[sensor], read(sensor, from, to));
+        }
+        for (int index = 0; index < block_count; ++index) {
+            if (block_sensor[index] != IMUArchive.EVENTS || last_timestamp[index] < from
+                    || first_timestamp[index] >= to) {
+                continue;
+            }
+            decodeEvents(inflate(index), log, from, to);
+        }
+        // Blocks are each in time order but may overlap one another
+        log.sortEvents();
+        return log;
+    }
+
+    private ByteBuffer inflate(int index) throws IOException {
+        int length = stored_length[index];
+        if (stored.capacity() < length) stored = ByteBuffer.allocate(length);
+        stored.clear().limit(length);
+        while (stored.hasRemaining()) {
+            if (channel.read(stored, block_offset[index] + stored.position()) < 0) {
+                throw new IOException("IMU archive is truncated");
+            }
+        }
+        if (decoded.length < decoded_length[index]) decoded = new byte[decoded_length[index]];
+        inflater.reset();
+        inflater.setInput(stored.array(), 0, length);
+        try {
+            if (inflater.inflate(decoded, 0, decoded_length[index]) != decoded_length[index]) {
+                throw new IOException("IMU archive block " + index + " is corrupt");
+            }
+        } catch (DataFormatException exception) {
+            throw new IOException("IMU archive block " + index + " is corrupt", exception);
+        }
+        return ByteBuffer.wrap(decoded, 0, decoded_length[index]);
+    }
+
+    private void decodeSamples(ByteBuffer data, int sensor) throws IOException {
+        int count = (int) IMUArchive.readVarLong(data);
+        if (block.getAxes() != axes[sensor]) block = new SampleStore(axes[sensor], IMUArchive.BLOCK_SAMPLES);
+        block.resize(count);
+        long[] timestamps = block.timestamps();
+        long timestamp = 0;
+        for (int index = 0; index < count; ++index) timestamps[index] = timestamp += IMUArchive.readSignedVarLong(data);
+
+        for (int axis = 0; axis < axes[sensor]; ++axis) {
+            double[] column = block.column(axis);
+            byte mode = data.get();
+            if (mode == IMUArchive.QUANTIZED_COLUMN) {
+                double quantum = quanta[sensor];
+                long quantized = 0;
+                for (int index = 0; index < count; ++index) {
+                    quantized += IMUArchive.readSignedVarLong(data);
+                    column[index] = quantized * quantum;
+                }
+            } else if (mode == IMUArchive.FLOAT_COLUMN) {
+                int bits = 0;
+                for (int index = 0; index < count; ++index) {
+                    bits ^= data.getInt();
+                    column[index] = Float.intBitsToFloat(bits);
+                }
+            } else {
+                throw new IOException("Unknown IMU archive column mode " + mode);
+            }
+        }
+    }
+
+    private static void decodeEvents(ByteBuffer data, IMUTextLog log, long from, long to) {
+        int count = (int) IMUArchive.readVarLong(data);
+        long[] timestamps = new long[count];
+        long timestamp = 0;
+        for (int index = 0; index < count; ++index) timestamps[index] = timestamp += IMUArchive.readSignedVarLong(data);
+        int types = data.position();
+        data.position(types + count);
+        long[] values = new long[count];
+        for (int index = 0; index < count; ++index) values[index] = IMUArchive.readSignedVarLong(data);
+        for (int index = 0; index < count; ++index) {
+            int extra = (int) IMUArchive.readSignedVarLong(data);
+            if (timestamps[index] >= from && timestamps[index] < to) {
+                log.addEvent(timestamps[index], data.get(types + index), values[index], extra);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        file.close();
+    }
+}
\ No newline at end of file
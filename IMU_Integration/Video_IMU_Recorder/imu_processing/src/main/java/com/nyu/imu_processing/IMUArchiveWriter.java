@@ -0,0 +1,273 @@
+package com.nyu.imu_processing;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/*
+Writes an IMUArchive: samples are collected per sensor and every BLOCK_SAMPLES of them become one compressed block
+
+Sensors are registered with the quantum their values are rounded to (for example 1e-4 m/s^2), or 0 to keep the
+float values exactly. convert() turns an existing binary or text IMU log into an archive.
+*/
+public class IMUArchiveWriter implements Closeable {
+
+    private final FileChannel channel;
+    private final RandomAccessFile file;
+    private final Deflater deflater;
+    private final IMUArchive.Encoder encoder = new IMUArchive.Encoder();
+    private byte[] compressed = new byte[1 << 16];
+    private final List<String> names = new ArrayList<>();
+    private final List<Double> quanta = new ArrayList<>();
+    private final List<SampleStore> pending = new ArrayList<>();
+    private final IMUTextLog pending_events = new IMUTextLog();
+    private final IMUArchive.Encoder index = new IMUArchive.Encoder();
+    private int block_count;
+    private long position;
+
+    public IMUArchiveWriter(File output, int compression_level) throws IOException {
+        file = new RandomAccessFile(output, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+        deflater = new Deflater(compression_level);
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + Byte.BYTES);
+        header.putInt(IMUArchive.MAGIC).put(IMUArchive.VERSION).flip();
+        write(header);
+    }
+
+    public IMUArchiveWriter(File output) throws IOException {
+        this(output, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    // Returns the sensor number that samples of this sensor are added with
+    public int addSensor(String name, int axes, double quantum) {
+        if (name == null) throw new IllegalArgumentException("Sensor name must not be null");
+        if (names.size() == IMUArchive.EVENTS) throw new IllegalStateException("Too many sensors");
+        names.add(name);
+        quanta.add(quantum);
+        pending.add(new SampleStore(axes, IMUArchive.BLOCK_SAMPLES));
+        return names.size() - 1;
+    }
+
+    public void addSample(int sensor, long timestamp, double[] values, int offset) throws IOException {
+        SampleStore samples = pending.get(sensor);
+        samples.accept(timestamp, values, offset);
+        if (samples.size() == IMUArchive.BLOCK_SAMPLES) writeSamples(sensor);
+    }
+
+    public void addEvent(long timestamp, byte type, long value, int extra) throws IOException {
+        pending_events.addEvent(timestamp, type, value, extra);
+        if (pending_events.getEventCount() == IMUArchive.BLOCK_SAMPLES) writeEvents();
+    }
+
+    private void writeSamples(int sensor) throws IOException {
+        SampleStore samples = pending.get(sensor);
+        int count = samples.size();
+        if (count == 0) return;
+        long[] timestamps = samples.timestamps();
+        encoder.length = 0;
+        encoder.writeVarLong(count);
+        encodeTimestamps(timestamps, count);
+
+        double quantum = quanta.get(sensor);
+        for (int axis = 0; axis < samples.getAxes(); ++axis) {
+            double[] column = samples.column(axis);
+            if (quantum > 0 && quantizable(column, count, quantum)) {
+                encoder.writeByte(IMUArchive.QUANTIZED_COLUMN);
+                long previous = 0;
+                for (int index = 0; index < count; ++index) {
+                    long quantized = Math.round(column[index] / quantum);
+                    encoder.writeSignedVarLong(quantized - previous);
+                    previous = quantized;
+                }
+            } else {
+                encoder.writeByte(IMUArchive.FLOAT_COLUMN);
+                int previous = 0;
+                for (int index = 0; index < count; ++index) {
+                    int bits = Float.floatToRawIntBits((float) column[index]);
+                    encoder.writeInt(bits ^ previous);
+                    previous = bits;
+                }
+            }
+        }
+        writeBlock(sensor, count, timestamps[0], timestamps[count - 1]);
+        samples.clear();
+    }
+
+    private static boolean quantizable(double[] column, int count, double quantum) {
+        for (int index = 0; index < count; ++index) {
+            if (!(Math.abs(column[index] / quantum) < 1L << 52)) return false;
+        }
+        return true;
+    }
+
+    private void writeEvents() throws IOException {
+        int count = pending_events.getEventCount();
+        if (count == 0) return;
+        // Events arrive in the order their rings were drained; sorted, the block's first and last span all of them
+        pending_events.sortEvents();
+        encoder.length = 0;
+        encoder.writeVarLong(count);
+        long previous = 0;
+        for (int index = 0; index < count; ++index) {
+            encoder.writeSignedVarLong(pending_events.getEventTimestamp(index) - previous);
+            previous = pending_events.getEventTimestamp(index);
+        }
+        for (int index = 0; index < count; ++index) encoder.writeByte(pending_events.getEventType(index));
+        for (int index = 0; index < count; ++index) encoder.writeSignedVarLong(pending_events.getEventValue(index));
+        for (int index = 0; index < count; ++index) encoder.writeSignedVarLong(pending_events.getEventExtra(index));
+        writeBlock(IMUArchive.EVENTS, count, pending_events.getEventTimestamp(0),
+                pending_events.getEventTimestamp(count - 1));
+        pending_events.clearEvents();
+    }
+
+    private void encodeTimestamps(long[] timestamps, int count) {
+        long previous = 0;
+        for (int index = 0; index < count; ++index) {
+            encoder.writeSignedVarLong(timestamps[index] - previous);
+            previous = timestamps[index];
+        }
+    }
+
+    private void writeBlock(int sensor, int count, long first_timestamp, long last_timestamp) throws IOException {
+        deflater.reset();
+        deflater.setInput(encoder.bytes, 0, encoder.length);
+        deflater.finish();
+        int stored = 0;
+        while (!deflater.finished()) {
+            if (stored == compressed.length) compressed = Arrays.copyOf(compressed, 2 * stored);
+            stored += deflater.deflate(compressed, stored, compressed.length - stored);
+        }
+
+        index.writeByte(sensor);
+        index.writeInt(count);
+        writeLong(index, first_timestamp);
+        writeLong(index, last_timestamp);
+        writeLong(index, position);
+        index.writeInt(stored);
+        index.writeInt(encoder.length);
+        ++block_count;
+        write(ByteBuffer.wrap(compressed, 0, stored));
+    }
+
+    private static void writeLong(IMUArchive.Encoder target, long value) {
+        target.writeInt((int) (value >>> 32));
+        target.writeInt((int) value);
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) position += channel.write(buffer, position);
+    }
+
+    // Writes the remaining partial blocks, the sensor table and the block index
+    @Override
+    public void close() throws IOException {
+        try {
+            for (int sensor = 0; sensor < pending.size(); ++sensor) writeSamples(sensor);
+            writeEvents();
+
+            long table_offset = position;
+            IMUArchive.Encoder table = new IMUArchive.Encoder();
+            table.writeByte(names.size());
+            for (int sensor = 0; sensor < names.size(); ++sensor) {
+                byte[] name = names.get(sensor).getBytes(StandardCharsets.UTF_8);
+                table.writeByte(name.length >>> 8);
+                table.writeByte(name.length);
+                for (byte character : name) table.writeByte(character);
+                table.writeByte(pending.get(sensor).getAxes());
+                writeLong(table, Double.doubleToLongBits(quanta.get(sensor)));
+            }
+            table.writeInt(block_count);
+            write(ByteBuffer.wrap(table.bytes, 0, table.length));
+            write(ByteBuffer.wrap(index.bytes, 0, index.length));
+            ByteBuffer trailer = ByteBuffer.allocate(IMUArchive.TRAILER_SIZE);
+            trailer.putLong(table_offset).putInt(IMUArchive.INDEX_MAGIC).flip();
+            write(trailer);
+        } finally {
+            deflater.end();
+            file.close();
+        }
+    }
+
+    /*
+    Converts a binary IMU data file or a text log into an archive, quantizing every sensor's values to the given
+    quantum (0 keeps floats)
+    */
+    public static void convert(File input, File output, double quantum) throws IOException {
+        int magic;
+        try (DataInputStream probe = new DataInputStream(new FileInputStream(input))) {
+            magic = input.length() >= Integer.BYTES ? probe.readInt() : 0;
+        }
+        try (IMUArchiveWriter writer = new IMUArchiveWriter(output)) {
+            if (magic == IMURecord.MAGIC) {
+                try (InputStream binary_input = new FileInputStream(input)) {
+                    convertBinary(binary_input, writer, quantum);
+                }
+            } else {
+                convertText(IMUTextLogParser.parse(input), writer, quantum);
+            }
+        }
+    }
+
+    private static void convertBinary(InputStream binary_input, IMUArchiveWriter writer, double quantum)
+            throws IOException {
+        int[] sensors = new int[256];
+        Arrays.fill(sensors, -1);
+        double[] values = new double[3];
+        IMURecord.read(binary_input, new IMURecord.Visitor() {
+            @Override
+            public void sample(long timestamp, byte sensor_id, String sensor_name, float x, float y, float z)
+                    throws IOException {
+                int id = sensor_id & 0xFF;
+                if (sensors[id] < 0) {
+                    // Files whose header leaves a sensor out still convert, under a name made from its id
+                    sensors[id] = writer.addSensor(sensor_name == null ? "sensor " + id : sensor_name, 3, quantum);
+                }
+                values[0] = x;
+                values[1] = y;
+                values[2] = z;
+                writer.addSample(sensors[id], timestamp, values, 0);
+            }
+
+            @Override
+            public void marker(long timestamp, byte marker_id, long value, int extra) throws IOException {
+                writer.addEvent(timestamp, marker_id, value, extra);
+            }
+        });
+    }
+
+    private static void convertText(IMUTextLog log, IMUArchiveWriter writer, double quantum) throws IOException {
+        for (Map.Entry<String, SampleStore> entry : log.getSensors().entrySet()) {
+            SampleStore samples = entry.getValue();
+            int sensor = writer.addSensor(entry.getKey(), samples.getAxes(), quantum);
+            double[] values = new double[samples.getAxes()];
+            for (int index = 0; index < samples.size(); ++index) {
+                for (int axis = 0; axis < values.length; ++axis) values[axis] = samples.get(axis, index);
+                writer.addSample(sensor, samples.timestamps()[index], values, 0);
+            }
+        }
+        for (int index = 0; index < log.getEventCount(); ++index) {
+            writer.addEvent(log.getEventTimestamp(index), log.getEventType(index), log.getEventValue(index),
+                    log.getEventExtra(index));
+        }
+    }
+
+    // Converts an IMU log into an archive: java IMUArchiveWriter <binary or text log> <archive> [quantum]
+    public static void main(String[] args) throws IOException {
+        File input = new File(args[0]), output = new File(args[1]);
+        convert(input, output, args.length > 2 ? Double.parseDouble(args[2]) : 0);
+        System.out.println(input.length() + " bytes -> " + output.length() + " bytes");
+    }
+}
\ No newline at end of file
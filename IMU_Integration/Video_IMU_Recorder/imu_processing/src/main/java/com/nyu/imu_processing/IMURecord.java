@@ -0,0 +1,221 @@
+package com.nyu.imu_processing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+The IMU data file is a binary stream made of one header followed by fixed-width records (big-endian)
+
+Header: <int magic "IMUB"> <byte version> <byte sensor count> then per sensor <byte id> <short name length> <UTF-8 name>
+Record (21 bytes): <long nanoseconds> <byte sensor id> <float x> <float y> <float z>
+
+Sensor ids are fixed channel numbers, so a file can hold any subset of the sensors below. Every sample carries three
+values: channels with fewer (the barometer's pressure) are padded with zeros, the rotation vector keeps x, y and z (w
+follows from them, as in SensorManager.getQuaternionFromVector()), and the uncalibrated gyroscope's estimated drift
+goes to its own GYROSCOPE_BIAS channel. Records of one channel are in time order; channels are written in batches,
+so records of different channels are not interleaved by time.
+
+Records whose id has the top bit set are markers rather than sensor samples; their 12 byte payload is a long value
+followed by an int. Clock sync markers carry the offset (ns) and drift (ppb) of the sensor or camera clock against
+SystemClock.elapsedRealtimeNanos at the record's timestamp (see ClockSync), camera frame markers carry the number of
+a frame taken at the record's timestamp, pause and resume markers carry nothing, metrics markers carry one value
+of a periodic recording health summary (see SessionMetrics), and frame gate markers carry the number of a burst frame
+with the FrameGate decision on it and its estimated blur in the extra (see FrameGate.encode()).
+exportText() turns the binary stream back into the original text layout:
+1578699792815 Goldfish 3-axis Gyroscope [0.0, 0.0, 0.0]
+*/
+public final class IMURecord {
+
+    public static final int MAGIC = 0x494D5542;
+    public static final byte VERSION = 1;
+    public static final int SIZE = Long.BYTES + Byte.BYTES + 3 * Float.BYTES;
+
+    public static final byte LINEAR_ACCELERATION = 0;
+    public static final byte GYROSCOPE = 1;
+    public static final byte ACCELEROMETER = 2;
+    public static final byte GYROSCOPE_UNCALIBRATED = 3;
+    public static final byte GYROSCOPE_BIAS = 4;
+    public static final byte MAGNETIC_FIELD = 5;
+    public static final byte ROTATION_VECTOR = 6;
+    public static final byte PRESSURE = 7;
+    public static final byte VIDEO_START = (byte) 0x80;
+    public static final byte SENSOR_CLOCK_SYNC = (byte) 0x81;
+    public static final byte CAMERA_CLOCK_SYNC = (byte) 0x82;
+    public static final byte METRICS = (byte) 0x83;
+    public static final byte CAMERA_FRAME = (byte) 0x84;
+    public static final byte RECORDING_PAUSED = (byte) 0x85;
+    public static final byte RECORDING_RESUMED = (byte) 0x86;
+    public static final byte FRAME_GATE = (byte) 0x87;
+
+    private IMURecord() {}
+
+    public static byte[] encodeHeader(byte[] sensor_ids, String[] sensor_names) {
+        byte[][] encoded_names = new byte[sensor_names.length][];
+        int header_size = Integer.BYTES + 2 * Byte.BYTES;
+        for (int index = 0; index < sensor_names.length; ++index) {
+            encoded_names[index] = sensor_names[index].getBytes(StandardCharsets.UTF_8);
+            header_size += Byte.BYTES + Short.BYTES + encoded_names[index].length;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(header_size);
+        header.putInt(MAGIC).put(VERSION).put((byte) sensor_ids.length);
+        for (int index = 0; index < sensor_ids.length; ++index) {
+            header.put(sensor_ids[index]).putShort((short) encoded_names[index].length).put(encoded_names[index]);
+        }
+        return header.array();
+    }
+
+    // Writes a single sample record at the given offset of a reused buffer so that nothing is allocated
+    public static void putSample(ByteBuffer buffer, int offset, long timestamp, byte sensor_id, float[] values) {
+        buffer.putLong(offset, timestamp).put(offset + 8, sensor_id).putFloat(offset + 9, values[0])
+                .putFloat(offset + 13, values[1]).putFloat(offset + 17, values[2]);
+    }
+
+    // Same as above for the count (at most 3) values starting at values[from], padded with zeros
+    public static void putSample(ByteBuffer buffer, int offset, long timestamp, byte sensor_id, float[] values, int from,
+                                 int count) {
+        buffer.putLong(offset, timestamp).put(offset + 8, sensor_id);
+        for (int axis = 0; axis < 3; ++axis) {
+            buffer.putFloat(offset + 9 + axis * Float.BYTES, axis < count ? values[from + axis] : 0);
+        }
+    }
+
+    public static void putMarker(ByteBuffer buffer, int offset, long timestamp, byte marker_id, long value, int extra) {
+        buffer.putLong(offset, timestamp).put(offset + 8, marker_id).putLong(offset + 9, value).putInt(offset + 17, extra);
+    }
+
+    public static boolean isMarker(byte id) {
+        return (id & 0x80) != 0;
+    }
+
+    // Receives the records of a binary IMU data file in order, from read()
+    public interface Visitor {
+        void sample(long timestamp, byte sensor_id, String sensor_name, float x, float y, float z) throws IOException;
+
+        void marker(long timestamp, byte marker_id, long value, int extra) throws IOException;
+    }
+
+    public static void read(InputStream binary_input, Visitor visitor) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(binary_input));
+        if (input.readInt() != MAGIC) throw new IOException("Not an IMU data file");
+        byte version = input.readByte();
+        if (version != VERSION) throw new IOException("Unsupported IMU data file version " + version);
+
+        // Resolve sensor ids back to the names that used to be written on every line
+        String[] sensor_names = new String[256];
+        int sensor_count = input.readUnsignedByte();
+        for (int index = 0; index < sensor_count; ++index) {
+            int id = input.readUnsignedByte();
+            byte[] name = new byte[input.readUnsignedShort()];
+            input.readFully(name);
+            sensor_names[id] = new String(name, StandardCharsets.UTF_8);
+        }
+
+        while (true) {
+            long timestamp;
+            try {
+                timestamp = input.readLong();
+            } catch (EOFException end_of_file) {
+                break;
+            }
+            // Zeroed space preallocated by MappedFileOutputStream is left behind if the recording was not closed
+            if (timestamp == 0) break;
+            byte id;
+            long value;
+            int extra;
+            float x, y, z;
+            try {
+                id = input.readByte();
+                if (isMarker(id)) {
+                    value = input.readLong();
+                    extra = input.readInt();
+                    x = y = z = 0;
+                } else {
+                    x = input.readFloat();
+                    y = input.readFloat();
+                    z = input.readFloat();
+                    value = extra = 0;
+                }
+            } catch (EOFException end_of_file) {
+                // A partially written record at the end of the file is dropped
+                break;
+            }
+            if (isMarker(id)) {
+                visitor.marker(timestamp, id, value, extra);
+            } else {
+                visitor.sample(timestamp, id, sensor_names[id & 0xFF], x, y, z);
+            }
+        }
+    }
+
+    public static void exportText(InputStream binary_input, Writer text_output) throws IOException {
+        StringBuilder line = new StringBuilder();
+        read(binary_input, new Visitor() {
+            @Override
+            public void sample(long timestamp, byte sensor_id, String sensor_name, float x, float y, float z)
+                    throws IOException {
+                line.setLength(0);
+                line.append(timestamp).append(' ').append(sensor_name).append(" [").append(x).append(", ").append(y)
+                        .append(", ").append(z).append("]\n");
+                text_output.write(line.toString());
+            }
+
+            @Override
+            public void marker(long timestamp, byte marker_id, long value, int extra) throws IOException {
+                line.setLength(0);
+                line.append(timestamp);
+                appendMarker(line, marker_id, value, extra);
+                text_output.write(line.append('\n').toString());
+            }
+        });
+        text_output.flush();
+    }
+
+    private static void appendMarker(StringBuilder line, byte marker_id, long value, int extra) {
+        if (marker_id == VIDEO_START) {
+            // The value of a video start marker is the latency between the IMU and the camera starting
+            line.append(" video recording started. Latency between IMU and camera: ").append(Math.abs(value))
+                    .append(" (").append(value < 0 ? "IMU" : "camera").append(" started sooner)");
+        } else if (marker_id == SENSOR_CLOCK_SYNC || marker_id == CAMERA_CLOCK_SYNC) {
+            line.append(marker_id == SENSOR_CLOCK_SYNC ? " sensor" : " camera").append(" clock sync: offset ").append(value)
+                    .append(" ns, drift ").append(extra).append(" ppb");
+        } else if (marker_id == CAMERA_FRAME) {
+            line.append(" camera frame ").append(value);
+        } else if (marker_id == RECORDING_PAUSED || marker_id == RECORDING_RESUMED) {
+            line.append(marker_id == RECORDING_PAUSED ? " recording paused" : " recording resumed");
+        } else if (marker_id == FRAME_GATE && (extra & 0xFF) <= FrameGate.BLURRED) {
+            line.append(" frame gate ").append(value).append(' ').append(FrameGate.name(extra & 0xFF)).append(", blur ");
+            int tenths = extra >>> 8;
+            if (tenths == FrameGate.UNKNOWN_BLUR) {
+                line.append("unknown");
+            } else {
+                line.append(tenths / 10).append('.').append(tenths % 10).append(" px");
+            }
+        } else if (marker_id == METRICS && (extra & 0xFF) < SessionMetrics.metricCount()) {
+            // The extra holds the metric id and, for per-sensor metrics, the sensor id in the second byte
+            line.append(" metric ").append(SessionMetrics.name(extra & 0xFF));
+            if (SessionMetrics.isPerSensor(extra & 0xFF)) line.append('/').append(extra >>> 8);
+            line.append(' ').append(value);
+        } else {
+            line.append(" marker ").append(marker_id & 0xFF).append(' ').append(value).append(' ').append(extra);
+        }
+    }
+
+    // Converts a recorded binary IMU data file into the text layout: java IMURecord <binary input> <text output>
+    public static void main(String[] args) throws IOException {
+        try (InputStream binary_input = new FileInputStream(args[0]);
+             Writer text_output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[1]), StandardCharsets.UTF_8))) {
+            exportText(binary_input, text_output);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,84 @@
+package com.nyu.imu_processing;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Single-producer/single-consumer ring of encoded IMURecord records
+
+The producer (the sensor callback thread) encodes records straight into a preallocated array and publishes them by
+advancing the tail; the consumer (IMUWriter) hands contiguous runs of that array to the output in one write call and
+then advances the head. Neither side takes a lock, and a full ring drops the record and counts an overrun instead of
+blocking the producer.
+*/
+public final class IMURingBuffer {
+
+    private final ByteBuffer records;
+    private final int capacity;
+    private final int mask;
+    // Index of the next record to be drained, only advanced by the consumer
+    private final AtomicLong head = new AtomicLong();
+    // Index of the next record to be published, only advanced by the producer
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong overruns = new AtomicLong();
+    // Producer's last seen head, re-read only when the ring looks full
+    private long cached_head;
+
+    public IMURingBuffer(int capacity) {
+        if (Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("Ring capacity must be a power of two");
+        this.capacity = capacity;
+        mask = capacity - 1;
+        records = ByteBuffer.allocate(capacity * IMURecord.SIZE);
+    }
+
+    // Publishes the count (at most 3) values starting at values[from], see IMURecord.putSample()
+    public boolean offerSample(long timestamp, byte sensor_id, float[] values, int from, int count) {
+        long position = tail.get();
+        if (!hasRoom(position)) return false;
+        IMURecord.putSample(records, (int) (position & mask) * IMURecord.SIZE, timestamp, sensor_id, values, from, count);
+        tail.lazySet(position + 1);
+        return true;
+    }
+
+    public boolean offerMarker(long timestamp, byte marker_id, long value, int extra) {
+        long position = tail.get();
+        if (!hasRoom(position)) return false;
+        IMURecord.putMarker(records, (int) (position & mask) * IMURecord.SIZE, timestamp, marker_id, value, extra);
+        tail.lazySet(position + 1);
+        return true;
+    }
+
+    private boolean hasRoom(long position) {
+        if (position - cached_head < capacity) return true;
+        cached_head = head.get();
+        if (position - cached_head < capacity) return true;
+        overruns.incrementAndGet();
+        return false;
+    }
+
+    // Writes every published record to the output in at most two contiguous batches, returns the number of records written
+    public int drainTo(OutputStream output) throws IOException {
+        int drained = 0;
+        long position = head.get();
+        long published = tail.get();
+        while (position < published) {
+            int from = (int) (position & mask);
+            int count = (int) Math.min(published - position, capacity - from);
+            output.write(records.array(), from * IMURecord.SIZE, count * IMURecord.SIZE);
+            position += count;
+            drained += count;
+            head.lazySet(position);
+        }
+        return drained;
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public long getOverruns() {
+        return overruns.get();
+    }
+}
\ No newline at end of file
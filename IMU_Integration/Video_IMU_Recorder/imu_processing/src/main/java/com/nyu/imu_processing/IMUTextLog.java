@@ -0,0 +1,132 @@
+package com.nyu.imu_processing;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+Contents of a parsed IMU text log: the samples of every sensor, by sensor name in order of first appearance, and the
+lines that are not samples as events
+
+Events are kept as columns and typed with the marker ids of IMURecord: VIDEO_START carries the latency between the
+IMU and the camera starting (negative when the IMU started sooner), the clock sync events carry the offset in ns as
+their value and the drift in ppb as their extra, CAMERA_FRAME events carry the frame number, METRICS events carry a
+metric's value with its SessionMetrics id (and sensor id, for per-sensor metrics) packed into the extra as in the
+binary file, and FRAME_GATE events carry the frame number with the decision and blur packed as by FrameGate.encode().
+*/
+public class IMUTextLog {
+
+    private final Map<String, SampleStore> sensors = new LinkedHashMap<>();
+    private long[] event_timestamps = new long[16];
+    private byte[] event_types = new byte[16];
+    private long[] event_values = new long[16];
+    private int[] event_extras = new int[16];
+    private int event_count;
+    private long malformed_lines;
+
+    void addEvent(long timestamp, byte type, long value, int extra) {
+        if (event_count == event_timestamps.length) {
+            int capacity = 2 * event_count;
+            event_timestamps = Arrays.copyOf(event_timestamps, capacity);
+            event_types = Arrays.copyOf(event_types, capacity);
+            event_values = Arrays.copyOf(event_values, capacity);
+            event_extras = Arrays.copyOf(event_extras, capacity);
+        }
+        event_timestamps[event_count] = timestamp;
+        event_types[event_count] = type;
+        event_values[event_count] = value;
+        event_extras[event_count] = extra;
+        ++event_count;
+    }
+
+    /*
+    Puts the events in time order, keeping the order of events with the same timestamp. The IMU writer drains its rings
+    one after another, so events are out of order by at most one drain cycle and an insertion sort moves each only a
+    short way.
+    */
+    void sortEvents() {
+        for (int index = 1; index < event_count; ++index) {
+            long timestamp = event_timestamps[index];
+            int position = index;
+            while (position > 0 && event_timestamps[position - 1] > timestamp) --position;
+            if (position == index) continue;
+            byte type = event_types[index];
+            long value = event_values[index];
+            int extra = event_extras[index];
+            int moved = index - position;
+            System.arraycopy(event_timestamps, position, event_timestamps, position + 1, moved);
+            System.arraycopy(event_types, position, event_types, position + 1, moved);
+            System.arraycopy(event_values, position, event_values, position + 1, moved);
+            System.arraycopy(event_extras, position, event_extras, position + 1, moved);
+            event_timestamps[position] = timestamp;
+            event_types[position] = type;
+            event_values[position] = value;
+            event_extras[position] = extra;
+        }
+    }
+
+    void clearEvents() {
+        event_count = 0;
+    }
+
+    SampleStore sensor(String name, int axes, int capacity) {
+        return sensors.computeIfAbsent(name, key -> new SampleStore(axes, capacity));
+    }
+
+    void addMalformed(long lines) {
+        malformed_lines += lines;
+    }
+
+    // Appends a log that continues this one, as when the chunks of one file are joined
+    void append(IMUTextLog next) {
+        for (Map.Entry<String, SampleStore> entry : next.sensors.entrySet()) {
+            SampleStore samples = entry.getValue();
+            SampleStore existing = sensors.get(entry.getKey());
+            if (existing == null) {
+                sensors.put(entry.getKey(), samples);
+            } else if (existing.getAxes() == samples.getAxes()) {
+                existing.append(samples);
+            } else {
+                malformed_lines += samples.size();
+            }
+        }
+        for (int index = 0; index < next.event_count; ++index) {
+            addEvent(next.event_timestamps[index], next.event_types[index], next.event_values[index],
+                    next.event_extras[index]);
+        }
+        malformed_lines += next.malformed_lines;
+    }
+
+    public Map<String, SampleStore> getSensors() {
+        return sensors;
+    }
+
+    public SampleStore getSensor(String name) {
+        return sensors.get(name);
+    }
+
+    public int getEventCount() {
+        return event_count;
+    }
+
+    public long getEventTimestamp(int index) {
+        return event_timestamps[index];
+    }
+
+    public byte getEventType(int index) {
+        return event_types[index];
+    }
+
+    public long getEventValue(int index) {
+        return event_values[index];
+    }
+
+    public int getEventExtra(int index) {
+        return event_extras[index];
+    }
+
+    // Lines that could not be read as a sample or an event, including samples whose value count changed
+    public long getMalformedLines() {
+        return malformed_lines;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,385 @@
+package com.nyu.imu_processing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/*
+Parser for IMU logs in the text layout (see IMURecord.exportText()), built for multi-gigabyte session archives
+
+    1578699792815 Goldfish 3-axis Gyroscope [0.0, 0.0, 0.0]
+    1578699792900 video recording started. Latency between IMU and camera: 85 (IMU started sooner)
+    1578699793000 sensor clock sync: offset 1200 ns, drift -35 ppb
+    1578699793010 camera frame 42
+    1578699793020 metric interval_p99_ns/1 5120
+
+The file is memory-mapped and cut into chunks that start and end on line boundaries, and the chunks are parsed in
+parallel on a fork-join pool and joined in file order. Numbers are read straight from the mapped bytes, and a sensor
+name becomes a String only the first time a chunk sees it, so parsing creates no objects per line. Values are
+rounded to float, which is what the sensors reported.
+*/
+public final class IMUTextLogParser {
+
+    public static final int DEFAULT_CHUNK_SIZE = 32 << 20;
+    private static final int INITIAL_SENSOR_CAPACITY = 1 << 12;
+
+    private static final byte[] VIDEO_START = ascii("video recording started. Latency between IMU and camera: ");
+    private static final byte[] IMU_SOONER = ascii(" (IMU");
+    private static final byte[] SENSOR_CLOCK_SYNC = ascii("sensor clock sync: offset ");
+    private static final byte[] CAMERA_CLOCK_SYNC = ascii("camera clock sync: offset ");
+    private static final byte[] DRIFT = ascii(" ns, drift ");
+    private static final byte[] CAMERA_FRAME = ascii("camera frame ");
+    private static final byte[] RECORDING_PAUSED = ascii("recording paused");
+    private static final byte[] RECORDING_RESUMED = ascii("recording resumed");
+    private static final byte[] MARKER = ascii("marker ");
+    private static final byte[] FRAME_GATE = ascii("frame gate ");
+    private static final byte[][] GATE_DECISIONS = {ascii("kept"), ascii("still"), ascii("blurred")};
+    private static final byte[] BLUR = ascii(", blur ");
+    private static final byte[] UNKNOWN = ascii("unknown");
+    private static final byte[] PIXELS = ascii(" px");
+    private static final byte[] METRIC = ascii("metric ");
+    private static final byte[][] METRIC_NAMES = new byte[SessionMetrics.metricCount()][];
+    private static final byte[] NAN = ascii("NaN");
+    private static final byte[] INFINITY = ascii("Infinity");
+    // Powers of ten that are exact as doubles
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int index = 1; index < POWERS_OF_TEN.length; ++index) POWERS_OF_TEN[index] = 10 * POWERS_OF_TEN[index - 1];
+        for (int metric = 0; metric < METRIC_NAMES.length; ++metric) METRIC_NAMES[metric] = ascii(SessionMetrics.name(metric));
+    }
+
+    private IMUTextLogParser() {}
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public static IMUTextLog parse(File log) throws IOException {
+        return parse(log, DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool());
+    }
+
+    public static IMUTextLog parse(File log, int chunk_size, ForkJoinPool pool) throws IOException {
+        List<ForkJoinTask<IMUTextLog>> tasks = new ArrayList<>();
+        try (RandomAccessFile file = new RandomAccessFile(log, "r"); FileChannel channel = file.getChannel()) {
+            long size = channel.size();
+            long start = 0;
+            while (start < size) {
+                long end = lineStart(channel, Math.min(start + chunk_size, size), size);
+                // Mappings stay valid after the channel is closed
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                tasks.add(pool.submit(() -> new ChunkParser(chunk).parse()));
+                start = end;
+            }
+        }
+
+        IMUTextLog result = new IMUTextLog();
+        for (ForkJoinTask<IMUTextLog> task : tasks) result.append(task.join());
+        return result;
+    }
+
+    // First line start at or after position
+    private static long lineStart(FileChannel channel, long position, long size) throws IOException {
+        if (position >= size) return size;
+        ByteBuffer window = ByteBuffer.allocate(8192);
+        // position itself starts a line if the byte before it ends one
+        long scan = position - 1;
+        while (scan < size) {
+            window.clear();
+            int read = channel.read(window, scan);
+            if (read <= 0) break;
+            for (int index = 0; index < read; ++index) {
+                if (window.get(index) == '\n') return scan + index + 1;
+            }
+            scan += read;
+        }
+        return size;
+    }
+
+    private static final class ChunkParser {
+        private final ByteBuffer data;
+        private final IMUTextLog log = new IMUTextLog();
+        // Sensors seen in this chunk, looked up by their name bytes
+        private byte[][] names = new byte[4][];
+        private SampleStore[] stores = new SampleStore[4];
+        private int sensor_count;
+        private double[] values = new double[8];
+        private byte[] fallback = new byte[64];
+        // Read position within the current line and the last number read
+        private int cursor;
+        private long number;
+        private double decimal;
+
+        private ChunkParser(ByteBuffer data) {
+            this.data = data;
+        }
+
+        private IMUTextLog parse() {
+            int limit = data.limit();
+            int line_start = 0;
+            while (line_start < limit) {
+                int line_end = line_start;
+                while (line_end < limit && data.get(line_end) != '\n') ++line_end;
+                int content_end = line_end;
+                if (content_end > line_start && data.get(content_end - 1) == '\r') --content_end;
+                if (content_end > line_start && !parseLine(line_start, content_end)) log.addMalformed(1);
+                line_start = line_end + 1;
+            }
+            return log;
+        }
+
+        private boolean parseLine(int start, int end) {
+            cursor = start;
+            if (!parseLong(end)) return false;
+            long timestamp = number;
+            if (cursor >= end || data.get(cursor) != ' ') return false;
+            ++cursor;
+            if (data.get(end - 1) == ']') return parseSample(timestamp, end);
+            return parseEvent(timestamp, end);
+        }
+
+        private boolean parseSample(long timestamp, int end) {
+            int bracket = end - 2;
+            while (bracket > cursor && data.get(bracket) != '[') --bracket;
+            // The name runs up to the space before the opening bracket
+            if (bracket - 1 <= cursor || data.get(bracket - 1) != ' ') return false;
+            int name_start = cursor, name_end = bracket - 1;
+
+            cursor = bracket + 1;
+            int count = 0;
+            while (true) {
+                while (cursor < end && data.get(cursor) == ' ') ++cursor;
+                if (!parseDecimal(end - 1)) return false;
+                if (count == values.length) values = Arrays.copyOf(values, 2 * count);
+                values[count++] = (float) decimal;
+                if (cursor == end - 1) break;
+                if (data.get(cursor) != ',') return false;
+                ++cursor;
+            }
+
+            SampleStore store = sensor(name_start, name_end, count);
+            if (store.getAxes() != count) return false;
+            store.accept(timestamp, values, 0);
+            return true;
+        }
+
+        private SampleStore sensor(int name_start, int name_end, int axes) {
+            int length = name_end - name_start;
+            for (int sensor = 0; sensor < sensor_count; ++sensor) {
+                byte[] name = names[sensor];
+                if (name.length != length) continue;
+                int index = 0;
+                while (index < length && name[index] == data.get(name_start + index)) ++index;
+                if (index == length) return stores[sensor];
+            }
+            byte[] name = new byte[length];
+            for (int index = 0; index < length; ++index) name[index] = data.get(name_start + index);
+            if (sensor_count == names.length) {
+                names = Arrays.copyOf(names, 2 * sensor_count);
+                stores = Arrays.copyOf(stores, 2 * sensor_count);
+            }
+            names[sensor_count] = name;
+            stores[sensor_count] = log.sensor(new String(name, StandardCharsets.UTF_8), axes, INITIAL_SENSOR_CAPACITY);
+            return stores[sensor_count++];
+        }
+
+        private boolean parseEvent(long timestamp, int end) {
+            if (expect(VIDEO_START, end)) {
+                if (!parseLong(end)) return false;
+                // The line gives the magnitude and which side started sooner, the value is signed as in the marker
+                log.addEvent(timestamp, IMURecord.VIDEO_START, expect(IMU_SOONER, end) ? -number : number, 0);
+                return true;
+            }
+            if (expect(CAMERA_FRAME, end)) {
+                if (!parseLong(end)) return false;
+                log.addEvent(timestamp, IMURecord.CAMERA_FRAME, number, 0);
+                return true;
+            }
+            if (expect(FRAME_GATE, end)) {
+                return parseFrameGate(timestamp, end);
+            }
+            if (expect(RECORDING_PAUSED, end)) {
+                log.addEvent(timestamp, IMURecord.RECORDING_PAUSED, 0, 0);
+                return true;
+            }
+            if (expect(RECORDING_RESUMED, end)) {
+                log.addEvent(timestamp, IMURecord.RECORDING_RESUMED, 0, 0);
+                return true;
+            }
+            byte type;
+            if (expect(SENSOR_CLOCK_SYNC, end)) {
+                type = IMURecord.SENSOR_CLOCK_SYNC;
+            } else if (expect(CAMERA_CLOCK_SYNC, end)) {
+                type = IMURecord.CAMERA_CLOCK_SYNC;
+            } else if (expect(MARKER, end)) {
+                if (!parseLong(end) || !expect(' ', end)) return false;
+                type = (byte) number;
+                if (!parseLong(end) || !expect(' ', end)) return false;
+                long value = number;
+                if (!parseLong(end)) return false;
+                log.addEvent(timestamp, type, value, (int) number);
+                return true;
+            } else if (expect(METRIC, end)) {
+                return parseMetric(timestamp, end);
+            } else {
+                return false;
+            }
+            if (!parseLong(end)) return false;
+            long offset = number;
+            if (!expect(DRIFT, end) || !parseLong(end)) return false;
+            log.addEvent(timestamp, type, offset, (int) number);
+            return true;
+        }
+
+        private boolean parseFrameGate(long timestamp, int end) {
+            if (!parseLong(end) || !expect(' ', end)) return false;
+            long frame_number = number;
+            int decision = 0;
+            while (decision < GATE_DECISIONS.length && !expect(GATE_DECISIONS[decision], end)) ++decision;
+            if (decision == GATE_DECISIONS.length || !expect(BLUR, end)) return false;
+            long tenths;
+            if (expect(UNKNOWN, end)) {
+                tenths = FrameGate.UNKNOWN_BLUR;
+            } else {
+                if (!parseLong(end) || !expect('.', end)) return false;
+                tenths = 10 * number;
+                if (!parseLong(end) || !expect(PIXELS, end)) return false;
+                tenths += number;
+            }
+            log.addEvent(timestamp, IMURecord.FRAME_GATE, frame_number, (int) (tenths << 8) | decision);
+            return true;
+        }
+
+        private boolean parseMetric(long timestamp, int end) {
+            int name_start = cursor;
+            for (int metric = 0; metric < METRIC_NAMES.length; ++metric) {
+                cursor = name_start;
+                if (!expect(METRIC_NAMES[metric], end)) continue;
+                int sensor_id = 0;
+                if (SessionMetrics.isPerSensor(metric)) {
+                    if (!expect('/', end) || !parseLong(end)) return false;
+                    sensor_id = (int) number;
+                }
+                if (!expect(' ', end) || !parseLong(end)) return false;
+                log.addEvent(timestamp, IMURecord.METRICS, number, sensor_id << 8 | metric);
+                return true;
+            }
+            return false;
+        }
+
+        // Consumes the given bytes if the line continues with them
+        private boolean expect(byte[] text, int end) {
+            if (end - cursor < text.length) return false;
+            for (int index = 0; index < text.length; ++index) {
+                if (data.get(cursor + index) != text[index]) return false;
+            }
+            cursor += text.length;
+            return true;
+        }
+
+        private boolean expect(char character, int end) {
+            if (cursor >= end || data.get(cursor) != character) return false;
+            ++cursor;
+            return true;
+        }
+
+        private boolean parseLong(int end) {
+            boolean negative = cursor < end && data.get(cursor) == '-';
+            if (negative) ++cursor;
+            int digits_start = cursor;
+            long value = 0;
+            while (cursor < end) {
+                int digit = data.get(cursor) - '0';
+                if (digit < 0 || digit > 9) break;
+                value = 10 * value + digit;
+                ++cursor;
+            }
+            number = negative ? -value : value;
+            return cursor > digits_start && cursor - digits_start <= 18;
+        }
+
+        /*
+        Reads a number as written by Float.toString(): digits with a decimal point, an optional exponent, NaN or
+        Infinity. Up to 15 significant digits and a power of ten up to 22 make an exactly rounded double from one
+        multiplication or division; anything else falls back to Double.parseDouble().
+        */
+        private boolean parseDecimal(int end) {
+            int start = cursor;
+            boolean negative = cursor < end && data.get(cursor) == '-';
+            if (negative) ++cursor;
+            if (expect(NAN, end)) {
+                decimal = Double.NaN;
+                return true;
+            }
+            if (expect(INFINITY, end)) {
+                decimal = negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+                return true;
+            }
+
+            long mantissa = 0;
+            int significant = 0, exponent = 0, digits = 0;
+            boolean fraction = false;
+            for (; cursor < end; ++cursor) {
+                byte character = data.get(cursor);
+                if (character == '.' && !fraction) {
+                    fraction = true;
+                    continue;
+                }
+                int digit = character - '0';
+                if (digit < 0 || digit > 9) break;
+                ++digits;
+                if (mantissa == 0 && digit == 0) {
+                    if (fraction) --exponent;
+                    continue;
+                }
+                if (significant < 18) {
+                    mantissa = 10 * mantissa + digit;
+                    ++significant;
+                    if (fraction) --exponent;
+                } else if (!fraction) {
+                    ++exponent;
+                }
+            }
+            if (digits == 0) return false;
+            if (cursor < end && (data.get(cursor) == 'E' || data.get(cursor) == 'e')) {
+                ++cursor;
+                if (!parseLong(end)) return false;
+                exponent += (int) number;
+            }
+
+            if (significant <= 15 && exponent >= -22 && exponent <= 22) {
+                decimal = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+                if (negative) decimal = -decimal;
+                return true;
+            }
+            int length = cursor - start;
+            if (length > fallback.length) fallback = new byte[length];
+            for (int index = 0; index < length; ++index) fallback[index] = data.get(start + index);
+            decimal = Double.parseDouble(new String(fallback, 0, length, StandardCharsets.US_ASCII));
+            return true;
+        }
+    }
+
+    // Summarises a text log: java IMUTextLogParser <text log>
+    public static void main(String[] args) throws IOException {
+        long start = System.nanoTime();
+        IMUTextLog log = parse(new File(args[0]));
+        for (Map.Entry<String, SampleStore> sensor : log.getSensors().entrySet()) {
+            System.out.println(sensor.getKey() + ": " + sensor.getValue().size() + " samples of "
+                    + sensor.getValue().getAxes() + " values");
+        }
+        System.out.println(log.getEventCount() + " events, " + log.getMalformedLines() + " malformed lines, parsed in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+}
\ No newline at end of file
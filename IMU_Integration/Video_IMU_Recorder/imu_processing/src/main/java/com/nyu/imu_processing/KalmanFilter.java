@@ -0,0 +1,298 @@
+package com.nyu.imu_processing;
+
+import java.util.Arrays;
+
+/*
+Linear Kalman filter with an n-dimensional state, m-dimensional measurements and an optional c-dimensional control input
+
+All matrices are row-major double[] arrays allocated once in the constructor, and predict()/update() work in place
+on them, so filtering allocates nothing per sample:
+    predict:  x = F x + B u                     P = F P F^T + Q
+    update:   S = H P H^T + R    K = P H^T S^-1    x = x + K (z - H x)    P = P - K H P
+
+The 4-argument constructor keeps the original scalar filter (identity transition, direct measurement), and
+positionVelocityBias() builds the per-axis position/velocity/accelerometer bias model used for IMU integration.
+*/
+public class KalmanFilter {
+    private final int n, m, c;
+    private final double[] x;        // 当前状态估计 (n)
+    private final double[] P;        // 当前估计误差协方差 (n x n)
+    private final double[] F;        // 状态转移矩阵 (n x n)
+    private final double[] B;        // 控制输入矩阵 (n x c)
+    private final double[] Q;        // 过程噪声协方差 (n x n)
+    private final double[] H;        // 测量矩阵 (m x n)
+    private final double[] R;        // 测量噪声协方差 (m x m)
+
+    // Scratch space reused by every step
+    private final double[] next_x, FP, PHt, S, K, innovation;
+
+    public KalmanFilter(int state_size, int measurement_size, int control_size) {
+        n = state_size;
+        m = measurement_size;
+        c = control_size;
+        x = new double[n];
+        P = identity(n);
+        F = identity(n);
+        B = new double[n * c];
+        Q = new double[n * n];
+        H = new double[m * n];
+        for (int row = 0; row < Math.min(m, n); ++row) H[row * n + row] = 1;
+        R = identity(m);
+
+        next_x = new double[n];
+        FP = new double[n * n];
+        PHt = new double[n * m];
+        S = new double[m * m];
+        K = new double[n * m];
+        innovation = new double[m];
+    }
+
+    public KalmanFilter(double initialX, double initialP, double processNoise, double measurementNoise) {
+        this(1, 1, 0);
+        x[0] = initialX;
+        P[0] = initialP;
+        Q[0] = processNoise;
+        R[0] = measurementNoise;
+    }
+
+    /*
+    State per axis is [position, velocity, accelerometer bias] and the control input is the measured acceleration of
+    each axis, so predict() integrates (acceleration - bias) over dT. Measurements are positions (for example from a
+    visual fix); with none available the filter is simply run on predict().
+    */
+    public static KalmanFilter positionVelocityBias(int axes, double dT, double acceleration_noise, double bias_noise,
+                                                    double position_noise) {
+        KalmanFilter filter = new KalmanFilter(3 * axes, axes, axes);
+        int n = filter.n;
+        double half_dT2 = 0.5 * dT * dT;
+        for (int axis = 0; axis < axes; ++axis) {
+            int p = 3 * axis, v = p + 1, b = p + 2;
+            filter.F[p * n + v] = dT;
+            filter.F[p * n + b] = -half_dT2;
+            filter.F[v * n + b] = -dT;
+            filter.B[p * axes + axis] = half_dT2;
+            filter.B[v * axes + axis] = dT;
+
+            // White acceleration noise enters through [dT^2 / 2, dT], the bias follows a random walk
+            double variance = acceleration_noise * acceleration_noise;
+            filter.Q[p * n + p] = half_dT2 * half_dT2 * variance;
+            filter.Q[p * n + v] = filter.Q[v * n + p] = half_dT2 * dT * variance;
+            filter.Q[v * n + v] = dT * dT * variance;
+            filter.Q[b * n + b] = bias_noise * bias_noise * dT;
+
+            Arrays.fill(filter.H, axis * n, axis * n + n, 0);
+            filter.H[axis * n + p] = 1;
+            filter.R[axis * axes + axis] = position_noise * position_noise;
+        }
+        return filter;
+    }
+
+    public double predict() {
+        // predict next state estimate 预测下一个状态估计
+        return predict(null, 0);
+    }
+
+    public double predict(double[] control, int offset) {
+        multiply(F, n, n, x, 1, next_x);
+        if (control != null) {
+            for (int row = 0; row < n; ++row) {
+                double sum = 0;
+                for (int col = 0; col < c; ++col) sum += B[row * c + col] * control[offset + col];
+                next_x[row] += sum;
+            }
+        }
+        System.arraycopy(next_x, 0, x, 0, n);
+
+        // P = F P F^T + Q
+        multiply(F, n, n, P, n, FP);
+        for (int row = 0; row < n; ++row) {
+            for (int col = row; col < n; ++col) {
+                double sum = Q[row * n + col];
+                for (int k = 0; k < n; ++k) sum += FP[row * n + k] * F[col * n + k];
+                P[row * n + col] = P[col * n + row] = sum;
+            }
+        }
+        return x[0];
+    }
+
+    public double update(double measurement) {
+        //  update the estimate based on measurements 基于测量更新状态估计
+        innovation[0] = measurement;
+        return update(innovation, 0);
+    }
+
+    public double update(double[] measurement, int offset) {
+        // Innovation y = z - H x (copied first so that update(innovation, 0) works)
+        for (int row = 0; row < m; ++row) {
+            double sum = 0;
+            for (int k = 0; k < n; ++k) sum += H[row * n + k] * x[k];
+            innovation[row] = measurement[offset + row] - sum;
+        }
+
+        // P H^T, then S = H P H^T + R
+        for (int row = 0; row < n; ++row) {
+            for (int col = 0; col < m; ++col) {
+                double sum = 0;
+                for (int k = 0; k < n; ++k) sum += P[row * n + k] * H[col * n + k];
+                PHt[row * m + col] = sum;
+            }
+        }
+        for (int row = 0; row < m; ++row) {
+            for (int col = 0; col < m; ++col) {
+                double sum = R[row * m + col];
+                for (int k = 0; k < n; ++k) sum += H[row * n + k] * PHt[k * m + col];
+                S[row * m + col] = sum;
+            }
+        }
+
+        // K = P H^T S^-1, solved row by row against the Cholesky factor of S rather than inverting it
+        choleskyInPlace(S, m);
+        for (int row = 0; row < n; ++row) {
+            choleskySolve(S, m, PHt, row * m, K, row * m);
+        }
+
+        for (int row = 0; row < n; ++row) {
+            double sum = 0;
+            for (int k = 0; k < m; ++k) sum += K[row * m + k] * innovation[k];
+            x[row] += sum;
+        }
+        // P = P - K (H P), where H P = (P H^T)^T since P is symmetric
+        for (int row = 0; row < n; ++row) {
+            for (int col = row; col < n; ++col) {
+                double sum = 0;
+                for (int k = 0; k < m; ++k) sum += K[row * m + k] * PHt[col * m + k];
+                P[row * n + col] = P[col * n + row] = P[row * n + col] - sum;
+            }
+        }
+        return x[0];
+    }
+
+    /*
+    Filters count samples in one call: measurements holds m values per sample and states receives the n state values
+    after each sample. controls (c values per sample) may be null when the filter has no control input.
+    */
+    public void filter(double[] controls, double[] measurements, double[] states, int count) {
+        for (int sample = 0; sample < count; ++sample) {
+            predict(controls, sample * c);
+            update(measurements, sample * m);
+            System.arraycopy(x, 0, states, sample * n, n);
+        }
+    }
+
+    public double[] getState() {
+        return x;
+    }
+
+    public double[] getCovariance() {
+        return P;
+    }
+
+    public double[] getTransition() {
+        return F;
+    }
+
+    public double[] getControl() {
+        return B;
+    }
+
+    public double[] getProcessNoise() {
+        return Q;
+    }
+
+    public double[] getMeasurement() {
+        return H;
+    }
+
+    public double[] getMeasurementNoise() {
+        return R;
+    }
+
+    public int getStateSize() {
+        return n;
+    }
+
+    public int getMeasurementSize() {
+        return m;
+    }
+
+    public int getControlSize() {
+        return c;
+    }
+
+    private static double[] identity(int size) {
+        double[] matrix = new double[size * size];
+        for (int index = 0; index < size; ++index) matrix[index * size + index] = 1;
+        return matrix;
+    }
+
+    // out (rows x cols) = a (rows x inner) * b (inner x cols)
+    private static void multiply(double[] a, int rows, int inner, double[] b, int cols, double[] out) {
+        for (int row = 0; row < rows; ++row) {
+            for (int col = 0; col < cols; ++col) {
+                double sum = 0;
+                for (int k = 0; k < inner; ++k) sum += a[row * inner + k] * b[k * cols + col];
+                out[row * cols + col] = sum;
+            }
+        }
+    }
+
+    // Replaces the lower triangle of the symmetric positive definite matrix with its Cholesky factor L (A = L L^T)
+    private static void choleskyInPlace(double[] a, int size) {
+        for (int col = 0; col < size; ++col) {
+            double diagonal = a[col * size + col];
+            for (int k = 0; k < col; ++k) diagonal -= a[col * size + k] * a[col * size + k];
+            if (!(diagonal > 0)) throw new ArithmeticException("Innovation covariance is not positive definite");
+            diagonal = Math.sqrt(diagonal);
+            a[col * size + col] = diagonal;
+            for (int row = col + 1; row < size; ++row) {
+                double sum = a[row * size + col];
+                for (int k = 0; k < col; ++k) sum -= a[row * size + k] * a[col * size + k];
+                a[row * size + col] = sum / diagonal;
+            }
+        }
+    }
+
+    // Solves (L L^T) out = rhs for one vector, with L from choleskyInPlace()
+    private static void choleskySolve(double[] l, int size, double[] rhs, int rhs_offset, double[] out, int out_offset) {
+        for (int row = 0; row < size; ++row) {
+            double sum = rhs[rhs_offset + row];
+            for (int k = 0; k < row; ++k) sum -= l[row * size + k] * out[out_offset + k];
+            out[out_offset + row] = sum / l[row * size + row];
+        }
+        for (int row = size - 1; row >= 0; --row) {
+            double sum = out[out_offset + row];
+            for (int k = row + 1; k < size; ++k) sum -= l[k * size + row] * out[out_offset + k];
+            out[out_offset + row] = sum / l[row * size + row];
+        }
+    }
+
+
+
+    private double[] highpassFilter(double[] dim_quan, int a, double avg_dT) {
+    	double[] res = new double[dim_quan.length];
+
+        // initialize KalmanFilter  (初始化卡尔曼滤波器)
+        double initialX = 0.0;
+        double initialP = 1.0;
+        double processNoise = 0.01;
+        double measurementNoise = 0.1;
+
+        // 模拟测量和滤波器更新: push the samples through a streaming stage that collects into res
+        KalmanStage kalmanStage = new KalmanStage(new KalmanFilter(initialX, initialP, processNoise, measurementNoise));
+        kalmanStage.then(new ArraySink(res, 1));
+        kalmanStage.acceptBlock(null, dim_quan, 1, dim_quan.length);
+        kalmanStage.finish();
+
+    	return res;
+    }
+
+
+    public static void filterQuantity(SampleStore quantity, double avg_dT) {
+
+    	if (avg_dT != 0) {
+            // Zero-phase high-pass of every axis in place, one fork-join task per axis (and per segment of long logs)
+            ButterworthFilterBank.highPass(1, 0.2 * avg_dT, 1 / avg_dT).filter(quantity);
+        }
+    }
+
+}
\ No newline at end of file
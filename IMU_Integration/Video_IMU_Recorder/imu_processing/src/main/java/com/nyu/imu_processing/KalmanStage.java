@@ -0,0 +1,33 @@
+package com.nyu.imu_processing;
+
+// Runs a KalmanFilter over the stream, taking each sample as a measurement and emitting the filtered measurement H x
+public class KalmanStage extends FilterStage {
+
+    private final KalmanFilter filter;
+    private final double[] estimate;
+
+    public KalmanStage(KalmanFilter filter) {
+        super(filter.getMeasurementSize());
+        this.filter = filter;
+        estimate = new double[channels];
+    }
+
+    @Override
+    public void accept(long timestamp, double[] values, int offset) {
+        filter.predict();
+        filter.update(values, offset);
+
+        double[] state = filter.getState(), measurement = filter.getMeasurement();
+        int n = filter.getStateSize();
+        for (int row = 0; row < channels; ++row) {
+            double sum = 0;
+            for (int k = 0; k < n; ++k) sum += measurement[row * n + k] * state[k];
+            estimate[row] = sum;
+        }
+        downstream.accept(timestamp, estimate, 0);
+    }
+
+    public KalmanFilter getFilter() {
+        return filter;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,107 @@
+package com.nyu.imu_processing;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Recent history of one motion sensor's magnitude (|rotation rate| or |linear acceleration|), written by the sensor
+thread and queried from any other thread without locks
+
+Each sample stores its timestamp, its magnitude and the running integral of the magnitude over time, so the motion
+between two instants is a difference of two interpolated integrals. The writer fills a ring of preallocated arrays and
+publishes each sample by advancing a counter; readers search the published part of the ring and check the counter
+again afterwards, giving up (NaN) if the writer may have overwritten what they read. Queries also answer NaN for
+instants the history does not cover, either because they are too old or because their samples have not arrived yet.
+*/
+public final class MotionHistory {
+
+    private final long[] timestamps;
+    private final double[] magnitudes;
+    // Integral of the magnitude from the first sample up to each sample
+    private final double[] integrals;
+    private final int mask;
+    // Samples published so far, only advanced by the writer
+    private final AtomicLong count = new AtomicLong();
+    private long last_timestamp;
+    private double integral;
+
+    public MotionHistory(int capacity) {
+        if (Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("History capacity must be a power of two");
+        timestamps = new long[capacity];
+        magnitudes = new double[capacity];
+        integrals = new double[capacity];
+        mask = capacity - 1;
+    }
+
+    // Writer only: adds a sample (timestamps in ns, increasing)
+    public void add(long timestamp, float x, float y, float z) {
+        long position = count.get();
+        if (position > 0 && timestamp <= last_timestamp) return;
+        double magnitude = Math.sqrt((double) x * x + (double) y * y + (double) z * z);
+        // Each sample's magnitude holds over the interval leading up to it
+        if (position > 0) integral += magnitude * (timestamp - last_timestamp) * 1e-9;
+        int slot = (int) (position & mask);
+        timestamps[slot] = timestamp;
+        magnitudes[slot] = magnitude;
+        integrals[slot] = integral;
+        last_timestamp = timestamp;
+        count.lazySet(position + 1);
+    }
+
+    // Integral of the magnitude over [from, to] in units times seconds, or NaN if the history does not cover it
+    public double integral(long from, long to) {
+        long published = count.get();
+        long oldest = oldest(published);
+        long after_from = firstAfter(from, oldest, published);
+        long after_to = firstAfter(to, oldest, published);
+        if (after_from == oldest || after_to == published) return Double.NaN;
+        double result = integralAt(to, after_to) - integralAt(from, after_from);
+        return valid(oldest) ? result : Double.NaN;
+    }
+
+    // Largest magnitude of the samples covering [from, to], or NaN if the history does not cover it
+    public double peak(long from, long to) {
+        long published = count.get();
+        long oldest = oldest(published);
+        long first = firstAfter(from, oldest, published);
+        long last = firstAfter(to, oldest, published);
+        if (first == oldest || last == published) return Double.NaN;
+        double peak = 0;
+        for (long index = first; index <= last; ++index) peak = Math.max(peak, magnitudes[(int) (index & mask)]);
+        return valid(oldest) ? peak : Double.NaN;
+    }
+
+    // The writer may be overwriting the oldest slot, so it is left out
+    private long oldest(long published) {
+        return Math.max(0, published - mask);
+    }
+
+    // Index of the first sample after the timestamp, in [oldest, published]
+    private long firstAfter(long timestamp, long oldest, long published) {
+        long low = oldest, high = published;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (timestamps[(int) (middle & mask)] <= timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Integral up to a timestamp that falls in the interval leading up to the given sample
+    private double integralAt(long timestamp, long after) {
+        int slot = (int) (after & mask);
+        return integrals[slot] - magnitudes[slot] * (timestamps[slot] - timestamp) * 1e-9;
+    }
+
+    private boolean valid(long oldest) {
+        return oldest(count.get()) <= oldest;
+    }
+
+    // Timestamp of the newest sample, 0 while there is none
+    public long getLatest() {
+        long published = count.get();
+        return published == 0 ? 0 : timestamps[(int) ((published - 1) & mask)];
+    }
+}
\ No newline at end of file
@@ -0,0 +1,23 @@
+package com.nyu.imu_processing;
+
+/*
+Push-based consumer of timestamped multi-channel samples
+
+A sample is the channel values stored at values[offset], values[offset + 1], ...; the array belongs to the caller and
+may be reused as soon as accept() returns. Blocks hold samples back to back (channels values each), which lets
+stages filter whole blocks from a file or a live recording without holding the full series in memory. A block without
+timestamps (null) numbers its samples from 0 instead.
+*/
+public interface SampleSink {
+
+    void accept(long timestamp, double[] values, int offset);
+
+    default void acceptBlock(long[] timestamps, double[] values, int channels, int count) {
+        for (int sample = 0; sample < count; ++sample) {
+            accept(timestamps == null ? sample : timestamps[sample], values, sample * channels);
+        }
+    }
+
+    // Called once the input has ended
+    default void finish() {}
+}
\ No newline at end of file
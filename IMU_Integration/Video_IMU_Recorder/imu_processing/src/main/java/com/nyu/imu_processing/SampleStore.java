@@ -0,0 +1,98 @@
+package com.nyu.imu_processing;
+
+import java.util.Arrays;
+
+/*
+Growable store of timestamped IMU samples laid out as columns: one long[] of timestamps and one double[] per axis
+
+Filters read and write a whole axis through column() in place, so a pass over one axis is a loop over a single
+contiguous primitive array instead of a walk over one row object per sample. Columns may be longer than size();
+only the first size() entries hold samples.
+*/
+public class SampleStore implements SampleSink {
+
+    private final int axes;
+    private long[] timestamps;
+    private final double[][] columns;
+    private int size;
+
+    public SampleStore(int axes, int capacity) {
+        this.axes = axes;
+        capacity = Math.max(capacity, 1);
+        timestamps = new long[capacity];
+        columns = new double[axes][capacity];
+    }
+
+    public void add(long timestamp, double... values) {
+        accept(timestamp, values, 0);
+    }
+
+    @Override
+    public void accept(long timestamp, double[] values, int offset) {
+        if (size == timestamps.length) grow(size + 1);
+        timestamps[size] = timestamp;
+        for (int axis = 0; axis < axes; ++axis) columns[axis][size] = values[offset + axis];
+        ++size;
+    }
+
+    // Appends all samples of another store with the same axes, a column at a time
+    public void append(SampleStore other) {
+        append(other, 0, other.size);
+    }
+
+    public void append(SampleStore other, int from, int count) {
+        if (other.axes != axes) throw new IllegalArgumentException("Stores have different axes");
+        if (size + count > timestamps.length) grow(size + count);
+        System.arraycopy(other.timestamps, from, timestamps, size, count);
+        for (int axis = 0; axis < axes; ++axis) System.arraycopy(other.columns[axis], from, columns[axis], size, count);
+        size += count;
+    }
+
+    // Sets the number of samples, for decoders that fill the columns directly
+    void resize(int new_size) {
+        if (new_size > timestamps.length) grow(new_size);
+        size = new_size;
+    }
+
+    private void grow(int min_capacity) {
+        int capacity = Math.max(min_capacity, timestamps.length + (timestamps.length >> 1));
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        for (int axis = 0; axis < axes; ++axis) columns[axis] = Arrays.copyOf(columns[axis], capacity);
+    }
+
+    // Shrinks the columns to exactly size() entries, for code that takes a whole array as the series
+    public void trimToSize() {
+        if (size == timestamps.length) return;
+        timestamps = Arrays.copyOf(timestamps, size);
+        for (int axis = 0; axis < axes; ++axis) columns[axis] = Arrays.copyOf(columns[axis], size);
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getAxes() {
+        return axes;
+    }
+
+    public long[] timestamps() {
+        return timestamps;
+    }
+
+    public double[] column(int axis) {
+        return columns[axis];
+    }
+
+    public double get(int axis, int index) {
+        return columns[axis][index];
+    }
+
+    // Mean spacing of the timestamps in nanoseconds, or 0 with fewer than two samples
+    public double averageInterval() {
+        return size < 2 ? 0 : (double) (timestamps[size - 1] - timestamps[0]) / (size - 1);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,178 @@
+package com.nyu.imu_processing;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+Health metrics of a recording session, cheap enough to update from the sensor, camera and writer threads
+
+Scalar metrics (counters and gauges) live in one AtomicLongArray indexed by metric id, and the distributions that
+matter for spotting a bad device or storage card (the interval between consecutive samples of each sensor and the
+time the writer spends in one write) are Histograms allocated with the session. Nothing here takes a lock or
+allocates once constructed.
+
+writeSummary() appends the current values to the IMU data file as IMURecord.METRICS markers, one per metric: the
+value is the metric's value and the extra is the metric id, with the sensor id in the second byte for per-sensor
+metrics. In the text layout they read as
+    1578699793000 metric write_latency_p99_ns 183000
+    1578699793000 metric interval_p99_ns/1 5120
+Scalar metrics that were never updated in the session (frame counters of a video recording, say) are left out.
+*/
+public final class SessionMetrics {
+
+    public static final int BYTES_WRITTEN = 0;
+    public static final int RECORDS_DROPPED = 1;
+    public static final int RING_DEPTH = 2;
+    public static final int FRAMES_ACQUIRED = 3;
+    public static final int FRAMES_SAVED = 4;
+    public static final int FRAMES_DROPPED = 5;
+    public static final int FRAME_QUEUE_DEPTH = 6;
+    public static final int FRAME_LATENCY_P99 = 7;
+    public static final int FRAME_LATENCY_MAX = 8;
+    public static final int MEDIA_BYTES_WRITTEN = 9;
+    public static final int MEDIA_DURATION = 10;
+    // Taken from histograms when a summary is written
+    public static final int WRITE_LATENCY_P50 = 11;
+    public static final int WRITE_LATENCY_P99 = 12;
+    public static final int WRITE_LATENCY_MAX = 13;
+    public static final int INTERVAL_P50 = 14;
+    public static final int INTERVAL_P99 = 15;
+    public static final int INTERVAL_MAX = 16;
+    private static final int SCALAR_METRICS = WRITE_LATENCY_P50;
+    private static final String[] NAMES = {"bytes_written", "records_dropped", "ring_depth", "frames_acquired",
+            "frames_saved", "frames_dropped", "frame_queue_depth", "frame_latency_p99_ns", "frame_latency_max_ns",
+            "media_bytes_written", "media_duration_ns", "write_latency_p50_ns", "write_latency_p99_ns",
+            "write_latency_max_ns", "interval_p50_ns", "interval_p99_ns", "interval_max_ns"};
+
+    private final AtomicLongArray values = new AtomicLongArray(SCALAR_METRICS);
+    // Bit per scalar metric that has been updated at least once
+    private final AtomicInteger updated = new AtomicInteger();
+    private final Histogram write_latency = new Histogram();
+    private final byte[] sensor_ids;
+    private final Histogram[] intervals;
+    // Lane of each sensor id, -1 for sensors that are not tracked
+    private final int[] lanes = new int[256];
+    // Only touched by the thread delivering sensor samples
+    private final long[] last_timestamps;
+    private final ByteBuffer summary;
+
+    public SessionMetrics(byte... sensor_ids) {
+        this.sensor_ids = sensor_ids.clone();
+        intervals = new Histogram[sensor_ids.length];
+        last_timestamps = new long[sensor_ids.length];
+        Arrays.fill(lanes, -1);
+        for (int lane = 0; lane < sensor_ids.length; ++lane) {
+            if (IMURecord.isMarker(sensor_ids[lane])) throw new IllegalArgumentException("Marker ids are not sensors");
+            lanes[sensor_ids[lane] & 0xFF] = lane;
+            intervals[lane] = new Histogram();
+        }
+        summary = ByteBuffer.allocate((SCALAR_METRICS + 3 + 3 * sensor_ids.length) * IMURecord.SIZE);
+    }
+
+    public static int metricCount() {
+        return NAMES.length;
+    }
+
+    public static String name(int metric) {
+        return NAMES[metric];
+    }
+
+    public static boolean isPerSensor(int metric) {
+        return metric >= INTERVAL_P50;
+    }
+
+    // Metric id for a name written by writeSummary(), or -1
+    public static int find(String name) {
+        for (int metric = 0; metric < NAMES.length; ++metric) {
+            if (NAMES[metric].equals(name)) return metric;
+        }
+        return -1;
+    }
+
+    // Call from the sensor thread with every sample's timestamp
+    public void onSample(byte sensor_id, long timestamp) {
+        int lane = lanes[sensor_id & 0xFF];
+        if (lane < 0) return;
+        long last = last_timestamps[lane];
+        if (last != 0) intervals[lane].record(timestamp - last);
+        last_timestamps[lane] = timestamp;
+    }
+
+    public void add(int metric, long delta) {
+        values.addAndGet(metric, delta);
+        markUpdated(metric);
+    }
+
+    public void set(int metric, long value) {
+        values.set(metric, value);
+        markUpdated(metric);
+    }
+
+    private void markUpdated(int metric) {
+        int bit = 1 << metric;
+        if ((updated.get() & bit) == 0) updated.getAndAccumulate(bit, (current, added) -> current | added);
+    }
+
+    public long get(int metric) {
+        return values.get(metric);
+    }
+
+    public Histogram getWriteLatency() {
+        return write_latency;
+    }
+
+    public Histogram getInterval(byte sensor_id) {
+        int lane = lanes[sensor_id & 0xFF];
+        return lane < 0 ? null : intervals[lane];
+    }
+
+    // Appends the current metrics as marker records; call only from the thread that owns the output
+    public void writeSummary(long timestamp, OutputStream output) throws IOException {
+        int count = 0;
+        int updated_metrics = updated.get();
+        for (int metric = 0; metric < SCALAR_METRICS; ++metric) {
+            if ((updated_metrics & (1 << metric)) != 0) count = put(count, timestamp, metric, 0, values.get(metric));
+        }
+        if (write_latency.getCount() > 0) count = putHistogram(count, timestamp, WRITE_LATENCY_P50, 0, write_latency);
+        for (int lane = 0; lane < intervals.length; ++lane) {
+            if (intervals[lane].getCount() > 0) {
+                count = putHistogram(count, timestamp, INTERVAL_P50, sensor_ids[lane] & 0xFF, intervals[lane]);
+            }
+        }
+        output.write(summary.array(), 0, count * IMURecord.SIZE);
+    }
+
+    private int putHistogram(int count, long timestamp, int p50_metric, int subject, Histogram histogram) {
+        count = put(count, timestamp, p50_metric, subject, histogram.percentile(0.5));
+        count = put(count, timestamp, p50_metric + 1, subject, histogram.percentile(0.99));
+        return put(count, timestamp, p50_metric + 2, subject, histogram.getMax());
+    }
+
+    private int put(int count, long timestamp, int metric, int subject, long value) {
+        IMURecord.putMarker(summary, count * IMURecord.SIZE, timestamp, IMURecord.METRICS, value, subject << 8 | metric);
+        return count + 1;
+    }
+
+    // Human readable form of the same metrics, one per line, for logs and the on-screen overlay
+    public String summary() {
+        StringBuilder text = new StringBuilder();
+        int updated_metrics = updated.get();
+        for (int metric = 0; metric < SCALAR_METRICS; ++metric) {
+            if ((updated_metrics & (1 << metric)) != 0) text.append(NAMES[metric]).append(' ').append(values.get(metric)).append('\n');
+        }
+        if (write_latency.getCount() > 0) appendHistogram(text, "write_latency", write_latency);
+        for (int lane = 0; lane < intervals.length; ++lane) {
+            if (intervals[lane].getCount() > 0) appendHistogram(text, "interval/" + (sensor_ids[lane] & 0xFF), intervals[lane]);
+        }
+        return text.toString();
+    }
+
+    private static void appendHistogram(StringBuilder text, String name, Histogram histogram) {
+        text.append(name).append(" p50/p99/max (us) ").append(histogram.percentile(0.5) / 1000).append('/')
+                .append(histogram.percentile(0.99) / 1000).append('/').append(histogram.getMax() / 1000).append('\n');
+    }
+}
\ No newline at end of file
@@ -0,0 +1,268 @@
+package com.nyu.imu_processing;
+
+/*
+Strapdown inertial integration of gyroscope and acceleration samples into orientation, velocity and position
+
+Each step takes one gyroscope and one acceleration sample (body frame) taken at the same time, dt after the previous
+pair, as StreamResampler produces from the two streams. The orientation quaternion (body to world) is propagated
+from the angular rate, the acceleration is rotated into the world frame and then integrated twice:
+    TRAPEZOIDAL: the mean angular rate of the step is applied as one exact rotation, velocity and position use the
+                 trapezoidal rule
+    RK4:         the quaternion differential equation q' = q (0, w) / 2 and the velocity and position equations are
+                 integrated with classic Runge-Kutta, with rates and accelerations linear across the step
+The first sample after reset() only sets the starting point. TYPE_LINEAR_ACCELERATION already excludes gravity; for
+raw accelerometer samples setGravity() gives the world gravity to subtract.
+
+Drift is handled through FilterStage hooks, so the filters of this module plug in directly: the world acceleration
+can pass through a filter (for example a KalmanStage or a ButterworthStage high-pass removing the bias) before it is
+integrated, and the velocity through another one (the velocity high-pass of filterQuantity) before position is
+integrated from it. Each step pushes [qw, qx, qy, qz, vx, vy, vz, px, py, pz] to the output sink. Nothing is
+allocated per step.
+*/
+public class StrapdownIntegrator {
+
+    public enum Method { TRAPEZOIDAL, RK4 }
+
+    public static final int OUTPUT_CHANNELS = 10;
+
+    private final Method method;
+    // Orientation body to world as w, x, y, z
+    private final double[] orientation = new double[4];
+    private final double[] velocity = new double[3];
+    private final double[] position = new double[3];
+    private final double[] gravity = new double[3];
+    private boolean primed;
+    // Previous sample: body angular rate and body and world acceleration
+    private final double[] previous_rate = new double[3];
+    private final double[] previous_acceleration = new double[3];
+    private final double[] previous_world = new double[3];
+
+    // Scratch space reused by every step
+    private final double[] world_acceleration = new double[3];
+    private final double[] middle_world = new double[3];
+    private final double[] middle_rate = new double[3];
+    private final double[] middle_acceleration = new double[3];
+    private final double[] middle_orientation = new double[4];
+    private final double[] k1 = new double[4], k2 = new double[4], k3 = new double[4], k4 = new double[4];
+    private final double[] probe = new double[4];
+    private final double[] previous_velocity = new double[3];
+    private final double[] state = new double[OUTPUT_CHANNELS];
+
+    private FilterStage acceleration_filter;
+    private FilterStage velocity_filter;
+    private SampleSink output = (timestamp, values, offset) -> {};
+    private final SampleSink acceleration_capture = (timestamp, values, offset) ->
+            System.arraycopy(values, offset, world_acceleration, 0, 3);
+    private final SampleSink velocity_capture = (timestamp, values, offset) ->
+            System.arraycopy(values, offset, velocity, 0, 3);
+
+    public StrapdownIntegrator(Method method) {
+        this.method = method;
+        reset(1, 0, 0, 0);
+    }
+
+    // Starts again from the given orientation at rest at the origin
+    public void reset(double w, double x, double y, double z) {
+        double norm = Math.sqrt(w * w + x * x + y * y + z * z);
+        orientation[0] = w / norm;
+        orientation[1] = x / norm;
+        orientation[2] = y / norm;
+        orientation[3] = z / norm;
+        for (int axis = 0; axis < 3; ++axis) velocity[axis] = position[axis] = 0;
+        primed = false;
+    }
+
+    public void setGravity(double x, double y, double z) {
+        gravity[0] = x;
+        gravity[1] = y;
+        gravity[2] = z;
+    }
+
+    // Filter of the 3-channel world acceleration applied before it is integrated, or null
+    public void setAccelerationFilter(FilterStage filter) {
+        acceleration_filter = filter;
+        if (filter != null) filter.then(acceleration_capture);
+    }
+
+    // Filter of the 3-channel velocity applied before position is integrated from it, or null
+    public void setVelocityFilter(FilterStage filter) {
+        velocity_filter = filter;
+        if (filter != null) filter.then(velocity_capture);
+    }
+
+    public void setOutput(SampleSink output) {
+        this.output = output;
+    }
+
+    // Advances by one pair of samples: angular rate in rad/s and acceleration in m/s^2, both in the body frame
+    public void step(long timestamp, double dt, double[] gyroscope, int gyroscope_offset, double[] acceleration,
+                     int acceleration_offset) {
+        if (!primed) {
+            System.arraycopy(gyroscope, gyroscope_offset, previous_rate, 0, 3);
+            System.arraycopy(acceleration, acceleration_offset, previous_acceleration, 0, 3);
+            toWorld(orientation, previous_acceleration, 0, previous_world);
+            filterAcceleration(timestamp, previous_world);
+            primed = true;
+            publish(timestamp);
+            return;
+        }
+
+        System.arraycopy(velocity, 0, previous_velocity, 0, 3);
+        if (method == Method.TRAPEZOIDAL) {
+            for (int axis = 0; axis < 3; ++axis) {
+                middle_rate[axis] = 0.5 * (previous_rate[axis] + gyroscope[gyroscope_offset + axis]) * dt;
+            }
+            rotate(orientation, middle_rate);
+            toWorld(orientation, acceleration, acceleration_offset, world_acceleration);
+            filterAcceleration(timestamp, world_acceleration);
+            for (int axis = 0; axis < 3; ++axis) {
+                velocity[axis] += 0.5 * (previous_world[axis] + world_acceleration[axis]) * dt;
+            }
+            filterVelocity(timestamp);
+            for (int axis = 0; axis < 3; ++axis) {
+                position[axis] += 0.5 * (previous_velocity[axis] + velocity[axis]) * dt;
+            }
+        } else {
+            for (int axis = 0; axis < 3; ++axis) {
+                middle_rate[axis] = 0.5 * (previous_rate[axis] + gyroscope[gyroscope_offset + axis]);
+            }
+            // Classic RK4 on q' = q (0, w) / 2 with w linear across the step
+            derivative(orientation, previous_rate, 0, k1);
+            for (int index = 0; index < 4; ++index) probe[index] = orientation[index] + 0.5 * dt * k1[index];
+            derivative(probe, middle_rate, 0, k2);
+            for (int index = 0; index < 4; ++index) probe[index] = orientation[index] + 0.5 * dt * k2[index];
+            derivative(probe, middle_rate, 0, k3);
+            // The midpoint orientation for the acceleration, from the same stages
+            for (int index = 0; index < 4; ++index) middle_orientation[index] = probe[index];
+            normalize(middle_orientation);
+            for (int index = 0; index < 4; ++index) probe[index] = orientation[index] + dt * k3[index];
+            derivative(probe, gyroscope, gyroscope_offset, k4);
+            for (int index = 0; index < 4; ++index) {
+                orientation[index] += dt / 6 * (k1[index] + 2 * k2[index] + 2 * k3[index] + k4[index]);
+            }
+            normalize(orientation);
+
+            toWorld(orientation, acceleration, acceleration_offset, world_acceleration);
+            if (acceleration_filter == null) {
+                for (int axis = 0; axis < 3; ++axis) {
+                    middle_acceleration[axis] = 0.5 * (previous_acceleration[axis]
+                            + acceleration[acceleration_offset + axis]);
+                }
+                toWorld(middle_orientation, middle_acceleration, 0, middle_world);
+            } else {
+                // The filter only sees the sample times, so the midpoint is taken between its outputs
+                filterAcceleration(timestamp, world_acceleration);
+                for (int axis = 0; axis < 3; ++axis) {
+                    middle_world[axis] = 0.5 * (previous_world[axis] + world_acceleration[axis]);
+                }
+            }
+            // With a linear in time, RK4 on p' = v, v' = a reduces to Simpson's rule for v
+            for (int axis = 0; axis < 3; ++axis) {
+                velocity[axis] += dt / 6 * (previous_world[axis] + 4 * middle_world[axis] + world_acceleration[axis]);
+            }
+            filterVelocity(timestamp);
+            for (int axis = 0; axis < 3; ++axis) {
+                if (velocity_filter == null) {
+                    position[axis] += dt * previous_velocity[axis]
+                            + dt * dt / 6 * (previous_world[axis] + 2 * middle_world[axis]);
+                } else {
+                    // Filtered velocities no longer follow the acceleration exactly, so integrate them directly
+                    position[axis] += 0.5 * (previous_velocity[axis] + velocity[axis]) * dt;
+                }
+            }
+        }
+
+        System.arraycopy(gyroscope, gyroscope_offset, previous_rate, 0, 3);
+        System.arraycopy(acceleration, acceleration_offset, previous_acceleration, 0, 3);
+        System.arraycopy(world_acceleration, 0, previous_world, 0, 3);
+        publish(timestamp);
+    }
+
+    /*
+    Integrates a whole recording where both stores hold samples on the same time grid (one gyroscope and one
+    acceleration sample per timestamp), pushing every step to the output sink
+    */
+    public void integrate(SampleStore gyroscope, SampleStore acceleration) {
+        int count = Math.min(gyroscope.size(), acceleration.size());
+        long[] timestamps = gyroscope.timestamps();
+        double[] rate = new double[3], specific = new double[3];
+        for (int index = 0; index < count; ++index) {
+            for (int axis = 0; axis < 3; ++axis) {
+                rate[axis] = gyroscope.get(axis, index);
+                specific[axis] = acceleration.get(axis, index);
+            }
+            double dt = index == 0 ? 0 : (timestamps[index] - timestamps[index - 1]) * 1e-9;
+            step(timestamps[index], dt, rate, 0, specific, 0);
+        }
+        output.finish();
+    }
+
+    // Replaces the world acceleration with the filter's output for it
+    private void filterAcceleration(long timestamp, double[] world) {
+        if (acceleration_filter == null) return;
+        acceleration_filter.accept(timestamp, world, 0);
+        if (world != world_acceleration) System.arraycopy(world_acceleration, 0, world, 0, 3);
+    }
+
+    private void filterVelocity(long timestamp) {
+        if (velocity_filter != null) velocity_filter.accept(timestamp, velocity, 0);
+    }
+
+    private void publish(long timestamp) {
+        System.arraycopy(orientation, 0, state, 0, 4);
+        System.arraycopy(velocity, 0, state, 4, 3);
+        System.arraycopy(position, 0, state, 7, 3);
+        output.accept(timestamp, state, 0);
+    }
+
+    // out = 0.5 q (0, w)
+    private static void derivative(double[] q, double[] rate, int offset, double[] out) {
+        double wx = rate[offset], wy = rate[offset + 1], wz = rate[offset + 2];
+        out[0] = 0.5 * (-q[1] * wx - q[2] * wy - q[3] * wz);
+        out[1] = 0.5 * (q[0] * wx + q[2] * wz - q[3] * wy);
+        out[2] = 0.5 * (q[0] * wy - q[1] * wz + q[3] * wx);
+        out[3] = 0.5 * (q[0] * wz + q[1] * wy - q[2] * wx);
+    }
+
+    // q = q exp(theta / 2) for the rotation vector theta (body frame)
+    private static void rotate(double[] q, double[] theta) {
+        double angle = Math.sqrt(theta[0] * theta[0] + theta[1] * theta[1] + theta[2] * theta[2]);
+        double half = 0.5 * angle;
+        double real = Math.cos(half);
+        // sin(half) / angle, by its series for tiny angles
+        double scale = angle < 1e-6 ? 0.5 - angle * angle / 48 : Math.sin(half) / angle;
+        double x = theta[0] * scale, y = theta[1] * scale, z = theta[2] * scale;
+        double w0 = q[0], x0 = q[1], y0 = q[2], z0 = q[3];
+        q[0] = w0 * real - x0 * x - y0 * y - z0 * z;
+        q[1] = w0 * x + x0 * real + y0 * z - z0 * y;
+        q[2] = w0 * y - x0 * z + y0 * real + z0 * x;
+        q[3] = w0 * z + x0 * y - y0 * x + z0 * real;
+        normalize(q);
+    }
+
+    private static void normalize(double[] q) {
+        double norm = Math.sqrt(q[0] * q[0] + q[1] * q[1] + q[2] * q[2] + q[3] * q[3]);
+        for (int index = 0; index < 4; ++index) q[index] /= norm;
+    }
+
+    // out = q v q* - gravity
+    private void toWorld(double[] q, double[] v, int offset, double[] out) {
+        double x = v[offset], y = v[offset + 1], z = v[offset + 2];
+        double tx = 2 * (q[2] * z - q[3] * y), ty = 2 * (q[3] * x - q[1] * z), tz = 2 * (q[1] * y - q[2] * x);
+        out[0] = x + q[0] * tx + q[2] * tz - q[3] * ty - gravity[0];
+        out[1] = y + q[0] * ty + q[3] * tx - q[1] * tz - gravity[1];
+        out[2] = z + q[0] * tz + q[1] * ty - q[2] * tx - gravity[2];
+    }
+
+    public double[] getOrientation() {
+        return orientation;
+    }
+
+    public double[] getVelocity() {
+        return velocity;
+    }
+
+    public double[] getPosition() {
+        return position;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,258 @@
+package com.nyu.imu_processing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Merges several sensor streams, each arriving in its own time order and at its own jittery rate, into one stream of
+samples at common target times: a uniform grid, or the timestamps of camera frames passed to addTarget()
+
+Each lane interpolates between the two of its samples around a target time, linearly or, for lanes holding a unit
+quaternion (w, x, y, z), by slerp. A target is emitted as soon as every lane has a sample at or after it, so the
+resampler runs incrementally on unbounded input. Targets before the start of any lane are skipped; a grid starts at
+the latest first sample among the lanes. Every lane keeps at most look_ahead samples; when one lane runs that far
+ahead of another its oldest samples are dropped and counted, which bounds memory whatever the input does. The output
+sample holds the channels of all lanes in the order they were added.
+*/
+public class StreamResampler {
+
+    public enum Interpolation { LINEAR, SLERP }
+
+    private static final class Lane {
+        private final int channels;
+        private final Interpolation interpolation;
+        private final int capacity;
+        private final long[] timestamps;
+        private final double[] values;
+        private int head, count;
+        private boolean finished;
+
+        private Lane(int channels, Interpolation interpolation, int capacity) {
+            this.channels = channels;
+            this.interpolation = interpolation;
+            this.capacity = capacity;
+            timestamps = new long[capacity];
+            values = new double[capacity * channels];
+        }
+
+        private int slot(int index) {
+            return (head + index) % capacity;
+        }
+
+        private long timestamp(int index) {
+            return timestamps[slot(index)];
+        }
+
+        private void push(long timestamp, double[] sample, int offset) {
+            int slot = slot(count++);
+            timestamps[slot] = timestamp;
+            System.arraycopy(sample, offset, values, slot * channels, channels);
+        }
+
+        private void pop() {
+            head = (head + 1) % capacity;
+            --count;
+        }
+    }
+
+    private final long period_nanos;
+    private final int look_ahead;
+    private final List<Lane> lanes = new ArrayList<>();
+    private int output_channels;
+    private double[] output = new double[0];
+    private SampleSink downstream = (timestamp, values, offset) -> {};
+    // Uniform grid: the next grid time once the grid has started
+    private boolean started;
+    private long next_target;
+    // Camera frames: pending target times
+    private final long[] targets;
+    private int target_head, target_count;
+    private long dropped_samples, dropped_targets;
+
+    // Resamples onto a uniform grid with the given spacing
+    public StreamResampler(long period_nanos, int look_ahead) {
+        if (period_nanos <= 0) throw new IllegalArgumentException("Grid period must be positive");
+        this.period_nanos = period_nanos;
+        this.look_ahead = look_ahead;
+        targets = new long[0];
+    }
+
+    // Resamples at the times passed to addTarget()
+    public StreamResampler(int look_ahead) {
+        period_nanos = 0;
+        this.look_ahead = look_ahead;
+        targets = new long[look_ahead];
+    }
+
+    // Returns the lane number, which lane() takes
+    public int addLane(int channels, Interpolation interpolation) {
+        if (interpolation == Interpolation.SLERP && channels != 4) {
+            throw new IllegalArgumentException("Slerp lanes hold quaternions of 4 channels");
+        }
+        lanes.add(new Lane(channels, interpolation, look_ahead));
+        output_channels += channels;
+        output = new double[output_channels];
+        return lanes.size() - 1;
+    }
+
+    // Input of one lane; its samples must arrive in time order
+    public SampleSink lane(int lane) {
+        Lane input = lanes.get(lane);
+        return new SampleSink() {
+            @Override
+            public void accept(long timestamp, double[] values, int offset) {
+                if (input.count == input.capacity) makeRoom(input);
+                input.push(timestamp, values, offset);
+                drain();
+            }
+
+            @Override
+            public void finish() {
+                input.finished = true;
+                drain();
+                for (Lane other : lanes) {
+                    if (!other.finished) return;
+                }
+                downstream.finish();
+            }
+        };
+    }
+
+    public void addTarget(long timestamp) {
+        if (period_nanos != 0) throw new IllegalStateException("Resampling onto a uniform grid");
+        if (target_count == targets.length) {
+            target_head = (target_head + 1) % targets.length;
+            --target_count;
+            ++dropped_targets;
+        }
+        targets[(target_head + target_count++) % targets.length] = timestamp;
+        drain();
+    }
+
+    public <T extends SampleSink> T then(T next) {
+        downstream = next;
+        return next;
+    }
+
+    private void makeRoom(Lane lane) {
+        // Samples before the one at or just before the next target are no longer needed
+        if (hasTarget()) {
+            long target = target();
+            while (lane.count >= 2 && lane.timestamp(1) <= target) lane.pop();
+        }
+        if (lane.count == lane.capacity) {
+            lane.pop();
+            ++dropped_samples;
+        }
+    }
+
+    private boolean hasTarget() {
+        if (period_nanos == 0) return target_count > 0;
+        if (!started) {
+            long start = Long.MIN_VALUE;
+            for (Lane lane : lanes) {
+                if (lane.count == 0) return false;
+                start = Math.max(start, lane.timestamp(0));
+            }
+            next_target = start;
+            started = true;
+        }
+        return true;
+    }
+
+    private long target() {
+        return period_nanos == 0 ? targets[target_head] : next_target;
+    }
+
+    private void advanceTarget() {
+        if (period_nanos == 0) {
+            target_head = (target_head + 1) % targets.length;
+            --target_count;
+        } else {
+            next_target += period_nanos;
+        }
+    }
+
+    private void drain() {
+        next:
+        while (hasTarget()) {
+            long target = target();
+            for (Lane lane : lanes) {
+                while (lane.count >= 2 && lane.timestamp(1) <= target) lane.pop();
+                if (lane.count == 0) return;
+                if (lane.timestamp(0) > target) {
+                    // The target lies before anything this lane has, so it can never be interpolated
+                    advanceTarget();
+                    continue next;
+                }
+                // Waiting for the sample after the target, which a finished lane will never deliver
+                if (lane.timestamp(0) < target && lane.count < 2) return;
+            }
+            emit(target);
+            advanceTarget();
+        }
+    }
+
+    private void emit(long target) {
+        int channel = 0;
+        for (Lane lane : lanes) {
+            int before = lane.slot(0) * lane.channels;
+            if (lane.timestamp(0) == target) {
+                System.arraycopy(lane.values, before, output, channel, lane.channels);
+            } else {
+                int after = lane.slot(1) * lane.channels;
+                long start = lane.timestamp(0);
+                double fraction = (double) (target - start) / (lane.timestamp(1) - start);
+                if (lane.interpolation == Interpolation.SLERP) {
+                    slerp(lane.values, before, after, fraction, output, channel);
+                } else {
+                    for (int index = 0; index < lane.channels; ++index) {
+                        double from = lane.values[before + index];
+                        output[channel + index] = from + (lane.values[after + index] - from) * fraction;
+                    }
+                }
+            }
+            channel += lane.channels;
+        }
+        downstream.accept(target, output, 0);
+    }
+
+    private static void slerp(double[] values, int from, int to, double fraction, double[] out, int offset) {
+        double dot = 0;
+        for (int index = 0; index < 4; ++index) dot += values[from + index] * values[to + index];
+        // q and -q are the same rotation, take the shorter way round
+        double sign = dot < 0 ? -1 : 1;
+        dot = Math.abs(dot);
+        double from_weight, to_weight;
+        if (dot > 0.9995) {
+            // Nearly equal: interpolate linearly and normalise
+            from_weight = 1 - fraction;
+            to_weight = fraction;
+        } else {
+            double angle = Math.acos(dot), sin = Math.sin(angle);
+            from_weight = Math.sin((1 - fraction) * angle) / sin;
+            to_weight = Math.sin(fraction * angle) / sin;
+        }
+        double norm = 0;
+        for (int index = 0; index < 4; ++index) {
+            out[offset + index] = from_weight * values[from + index] + sign * to_weight * values[to + index];
+            norm += out[offset + index] * out[offset + index];
+        }
+        norm = Math.sqrt(norm);
+        for (int index = 0; index < 4; ++index) out[offset + index] /= norm;
+    }
+
+    public int getOutputChannels() {
+        return output_channels;
+    }
+
+    // Samples dropped because their lane ran more than look_ahead samples ahead
+    public long getDroppedSamples() {
+        return dropped_samples;
+    }
+
+    // Camera targets dropped because more than look_ahead were pending
+    public long getDroppedTargets() {
+        return dropped_targets;
+    }
+}
\ No newline at end of file
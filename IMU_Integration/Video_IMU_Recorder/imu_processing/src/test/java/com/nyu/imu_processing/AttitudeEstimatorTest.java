@@ -0,0 +1,84 @@
+package com.nyu.imu_processing;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AttitudeEstimatorTest {
+
+    private static final long STEP = 5_000_000L;
+    private static final float G = 9.80665f;
+
+    // Feeds seconds of 200 Hz samples of a constant rate and acceleration, returns the next timestamp
+    private static long feed(AttitudeEstimator estimator, long start, double seconds, float[] rate, float[] acceleration) {
+        long end = start + (long) (seconds * 1e9);
+        long timestamp = start;
+        for (; timestamp < end; timestamp += STEP) {
+            estimator.updateAccelerometer(timestamp, acceleration[0], acceleration[1], acceleration[2]);
+            estimator.updateGyroscope(timestamp + STEP / 2, rate[0], rate[1], rate[2]);
+        }
+        return timestamp;
+    }
+
+    private static double[] angles(AttitudeEstimator estimator) {
+        double[] quaternion = new double[4], angles = new double[3];
+        assertTrue(estimator.getSnapshot().read(quaternion) > 0);
+        AttitudeEstimator.toEulerAngles(quaternion, angles);
+        return angles;
+    }
+
+    @Test
+    public void update_levelsWithGravityAndIntegratesYaw() {
+        AttitudeEstimator estimator = new AttitudeEstimator();
+        double roll = Math.toRadians(30);
+        float[] tilted = {0, (float) (G * Math.sin(roll)), (float) (G * Math.cos(roll))};
+        long timestamp = feed(estimator, 1, 2, new float[3], tilted);
+        assertEquals(roll, angles(estimator)[0], 1e-3);
+        assertEquals(0, angles(estimator)[1], 1e-3);
+
+        // Turning about the vertical at 0.5 rad/s while level
+        estimator.reset();
+        feed(estimator, timestamp, 1, new float[] {0, 0, 0.5f}, new float[] {0, 0, G});
+        double[] level = angles(estimator);
+        assertEquals(0.5, level[2], 0.01);
+        assertEquals(0, level[0], 1e-3);
+    }
+
+    @Test
+    public void update_learnsGyroscopeBias() {
+        AttitudeEstimator estimator = new AttitudeEstimator(0.5, 0.1);
+        float[] bias = {0.02f, -0.01f, 0};
+        feed(estimator, 1, 120, bias, new float[] {0, 0, G});
+        double[] angles = angles(estimator);
+        // Without the integral term the tilt would settle at bias / proportional gain, over two degrees
+        assertEquals(0, angles[0], Math.toRadians(0.2));
+        assertEquals(0, angles[1], Math.toRadians(0.2));
+    }
+
+    @Test
+    public void update_ignoresAccelerationAwayFromGravity() {
+        AttitudeEstimator estimator = new AttitudeEstimator();
+        long timestamp = feed(estimator, 1, 1, new float[3], new float[] {0, 0, G});
+        // A hard sideways push is motion, not a tilt
+        feed(estimator, timestamp, 1, new float[3], new float[] {15, 0, G});
+        assertEquals(0, angles(estimator)[1], 1e-6);
+    }
+
+    @Test
+    public void snapshot_readersNeverSeeTornUpdates() throws Exception {
+        AttitudeSnapshot snapshot = new AttitudeSnapshot();
+        Thread writer = new Thread(() -> {
+            for (long index = 1; index <= 200_000; ++index) snapshot.publish(index, index, index, index, index);
+        });
+        writer.start();
+        double[] quaternion = new double[4];
+        long last = 0;
+        while (writer.isAlive() || last < 200_000) {
+            long timestamp = snapshot.read(quaternion);
+            for (double value : quaternion) assertEquals(timestamp, value, 0);
+            assertTrue(timestamp >= last);
+            last = timestamp;
+        }
+        writer.join();
+    }
+}
\ No newline at end of file
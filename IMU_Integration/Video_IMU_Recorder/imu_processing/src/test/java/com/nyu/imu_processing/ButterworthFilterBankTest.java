@@ -0,0 +1,83 @@
+package com.nyu.imu_processing;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ButterworthFilterBankTest {
+
+    private static double[] sine(int count, double frequency_hz, double sample_rate_hz) {
+        double[] values = new double[count];
+        for (int index = 0; index < count; ++index) {
+            values[index] = Math.sin(2 * Math.PI * frequency_hz * index / sample_rate_hz);
+        }
+        return values;
+    }
+
+    @Test
+    public void zeroPhase_hasNoLag() {
+        double[] input = sine(4000, 1, 200);
+        double[] zero_phase = input.clone(), causal = input.clone();
+        ButterworthFilterBank.lowPass(4, 10, 200).filter(zero_phase, zero_phase.length);
+        new ButterworthFilterBank(BiquadCascade.lowPass(4, 10, 200), false, ForkJoinPool.commonPool(),
+                ButterworthFilterBank.DEFAULT_SEGMENT_LENGTH).filter(causal, causal.length);
+
+        double zero_phase_error = 0, causal_error = 0;
+        for (int index = 0; index < input.length; ++index) {
+            zero_phase_error = Math.max(zero_phase_error, Math.abs(zero_phase[index] - input[index]));
+            causal_error = Math.max(causal_error, Math.abs(causal[index] - input[index]));
+        }
+        assertTrue(zero_phase_error < 1e-3);
+        assertTrue(causal_error > 0.05);
+    }
+
+    @Test
+    public void highPass_removesOffsetWithoutEdgeTransients() {
+        double[] input = new double[1000];
+        Arrays.fill(input, 9.81);
+        ButterworthFilterBank.highPass(2, 0.5, 200).filter(input, input.length);
+        for (double value : input) assertEquals(0, value, 1e-9);
+    }
+
+    @Test
+    public void bandPass_keepsOnlyTheBand() {
+        double[] low = sine(4000, 0.2, 200), middle = sine(4000, 5, 200), high = sine(4000, 80, 200);
+        ButterworthFilterBank band_pass = ButterworthFilterBank.bandPass(3, 2, 15, 200);
+        band_pass.filter(new double[][] {low, middle, high}, 4000);
+        for (int index = 500; index < 3500; ++index) {
+            assertEquals(0, low[index], 0.01);
+            assertEquals(Math.sin(2 * Math.PI * 5 * index / 200.0), middle[index], 0.02);
+            assertEquals(0, high[index], 0.01);
+        }
+    }
+
+    @Test
+    public void segments_matchWholeColumn() {
+        SampleStore store = new SampleStore(3, 50000);
+        Random random = new Random(7);
+        for (int index = 0; index < 50000; ++index) {
+            store.add(5_000_000L * index, random.nextGaussian(), 0.001 * index + random.nextGaussian(), index % 17);
+        }
+        double[][] expected = new double[3][];
+        for (int axis = 0; axis < 3; ++axis) {
+            expected[axis] = Arrays.copyOf(store.column(axis), store.size());
+            ButterworthFilterBank.highPass(2, 5, 200).filter(expected[axis], store.size());
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            new ButterworthFilterBank(BiquadCascade.highPass(2, 5, 200), true, pool, 4096).filter(store);
+        } finally {
+            pool.shutdown();
+        }
+        for (int axis = 0; axis < 3; ++axis) {
+            for (int index = 0; index < store.size(); ++index) {
+                assertEquals(expected[axis][index], store.get(axis, index), 1e-6);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,76 @@
+package com.nyu.imu_processing;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FilterStageTest {
+
+    private static double[] sine(int count, double frequency_hz, double sample_rate_hz, double offset) {
+        double[] values = new double[count];
+        for (int index = 0; index < count; ++index) {
+            values[index] = offset + Math.sin(2 * Math.PI * frequency_hz * index / sample_rate_hz);
+        }
+        return values;
+    }
+
+    private static double maxAbs(double[] values, int from) {
+        double max = 0;
+        for (int index = from; index < values.length; ++index) max = Math.max(max, Math.abs(values[index]));
+        return max;
+    }
+
+    @Test
+    public void butterworth_passesAndStopsTheRightBands() {
+        double[] slow = sine(2000, 1, 200, 0);
+        double[] fast = sine(2000, 60, 200, 0);
+        for (int order = 1; order <= 4; ++order) {
+            double[] low = new double[2000], high = new double[2000];
+            ButterworthStage low_pass = ButterworthStage.lowPass(1, order, 10, 200);
+            low_pass.then(new ArraySink(low, 1));
+            low_pass.acceptBlock(null, fast, 1, fast.length);
+            assertTrue(maxAbs(low, 1000) < 0.4);
+
+            ButterworthStage high_pass = ButterworthStage.highPass(1, order, 10, 200);
+            high_pass.then(new ArraySink(high, 1));
+            high_pass.acceptBlock(null, slow, 1, slow.length);
+            assertTrue(maxAbs(high, 1000) < 0.2);
+        }
+
+        // DC passes a low-pass unchanged and is removed by a high-pass, in every channel
+        double[] constant = new double[2 * 1000];
+        Arrays.fill(constant, 3.0);
+        double[] low = new double[constant.length], high = new double[constant.length];
+        ButterworthStage low_pass = ButterworthStage.lowPass(2, 3, 5, 200);
+        low_pass.then(new ArraySink(low, 2));
+        low_pass.acceptBlock(null, constant, 2, 1000);
+        assertEquals(3.0, low[constant.length - 1], 1e-9);
+        ButterworthStage high_pass = ButterworthStage.highPass(2, 3, 5, 200);
+        high_pass.then(new ArraySink(high, 2));
+        high_pass.acceptBlock(null, constant, 2, 1000);
+        assertEquals(0.0, high[constant.length - 2], 1e-9);
+    }
+
+    @Test
+    public void chain_matchesStagesAppliedOneAfterAnother() {
+        double[] input = sine(500, 3, 100, 1);
+        double[] chained = new double[input.length];
+        KalmanStage kalman = new KalmanStage(new KalmanFilter(0.0, 1.0, 0.01, 0.1));
+        ArraySink output = kalman.then(ButterworthStage.highPass(1, 2, 1, 100)).then(new ArraySink(chained, 1));
+        // Push in uneven blocks, as a live recording would
+        for (int from = 0; from < input.length; from += 7) {
+            int count = Math.min(7, input.length - from);
+            for (int index = 0; index < count; ++index) kalman.accept(from + index, input, from + index);
+        }
+        kalman.finish();
+        assertEquals(input.length, output.getCount());
+
+        double[] smoothed = new double[input.length], expected = new double[input.length];
+        new KalmanFilter(0.0, 1.0, 0.01, 0.1).filter(null, input, smoothed, input.length);
+        ButterworthStage high_pass = ButterworthStage.highPass(1, 2, 1, 100);
+        for (int index = 0; index < input.length; ++index) expected[index] = high_pass.process(0, smoothed[index]);
+        assertArrayEquals(expected, chained, 1e-12);
+    }
+}
\ No newline at end of file
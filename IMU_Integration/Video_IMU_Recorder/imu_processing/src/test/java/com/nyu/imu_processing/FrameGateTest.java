@@ -0,0 +1,114 @@
+package com.nyu.imu_processing;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class FrameGateTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Fills the history at 200 Hz from start to end (ms) with a constant magnitude along x
+    private static void fill(MotionHistory history, long start, long end, float magnitude) {
+        for (long time = start; time < end; time += 5) history.add(time * MS, magnitude, 0, 0);
+    }
+
+    @Test
+    public void motionHistory_integratesAndPeaksOverCoveredIntervals() {
+        MotionHistory history = new MotionHistory(1 << 8);
+        fill(history, 5, 500, 1);
+        fill(history, 500, 600, 4);
+        assertEquals(0.1, history.integral(100 * MS, 200 * MS), 1e-9);
+        // The sample at 500 ms holds over the 5 ms leading up to it
+        assertEquals(0.045 + 0.22, history.integral(450 * MS, 550 * MS), 1e-9);
+        assertEquals(4, history.peak(490 * MS, 520 * MS), 0);
+        assertEquals(1, history.peak(200 * MS, 210 * MS), 0);
+        // Samples that have not arrived yet and samples that were overwritten
+        assertTrue(Double.isNaN(history.integral(500 * MS, 700 * MS)));
+        fill(history, 600, 2000, 1);
+        assertTrue(Double.isNaN(history.peak(100 * MS, 110 * MS)));
+        assertEquals(1995 * MS, history.getLatest());
+    }
+
+    @Test
+    public void decide_skipsStillAndBlurredFrames() {
+        MotionHistory rotation = new MotionHistory(1 << 10), acceleration = new MotionHistory(1 << 10);
+        FrameGate gate = new FrameGate(rotation, acceleration, 0.05, 0.2, 2, 1000 * MS);
+        // Still for a second, then turning at 0.5 rad/s, then a fast 10 rad/s swing
+        fill(rotation, 5, 1000, 0.001f);
+        fill(acceleration, 5, 1000, 0.01f);
+        fill(rotation, 1000, 2000, 0.5f);
+        fill(acceleration, 1000, 2000, 0.01f);
+        fill(rotation, 2000, 2200, 10);
+        fill(acceleration, 2000, 2200, 0.01f);
+        long exposure = 10 * MS;
+        double focal_length = 1000;
+
+        assertEquals(FrameGate.KEPT, gate.decide(100 * MS, exposure, focal_length));
+        assertEquals(FrameGate.STILL, gate.decide(200 * MS, exposure, focal_length));
+        assertEquals(FrameGate.STILL, gate.decide(900 * MS, exposure, focal_length));
+        // 0.5 rad/s for 10 ms at 1000 px is 5 px of blur
+        assertEquals(FrameGate.BLURRED, gate.decide(1100 * MS, exposure, focal_length));
+        assertEquals(5, gate.getBlur(), 1e-9);
+        assertEquals(FrameGate.KEPT, gate.decide(1100 * MS, 2 * MS, focal_length));
+        assertEquals(FrameGate.STILL, gate.decide(1150 * MS, 2 * MS, focal_length));
+        assertEquals(FrameGate.KEPT, gate.decide(1300 * MS, 2 * MS, focal_length));
+        assertEquals(FrameGate.BLURRED, gate.decide(2050 * MS, 2 * MS, focal_length));
+        // Exposure past the newest sample: blur unknown, the frame is kept
+        assertEquals(FrameGate.KEPT, gate.decide(2195 * MS, 20 * MS, focal_length));
+        assertTrue(Double.isNaN(gate.getBlur()));
+        assertEquals(4, gate.getKept());
+        assertEquals(3, gate.getStill());
+        assertEquals(2, gate.getBlurred());
+    }
+
+    @Test
+    public void decide_keepsAFrameAfterTheLongestGap() {
+        MotionHistory rotation = new MotionHistory(1 << 10);
+        FrameGate gate = new FrameGate(rotation, null, 0.05, 0.2, 2, 500 * MS);
+        fill(rotation, 5, 2000, 0);
+        assertEquals(FrameGate.KEPT, gate.decide(100 * MS, MS, 1000));
+        assertEquals(FrameGate.STILL, gate.decide(550 * MS, MS, 1000));
+        assertEquals(FrameGate.KEPT, gate.decide(600 * MS, MS, 1000));
+    }
+
+    @Test
+    public void frameGateMarkers_surviveTextRoundTrip() throws IOException {
+        ByteArrayOutputStream binary_output = new ByteArrayOutputStream();
+        binary_output.write(IMURecord.encodeHeader(new byte[0], new String[0]));
+        ByteBuffer record = ByteBuffer.allocate(IMURecord.SIZE);
+        IMURecord.putMarker(record, 0, 100, IMURecord.FRAME_GATE, 7, FrameGate.encode(FrameGate.BLURRED, 3.44));
+        binary_output.write(record.array());
+        IMURecord.putMarker(record, 0, 200, IMURecord.FRAME_GATE, 8, FrameGate.encode(FrameGate.KEPT, Double.NaN));
+        binary_output.write(record.array());
+
+        File text = folder.newFile("imu.txt");
+        try (Writer text_output = new OutputStreamWriter(Files.newOutputStream(text.toPath()), StandardCharsets.UTF_8)) {
+            IMURecord.exportText(new ByteArrayInputStream(binary_output.toByteArray()), text_output);
+        }
+        assertEquals("100 frame gate 7 blurred, blur 3.4 px\n200 frame gate 8 kept, blur unknown\n",
+                new String(Files.readAllBytes(text.toPath()), StandardCharsets.UTF_8));
+
+        IMUTextLog parsed = IMUTextLogParser.parse(text);
+        assertEquals(2, parsed.getEventCount());
+        assertEquals(IMURecord.FRAME_GATE, parsed.getEventType(0));
+        assertEquals(7, parsed.getEventValue(0));
+        assertEquals(FrameGate.encode(FrameGate.BLURRED, 3.4), parsed.getEventExtra(0));
+        assertEquals(FrameGate.encode(FrameGate.KEPT, Double.NaN), parsed.getEventExtra(1));
+    }
+}
\ No newline at end of file
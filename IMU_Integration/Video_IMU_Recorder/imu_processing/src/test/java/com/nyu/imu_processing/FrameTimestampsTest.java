@@ -0,0 +1,71 @@
+package com.nyu.imu_processing;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class FrameTimestampsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File writeFrames(int count) throws IOException {
+        File sidecar = folder.newFile("video.mp4" + FrameTimestamps.FILE_SUFFIX);
+        try (FrameTimestamps.Writer writer = new FrameTimestamps.Writer(new FileOutputStream(sidecar))) {
+            for (int frame = 0; frame < count; ++frame) {
+                writer.write(100 + 2 * frame, 1000000000L + 33333333L * frame, 8000000);
+            }
+            assertEquals(count, writer.getCount());
+        }
+        return sidecar;
+    }
+
+    @Test
+    public void read_returnsEntriesInOrder() throws IOException {
+        File sidecar = writeFrames(300);
+        assertEquals(FrameTimestamps.HEADER_SIZE + 300 * FrameTimestamps.ENTRY_SIZE, sidecar.length());
+        FrameTimestamps frames = FrameTimestamps.read(sidecar);
+        assertEquals(300, frames.size());
+        assertEquals(100 + 2 * 299, frames.getFrameNumber(299));
+        assertEquals(1000000000L + 33333333L * 150, frames.getTimestamp(150));
+        assertEquals(8000000, frames.getExposureTime(0));
+    }
+
+    @Test
+    public void nearestFrame_picksClosestTimestamp() throws IOException {
+        FrameTimestamps frames = FrameTimestamps.read(writeFrames(10));
+        assertEquals(0, frames.nearestFrame(0));
+        assertEquals(9, frames.nearestFrame(Long.MAX_VALUE));
+        assertEquals(4, frames.nearestFrame(1000000000L + 33333333L * 4));
+        assertEquals(4, frames.nearestFrame(1000000000L + 33333333L * 4 + 16000000));
+        assertEquals(5, frames.nearestFrame(1000000000L + 33333333L * 4 + 17000000));
+    }
+
+    @Test
+    public void read_ignoresPreallocatedSpaceAndPartialEntry() throws IOException {
+        File sidecar = writeFrames(5);
+        try (RandomAccessFile file = new RandomAccessFile(sidecar, "rw")) {
+            // A partial entry, then the zeros a mapped writer leaves behind when it is not closed
+            file.seek(file.length());
+            file.writeLong(7);
+            file.setLength(file.length() + 4 * FrameTimestamps.ENTRY_SIZE);
+        }
+        assertEquals(5, FrameTimestamps.read(sidecar).size());
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsOtherFiles() throws IOException {
+        File other = folder.newFile("other.bin");
+        try (FileOutputStream output = new FileOutputStream(other)) {
+            output.write(new byte[] {1, 2, 3, 4, 5, 6});
+        }
+        FrameTimestamps.read(other);
+    }
+}
\ No newline at end of file
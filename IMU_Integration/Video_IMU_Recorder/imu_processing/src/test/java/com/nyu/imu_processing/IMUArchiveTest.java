@@ -0,0 +1,182 @@
+package com.nyu.imu_processing;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IMUArchiveTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final int SAMPLES = 10000;
+
+    private static double[][] recording(long seed) {
+        Random random = new Random(seed);
+        double[][] values = new double[SAMPLES][3];
+        for (int index = 0; index < SAMPLES; ++index) {
+            for (int axis = 0; axis < 3; ++axis) values[index][axis] = (float) (axis * 4.9 + 0.05 * random.nextGaussian());
+        }
+        return values;
+    }
+
+    private static long timestamp(int index) {
+        return 1_000_000_000L + 5_000_000L * index + index % 7 * 1000;
+    }
+
+    @Test
+    public void roundTrip_keepsFloatsExactAndQuantizedWithinHalfAQuantum() throws IOException {
+        double[][] values = recording(1);
+        values[1234][1] = Double.NaN;
+        File archive = folder.newFile("session.imua");
+        try (IMUArchiveWriter writer = new IMUArchiveWriter(archive)) {
+            int exact = writer.addSensor("Gyroscope", 3, 0);
+            int quantized = writer.addSensor("Linear Acceleration", 3, 1e-4);
+            for (int index = 0; index < SAMPLES; ++index) {
+                writer.addSample(exact, timestamp(index), values[index], 0);
+                writer.addSample(quantized, timestamp(index) + 1, values[index], 0);
+            }
+            writer.addEvent(timestamp(10), IMURecord.VIDEO_START, -85, 0);
+            writer.addEvent(timestamp(20), IMURecord.SENSOR_CLOCK_SYNC, 1200, -35);
+        }
+
+        try (IMUArchiveReader reader = new IMUArchiveReader(archive)) {
+            assertEquals(2, reader.getSensorCount());
+            int exact = reader.findSensor("Gyroscope"), quantized = reader.findSensor("Linear Acceleration");
+            assertEquals(SAMPLES, reader.getSampleCount(quantized));
+            SampleStore exact_samples = reader.read(exact), quantized_samples = reader.read(quantized);
+            for (int index = 0; index < SAMPLES; ++index) {
+                assertEquals(timestamp(index), exact_samples.timestamps()[index]);
+                assertEquals(timestamp(index) + 1, quantized_samples.timestamps()[index]);
+                for (int axis = 0; axis < 3; ++axis) {
+                    assertEquals(values[index][axis], exact_samples.get(axis, index), 0);
+                    // The NaN sends that axis of its block back to floats
+                    assertEquals(values[index][axis], quantized_samples.get(axis, index), 0.5e-4 + 1e-12);
+                }
+            }
+
+            IMUTextLog events = reader.read(timestamp(15), Long.MAX_VALUE);
+            assertEquals(1, events.getEventCount());
+            assertEquals(IMURecord.SENSOR_CLOCK_SYNC, events.getEventType(0));
+            assertEquals(1200, events.getEventValue(0));
+            assertEquals(-35, events.getEventExtra(0));
+        }
+    }
+
+    @Test
+    public void read_returnsOnlyTheRequestedRange() throws IOException {
+        double[][] values = recording(2);
+        File archive = folder.newFile("range.imua");
+        try (IMUArchiveWriter writer = new IMUArchiveWriter(archive)) {
+            int sensor = writer.addSensor("Gyroscope", 3, 0);
+            for (int index = 0; index < SAMPLES; ++index) writer.addSample(sensor, timestamp(index), values[index], 0);
+        }
+        try (IMUArchiveReader reader = new IMUArchiveReader(archive)) {
+            assertEquals(3, reader.getBlockCount());
+            SampleStore range = reader.read(0, timestamp(4000), timestamp(8500));
+            assertEquals(4500, range.size());
+            assertEquals(timestamp(4000), range.timestamps()[0]);
+            assertEquals(values[8499][2], range.get(2, 4499), 0);
+            assertEquals(0, reader.read(0, timestamp(SAMPLES), Long.MAX_VALUE).size());
+        }
+    }
+
+    @Test
+    public void readEvents_findsOutOfOrderEventsByRangeAndSortsThem() throws IOException {
+        File archive = folder.newFile("events.imua");
+        // Drained the way the IMU writer does it, a batch of one ring and then one of the next, so that a block ends in
+        // the middle of a batch: the first block holds the event at BLOCK_SAMPLES but ends with an earlier one
+        int batches = 3 * IMUArchive.BLOCK_SAMPLES / 6;
+        try (IMUArchiveWriter writer = new IMUArchiveWriter(archive)) {
+            for (int batch = 0; batch < batches; ++batch) {
+                for (int index = 6 * batch; index < 6 * batch + 6; index += 2) {
+                    writer.addEvent(timestamp(index), IMURecord.SENSOR_CLOCK_SYNC, index, 0);
+                }
+                for (int index = 6 * batch + 1; index < 6 * batch + 6; index += 2) {
+                    writer.addEvent(timestamp(index), IMURecord.CAMERA_FRAME, index, 0);
+                }
+            }
+        }
+        try (IMUArchiveReader reader = new IMUArchiveReader(archive)) {
+            int from = IMUArchive.BLOCK_SAMPLES - 2, to = 2 * IMUArchive.BLOCK_SAMPLES + 5;
+            IMUTextLog log = reader.read(timestamp(from), timestamp(to));
+            assertEquals(to - from, log.getEventCount());
+            for (int index = 0; index < log.getEventCount(); ++index) {
+                assertEquals(timestamp(from + index), log.getEventTimestamp(index));
+                assertEquals(from + index, log.getEventValue(index));
+                assertEquals((from + index) % 2 == 0 ? IMURecord.SENSOR_CLOCK_SYNC : IMURecord.CAMERA_FRAME,
+                        log.getEventType(index));
+            }
+        }
+    }
+
+    @Test
+    public void convert_namesSensorsMissingFromTheHeaderByTheirId() throws IOException {
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        binary.write(IMURecord.encodeHeader(new byte[] {IMURecord.GYROSCOPE}, new String[] {"Gyroscope"}));
+        ByteBuffer record = ByteBuffer.allocate(IMURecord.SIZE);
+        IMURecord.putSample(record, 0, timestamp(0), IMURecord.GYROSCOPE, new float[] {1, 2, 3});
+        binary.write(record.array());
+        IMURecord.putSample(record, 0, timestamp(1), IMURecord.PRESSURE, new float[] {1013, 0, 0});
+        binary.write(record.array());
+
+        File binary_log = folder.newFile("unnamed.bin"), archive = folder.newFile("unnamed.imua");
+        Files.write(binary_log.toPath(), binary.toByteArray());
+        IMUArchiveWriter.convert(binary_log, archive, 0);
+        try (IMUArchiveReader reader = new IMUArchiveReader(archive)) {
+            assertEquals(2, reader.getSensorCount());
+            assertEquals(1013, reader.read(reader.findSensor("sensor " + IMURecord.PRESSURE)).get(0, 0), 0);
+        }
+    }
+
+    @Test
+    public void convert_binaryAndTextLogsGiveTheSameArchive() throws IOException {
+        double[][] values = recording(3);
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        binary.write(IMURecord.encodeHeader(new byte[] {IMURecord.LINEAR_ACCELERATION, IMURecord.GYROSCOPE},
+                new String[] {"Linear Acceleration", "Gyroscope"}));
+        ByteBuffer record = ByteBuffer.allocate(IMURecord.SIZE);
+        float[] sample = new float[3];
+        for (int index = 0; index < SAMPLES; ++index) {
+            for (int axis = 0; axis < 3; ++axis) sample[axis] = (float) values[index][axis];
+            IMURecord.putSample(record, 0, timestamp(index), index % 2 == 0 ? IMURecord.LINEAR_ACCELERATION
+                    : IMURecord.GYROSCOPE, sample);
+            binary.write(record.array());
+        }
+        IMURecord.putMarker(record, 0, timestamp(SAMPLES), IMURecord.VIDEO_START, 40, 0);
+        binary.write(record.array());
+
+        File binary_log = folder.newFile("imu.bin"), text_log = folder.newFile("imu.txt");
+        Files.write(binary_log.toPath(), binary.toByteArray());
+        try (Writer text_output = new OutputStreamWriter(new FileOutputStream(text_log), StandardCharsets.UTF_8)) {
+            IMURecord.exportText(new ByteArrayInputStream(binary.toByteArray()), text_output);
+        }
+
+        File from_binary = folder.newFile("binary.imua"), from_text = folder.newFile("text.imua");
+        IMUArchiveWriter.convert(binary_log, from_binary, 1e-4);
+        IMUArchiveWriter.convert(text_log, from_text, 1e-4);
+        assertArrayEquals(Files.readAllBytes(from_binary.toPath()), Files.readAllBytes(from_text.toPath()));
+        assertTrue(from_text.length() * 5 < text_log.length());
+
+        try (IMUArchiveReader reader = new IMUArchiveReader(from_binary)) {
+            IMUTextLog log = reader.read(Long.MIN_VALUE, Long.MAX_VALUE);
+            assertEquals(SAMPLES / 2, log.getSensor("Gyroscope").size());
+            assertEquals(1, log.getEventCount());
+            assertEquals(40, log.getEventValue(0));
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,68 @@
+package com.nyu.imu_processing;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class IMURecordTest {
+
+    @Test
+    public void exportText_matchesLegacyLayout() throws IOException {
+        ByteArrayOutputStream binary_output = new ByteArrayOutputStream();
+        binary_output.write(IMURecord.encodeHeader(new byte[] {IMURecord.LINEAR_ACCELERATION, IMURecord.GYROSCOPE},
+                new String[] {"Goldfish Linear Acceleration", "Goldfish 3-axis Gyroscope"}));
+        ByteBuffer record = ByteBuffer.allocate(IMURecord.SIZE);
+        float[] values = {0.25f, -1.5f, 9.80665f};
+        IMURecord.putSample(record, 0, 1578699792815L, IMURecord.GYROSCOPE, values);
+        binary_output.write(record.array(), 0, IMURecord.SIZE);
+        IMURecord.putMarker(record, 0, 1578699792900L, IMURecord.VIDEO_START, -85, 0);
+        binary_output.write(record.array(), 0, IMURecord.SIZE);
+        IMURecord.putMarker(record, 0, 1578699793000L, IMURecord.SENSOR_CLOCK_SYNC, 1200, -35);
+        binary_output.write(record.array(), 0, IMURecord.SIZE);
+        // A truncated record at the tail must be ignored
+        binary_output.write(record.array(), 0, IMURecord.SIZE / 2);
+
+        StringWriter text_output = new StringWriter();
+        IMURecord.exportText(new ByteArrayInputStream(binary_output.toByteArray()), text_output);
+        assertEquals("1578699792815 Goldfish 3-axis Gyroscope " + Arrays.toString(values) + "\n"
+                + "1578699792900 video recording started. Latency between IMU and camera: 85 (IMU started sooner)\n"
+                + "1578699793000 sensor clock sync: offset 1200 ns, drift -35 ppb\n",
+                text_output.toString());
+    }
+
+    @Test
+    public void putSample_writesAtOffset() {
+        ByteBuffer records = ByteBuffer.allocate(2 * IMURecord.SIZE);
+        IMURecord.putSample(records, 0, 1, IMURecord.LINEAR_ACCELERATION, new float[] {1, 2, 3});
+        IMURecord.putSample(records, IMURecord.SIZE, 2, IMURecord.GYROSCOPE, new float[] {4, 5, 6});
+        assertEquals(0, records.position());
+        assertEquals(1, records.getLong(0));
+        assertEquals(2, records.getLong(IMURecord.SIZE));
+        assertEquals(IMURecord.GYROSCOPE, records.get(IMURecord.SIZE + 8));
+        assertEquals(6f, records.getFloat(2 * IMURecord.SIZE - Float.BYTES), 0f);
+    }
+
+    @Test
+    public void putSample_padsChannelsWithFewerValues() throws IOException {
+        ByteArrayOutputStream binary_output = new ByteArrayOutputStream();
+        binary_output.write(IMURecord.encodeHeader(new byte[] {IMURecord.PRESSURE, IMURecord.GYROSCOPE_BIAS},
+                new String[] {"Barometer", "Gyroscope bias"}));
+        ByteBuffer record = ByteBuffer.allocate(IMURecord.SIZE);
+        IMURecord.putSample(record, 0, 10, IMURecord.PRESSURE, new float[] {1013.25f}, 0, 1);
+        binary_output.write(record.array(), 0, IMURecord.SIZE);
+        // The bias trails the rates in an uncalibrated gyroscope event
+        IMURecord.putSample(record, 0, 11, IMURecord.GYROSCOPE_BIAS, new float[] {1, 2, 3, 0.5f, 0.25f, -1}, 3, 3);
+        binary_output.write(record.array(), 0, IMURecord.SIZE);
+
+        StringWriter text_output = new StringWriter();
+        IMURecord.exportText(new ByteArrayInputStream(binary_output.toByteArray()), text_output);
+        assertEquals("10 Barometer [1013.25, 0.0, 0.0]\n11 Gyroscope bias [0.5, 0.25, -1.0]\n", text_output.toString());
+    }
+}
\ No newline at end of file
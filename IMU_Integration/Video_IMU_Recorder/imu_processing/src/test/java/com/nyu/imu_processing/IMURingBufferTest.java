@@ -0,0 +1,44 @@
+package com.nyu.imu_processing;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class IMURingBufferTest {
+
+    @Test
+    public void drainTo_preservesOrderAcrossWrapAround() throws IOException {
+        IMURingBuffer ring = new IMURingBuffer(4);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        float[] values = new float[3];
+        for (long timestamp = 0; timestamp < 10; ++timestamp) {
+            assertTrue(ring.offerSample(timestamp, IMURecord.GYROSCOPE, values, 0, 3));
+            if (timestamp % 3 == 2) ring.drainTo(output);
+        }
+        assertEquals(1, ring.drainTo(output));
+
+        ByteBuffer records = ByteBuffer.wrap(output.toByteArray());
+        assertEquals(10 * IMURecord.SIZE, records.remaining());
+        for (long timestamp = 0; timestamp < 10; ++timestamp) {
+            assertEquals(timestamp, records.getLong((int) timestamp * IMURecord.SIZE));
+        }
+    }
+
+    @Test
+    public void offer_countsOverrunsWhenFull() throws IOException {
+        IMURingBuffer ring = new IMURingBuffer(2);
+        float[] values = new float[3];
+        assertTrue(ring.offerSample(1, IMURecord.LINEAR_ACCELERATION, values, 0, 3));
+        assertTrue(ring.offerMarker(2, IMURecord.VIDEO_START, 0, 0));
+        assertFalse(ring.offerSample(3, IMURecord.LINEAR_ACCELERATION, values, 0, 3));
+        assertEquals(1, ring.getOverruns());
+
+        assertEquals(2, ring.drainTo(new ByteArrayOutputStream()));
+        assertTrue(ring.offerSample(4, IMURecord.LINEAR_ACCELERATION, values, 0, 3));
+        assertEquals(1, ring.size());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,110 @@
+package com.nyu.imu_processing;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class IMUTextLogParserTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void parse_readsSamplesAndEvents() throws IOException {
+        File log = folder.newFile("imu.txt");
+        Files.write(log.toPath(), ("1578699792815 Goldfish 3-axis Gyroscope [0.25, -1.5, 9.80665]\n"
+                + "1578699792900 video recording started. Latency between IMU and camera: 85 (IMU started sooner)\r\n"
+                + "1578699792950 Goldfish Linear Acceleration [1.0E-5, -3.4028235E38, NaN]\n"
+                + "not a sample\n"
+                + "1578699793000 sensor clock sync: offset 1200 ns, drift -35 ppb\n"
+                + "1578699793100 camera clock sync: offset -7 ns, drift 2 ppb\n"
+                + "1578699793200 marker 131 42 -1\n"
+                + "1578699793210 camera frame 17\n"
+                + "1578699793220 recording paused\n"
+                + "1578699793230 recording resumed\n"
+                + "1578699793300 Gyroscope Uncalibrated [1.0, 2.0, 3.0, 0.1, 0.2, 0.3]\n"
+                + "1578699793400 Goldfish 3-axis Gyroscope [0.5, 0.5]\n"
+                + "1578699793500 Goldfish 3-axis Gyroscope [-0.0, 7.0, 1.25]").getBytes(StandardCharsets.UTF_8));
+
+        IMUTextLog parsed = IMUTextLogParser.parse(log);
+        assertEquals(Arrays.asList("Goldfish 3-axis Gyroscope", "Goldfish Linear Acceleration", "Gyroscope Uncalibrated"),
+                Arrays.asList(parsed.getSensors().keySet().toArray()));
+        SampleStore gyroscope = parsed.getSensor("Goldfish 3-axis Gyroscope");
+        assertEquals(2, gyroscope.size());
+        assertEquals(1578699793500L, gyroscope.timestamps()[1]);
+        assertEquals((float) 9.80665, gyroscope.get(2, 0), 0);
+        assertEquals(1.25, gyroscope.get(2, 1), 0);
+        SampleStore acceleration = parsed.getSensor("Goldfish Linear Acceleration");
+        assertEquals(1.0E-5f, acceleration.get(0, 0), 0);
+        assertEquals(-Float.MAX_VALUE, acceleration.get(1, 0), 0);
+        assertTrue(Double.isNaN(acceleration.get(2, 0)));
+        assertEquals(6, parsed.getSensor("Gyroscope Uncalibrated").getAxes());
+
+        assertEquals(7, parsed.getEventCount());
+        assertEquals(IMURecord.VIDEO_START, parsed.getEventType(0));
+        assertEquals(-85, parsed.getEventValue(0));
+        assertEquals(IMURecord.SENSOR_CLOCK_SYNC, parsed.getEventType(1));
+        assertEquals(1200, parsed.getEventValue(1));
+        assertEquals(-35, parsed.getEventExtra(1));
+        assertEquals(IMURecord.CAMERA_CLOCK_SYNC, parsed.getEventType(2));
+        assertEquals(-7, parsed.getEventValue(2));
+        assertEquals((byte) 131, parsed.getEventType(3));
+        assertEquals(42, parsed.getEventValue(3));
+        assertEquals(IMURecord.CAMERA_FRAME, parsed.getEventType(4));
+        assertEquals(17, parsed.getEventValue(4));
+        assertEquals(IMURecord.RECORDING_PAUSED, parsed.getEventType(5));
+        assertEquals(IMURecord.RECORDING_RESUMED, parsed.getEventType(6));
+        // "not a sample" and the gyroscope line with two values
+        assertEquals(2, parsed.getMalformedLines());
+    }
+
+    @Test
+    public void parse_chunksMatchSingleChunkAndRoundTripFloats() throws IOException {
+        Random random = new Random(3);
+        float[][] expected = new float[5000][3];
+        StringBuilder text = new StringBuilder();
+        for (int index = 0; index < expected.length; ++index) {
+            for (int axis = 0; axis < 3; ++axis) {
+                expected[index][axis] = (float) (random.nextGaussian() * Math.pow(10, random.nextInt(12) - 6));
+            }
+            text.append(1000L * index).append(index % 2 == 0 ? " Accelerometer " : " Gyroscope ")
+                    .append(Arrays.toString(expected[index])).append('\n');
+            if (index % 1000 == 0) text.append(1000L * index).append(" sensor clock sync: offset 5 ns, drift 1 ppb\n");
+        }
+        File log = folder.newFile("long.txt");
+        Files.write(log.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            IMUTextLog chunked = IMUTextLogParser.parse(log, 997, pool);
+            IMUTextLog whole = IMUTextLogParser.parse(log, Integer.MAX_VALUE, pool);
+            assertEquals(0, chunked.getMalformedLines());
+            assertEquals(5, chunked.getEventCount());
+            for (String name : new String[] {"Accelerometer", "Gyroscope"}) {
+                SampleStore samples = chunked.getSensor(name);
+                assertEquals(2500, samples.size());
+                assertArrayEquals(Arrays.copyOf(whole.getSensor(name).timestamps(), 2500),
+                        Arrays.copyOf(samples.timestamps(), 2500));
+                int first = name.equals("Accelerometer") ? 0 : 1;
+                for (int index = 0; index < samples.size(); ++index) {
+                    assertEquals(1000L * (2 * index + first), samples.timestamps()[index]);
+                    for (int axis = 0; axis < 3; ++axis) {
+                        assertEquals(expected[2 * index + first][axis], samples.get(axis, index), 0);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,56 @@
+package com.nyu.imu_processing;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class KalmanFilterTest {
+
+    @Test
+    public void scalarFilter_matchesClosedForm() {
+        KalmanFilter filter = new KalmanFilter(0.0, 1.0, 0.01, 0.1);
+        filter.predict();
+        // P = 1.01, K = 1.01 / 1.11
+        assertEquals(1.01 / 1.11 * 2.0, filter.update(2.0), 1e-12);
+        assertEquals((1 - 1.01 / 1.11) * 1.01, filter.getCovariance()[0], 1e-12);
+    }
+
+    @Test
+    public void filter_batchMatchesStepwise() {
+        double[] measurements = {1, 2, 0.5, 3, -1, 4, 2, 2.5};
+        double[] states = new double[measurements.length];
+        new KalmanFilter(0.0, 1.0, 0.01, 0.1).filter(null, measurements, states, measurements.length);
+
+        KalmanFilter stepwise = new KalmanFilter(0.0, 1.0, 0.01, 0.1);
+        for (int index = 0; index < measurements.length; ++index) {
+            stepwise.predict();
+            assertEquals(stepwise.update(measurements[index]), states[index], 1e-12);
+        }
+    }
+
+    @Test
+    public void positionVelocityBias_estimatesAccelerometerBias() {
+        double dT = 0.01;
+        KalmanFilter filter = KalmanFilter.positionVelocityBias(3, dT, 0.05, 1e-4, 0.01);
+        Random random = new Random(3);
+        double[] bias = {0.2, -0.1, 0.05};
+        double[] acceleration = new double[3];
+        double[] position = new double[3];
+        // The device is actually still: the accelerometer reads only its bias plus noise, position fixes read zero
+        for (int step = 0; step < 3000; ++step) {
+            for (int axis = 0; axis < 3; ++axis) {
+                acceleration[axis] = bias[axis] + 0.05 * random.nextGaussian();
+                position[axis] = 0.01 * random.nextGaussian();
+            }
+            filter.predict(acceleration, 0);
+            filter.update(position, 0);
+        }
+        double[] state = filter.getState();
+        for (int axis = 0; axis < 3; ++axis) {
+            assertEquals(bias[axis], state[3 * axis + 2], 0.03);
+            assertEquals(0, state[3 * axis + 1], 0.02);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,48 @@
+package com.nyu.imu_processing;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SampleStoreTest {
+
+    @Test
+    public void add_growsAndKeepsColumnsAligned() {
+        SampleStore store = new SampleStore(3, 2);
+        for (int index = 0; index < 100; ++index) store.add(1000L * index, index, -index, 0.5 * index);
+
+        assertEquals(100, store.size());
+        assertEquals(1000.0, store.averageInterval(), 0);
+        for (int index = 0; index < 100; ++index) {
+            assertEquals(1000L * index, store.timestamps()[index]);
+            assertEquals(index, store.column(0)[index], 0);
+            assertEquals(-index, store.column(1)[index], 0);
+            assertEquals(0.5 * index, store.get(2, index), 0);
+        }
+        store.trimToSize();
+        assertEquals(100, store.column(2).length);
+        assertEquals(100, store.timestamps().length);
+    }
+
+    @Test
+    public void collectsStreamAndFiltersColumnsInPlace() {
+        SampleStore store = new SampleStore(2, 16);
+        KalmanStage kalman = new KalmanStage(KalmanFilter.positionVelocityBias(2, 0.01, 1, 0.01, 0.1));
+        kalman.then(store);
+        double[] sample = new double[2];
+        for (int index = 0; index < 50; ++index) {
+            sample[0] = index;
+            sample[1] = 2 * index;
+            kalman.accept(index, sample, 0);
+        }
+        assertEquals(50, store.size());
+
+        double[] before = store.column(1).clone();
+        ButterworthStage high_pass = ButterworthStage.highPass(2, 2, 1, 100);
+        high_pass.filter(1, store.column(1), 0, store.size());
+        ButterworthStage reference = ButterworthStage.highPass(2, 2, 1, 100);
+        for (int index = 0; index < store.size(); ++index) {
+            assertEquals(reference.process(1, before[index]), store.get(1, index), 1e-12);
+        }
+    }
+}
\ No newline at end of file
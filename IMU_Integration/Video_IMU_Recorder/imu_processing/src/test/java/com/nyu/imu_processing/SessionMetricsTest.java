@@ -0,0 +1,106 @@
+package com.nyu.imu_processing;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class SessionMetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void histogram_percentilesWithinBucketResolution() {
+        Histogram histogram = new Histogram();
+        for (long value = 1; value <= 10000; ++value) histogram.record(value * 1000);
+        assertEquals(10000, histogram.getCount());
+        assertEquals(10000000, histogram.getMax());
+        // Buckets are 1/8 of a power of two wide, so a percentile is at most 12.5% above the exact value
+        long median = histogram.percentile(0.5);
+        assertTrue(median >= 5000000 && median <= 5000000 * 1.125);
+        long p99 = histogram.percentile(0.99);
+        assertTrue(p99 >= 9900000 && p99 <= 10000000);
+        assertEquals(1000, histogram.percentile(0), 1000 / Histogram.SUB_BUCKETS);
+    }
+
+    @Test
+    public void histogram_bucketsCoverWholeRange() {
+        assertEquals(Histogram.BUCKETS - 1, Histogram.bucket(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, Histogram.bucketLimit(Histogram.BUCKETS - 1));
+        for (int bucket = 0; bucket < Histogram.BUCKETS - 1; ++bucket) {
+            long limit = Histogram.bucketLimit(bucket);
+            assertEquals(bucket, Histogram.bucket(limit));
+            assertEquals(bucket + 1, Histogram.bucket(limit + 1));
+        }
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.percentile(1));
+    }
+
+    @Test
+    public void onSample_recordsIntervalsPerSensor() {
+        SessionMetrics metrics = new SessionMetrics(IMURecord.LINEAR_ACCELERATION, IMURecord.GYROSCOPE);
+        for (int sample = 0; sample < 100; ++sample) {
+            metrics.onSample(IMURecord.GYROSCOPE, 5000000L * sample + 1);
+            metrics.onSample(IMURecord.LINEAR_ACCELERATION, 10000000L * sample + 1);
+        }
+        // Untracked sensors are ignored
+        metrics.onSample((byte) 7, 1);
+        assertEquals(99, metrics.getInterval(IMURecord.GYROSCOPE).getCount());
+        assertEquals(5000000, metrics.getInterval(IMURecord.GYROSCOPE).getMax());
+        assertEquals(10000000, metrics.getInterval(IMURecord.LINEAR_ACCELERATION).getMax());
+        assertNull(metrics.getInterval((byte) 7));
+    }
+
+    @Test
+    public void writeSummary_roundTripsThroughTextLayout() throws IOException {
+        SessionMetrics metrics = new SessionMetrics(IMURecord.LINEAR_ACCELERATION, IMURecord.GYROSCOPE);
+        metrics.add(SessionMetrics.BYTES_WRITTEN, 2100);
+        metrics.add(SessionMetrics.BYTES_WRITTEN, 420);
+        metrics.set(SessionMetrics.RECORDS_DROPPED, 3);
+        metrics.getWriteLatency().record(7);
+        metrics.onSample(IMURecord.GYROSCOPE, 1000);
+        metrics.onSample(IMURecord.GYROSCOPE, 6000);
+
+        ByteArrayOutputStream binary_output = new ByteArrayOutputStream();
+        binary_output.write(IMURecord.encodeHeader(new byte[] {IMURecord.GYROSCOPE}, new String[] {"Gyroscope"}));
+        metrics.writeSummary(1578699793000L, binary_output);
+        StringWriter text_output = new StringWriter();
+        IMURecord.exportText(new ByteArrayInputStream(binary_output.toByteArray()), text_output);
+        // Metrics that were never updated (frame counters here) are left out
+        String text = text_output.toString();
+        assertEquals("1578699793000 metric bytes_written 2520\n"
+                + "1578699793000 metric records_dropped 3\n"
+                + "1578699793000 metric write_latency_p50_ns 7\n"
+                + "1578699793000 metric write_latency_p99_ns 7\n"
+                + "1578699793000 metric write_latency_max_ns 7\n"
+                + "1578699793000 metric interval_p50_ns/1 5000\n"
+                + "1578699793000 metric interval_p99_ns/1 5000\n"
+                + "1578699793000 metric interval_max_ns/1 5000\n", text);
+
+        File log = folder.newFile("metrics.txt");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(log), StandardCharsets.UTF_8)) {
+            writer.write(text);
+        }
+        IMUTextLog parsed = IMUTextLogParser.parse(log);
+        assertEquals(0, parsed.getMalformedLines());
+        assertEquals(8, parsed.getEventCount());
+        assertEquals(IMURecord.METRICS, parsed.getEventType(0));
+        assertEquals(2520, parsed.getEventValue(0));
+        assertEquals(SessionMetrics.BYTES_WRITTEN, parsed.getEventExtra(0));
+        assertEquals(SessionMetrics.INTERVAL_MAX | IMURecord.GYROSCOPE << 8, parsed.getEventExtra(7));
+        assertEquals(5000, parsed.getEventValue(7));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,98 @@
+package com.nyu.imu_processing;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StrapdownIntegratorTest {
+
+    private static final double DT = 0.005;
+    private static final int STEPS = 400;
+
+    // Body acceleration that a constant world acceleration gives while rotating at a constant rate about an axis
+    private static void bodyAcceleration(double angle, double[] axis, double[] world, double[] out) {
+        // Rotate the world vector by -angle about the axis (Rodrigues)
+        double c = Math.cos(-angle), s = Math.sin(-angle);
+        double dot = axis[0] * world[0] + axis[1] * world[1] + axis[2] * world[2];
+        double[] cross = {axis[1] * world[2] - axis[2] * world[1], axis[2] * world[0] - axis[0] * world[2],
+                axis[0] * world[1] - axis[1] * world[0]};
+        for (int index = 0; index < 3; ++index) {
+            out[index] = world[index] * c + cross[index] * s + axis[index] * dot * (1 - c);
+        }
+    }
+
+    @Test
+    public void constantRotation_keepsWorldAccelerationAndIntegratesIt() {
+        double norm = Math.sqrt(3);
+        double[] axis = {1 / norm, 1 / norm, 1 / norm};
+        double rate = 1.5;
+        double[] world = {1, 0.5, -0.2};
+        double[] gyroscope = {rate * axis[0], rate * axis[1], rate * axis[2]}, acceleration = new double[3];
+
+        for (StrapdownIntegrator.Method method : StrapdownIntegrator.Method.values()) {
+            StrapdownIntegrator integrator = new StrapdownIntegrator(method);
+            for (int step = 0; step <= STEPS; ++step) {
+                bodyAcceleration(rate * step * DT, axis, world, acceleration);
+                integrator.step(step, DT, gyroscope, 0, acceleration, 0);
+            }
+            double time = STEPS * DT;
+            double[] orientation = integrator.getOrientation();
+            assertEquals(Math.cos(rate * time / 2), orientation[0], 1e-9);
+            assertEquals(Math.sin(rate * time / 2) * axis[2], orientation[3], 1e-9);
+            // RK4 interpolates the body acceleration linearly across a step, an error of order (rate dt)^2
+            for (int index = 0; index < 3; ++index) {
+                assertEquals(method.name(), world[index] * time, integrator.getVelocity()[index], 1e-4);
+                assertEquals(method.name(), 0.5 * world[index] * time * time, integrator.getPosition()[index], 1e-4);
+            }
+        }
+    }
+
+    @Test
+    public void gravity_isRemovedFromRawAcceleration() {
+        StrapdownIntegrator integrator = new StrapdownIntegrator(StrapdownIntegrator.Method.RK4);
+        integrator.setGravity(0, 0, 9.81);
+        // Lying on its side: body x points up
+        integrator.reset(Math.cos(-Math.PI / 4), 0, Math.sin(-Math.PI / 4), 0);
+        double[] gyroscope = new double[3], acceleration = {9.81, 0, 0};
+        for (int step = 0; step <= STEPS; ++step) integrator.step(step, DT, gyroscope, 0, acceleration, 0);
+        for (int index = 0; index < 3; ++index) assertEquals(0, integrator.getPosition()[index], 1e-9);
+    }
+
+    @Test
+    public void filters_removeBiasDrift() {
+        double[] gyroscope = new double[3], biased = {0.1, 0, 0};
+
+        StrapdownIntegrator raw = new StrapdownIntegrator(StrapdownIntegrator.Method.TRAPEZOIDAL);
+        StrapdownIntegrator filtered = new StrapdownIntegrator(StrapdownIntegrator.Method.TRAPEZOIDAL);
+        filtered.setAccelerationFilter(ButterworthStage.highPass(3, 2, 0.5, 1 / DT));
+        StrapdownIntegrator velocity_filtered = new StrapdownIntegrator(StrapdownIntegrator.Method.RK4);
+        velocity_filtered.setVelocityFilter(ButterworthStage.highPass(3, 1, 0.5, 1 / DT));
+        for (int step = 0; step <= 10 * STEPS; ++step) {
+            raw.step(step, DT, gyroscope, 0, biased, 0);
+            filtered.step(step, DT, gyroscope, 0, biased, 0);
+            velocity_filtered.step(step, DT, gyroscope, 0, biased, 0);
+        }
+        assertEquals(2.0, raw.getVelocity()[0], 1e-9);
+        assertTrue(Math.abs(filtered.getVelocity()[0]) < 0.05);
+        assertTrue(Math.abs(velocity_filtered.getVelocity()[0]) < 0.01);
+        assertTrue(Math.abs(velocity_filtered.getPosition()[0]) < 0.2);
+    }
+
+    @Test
+    public void integrate_pushesEveryStepToTheOutput() {
+        SampleStore gyroscope = new SampleStore(3, 16), acceleration = new SampleStore(3, 16);
+        for (int step = 0; step < 100; ++step) {
+            gyroscope.add(5_000_000L * step, 0, 0, 0.2);
+            acceleration.add(5_000_000L * step, 0.3, 0, 0);
+        }
+        SampleStore states = new SampleStore(StrapdownIntegrator.OUTPUT_CHANNELS, 16);
+        StrapdownIntegrator integrator = new StrapdownIntegrator(StrapdownIntegrator.Method.RK4);
+        integrator.setOutput(states);
+        integrator.integrate(gyroscope, acceleration);
+
+        assertEquals(100, states.size());
+        assertEquals(1.0, states.get(0, 0), 0);
+        assertEquals(Math.sin(0.2 * 99 * 0.005 / 2), states.get(3, 99), 1e-9);
+        assertEquals(integrator.getPosition()[1], states.get(8, 99), 0);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,103 @@
+package com.nyu.imu_processing;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StreamResamplerTest {
+
+    private static final long MS = 1_000_000;
+
+    private static double accelerometer(long timestamp) {
+        return 0.5 + 2e-9 * timestamp;
+    }
+
+    // Rotation about z at 1 rad/s
+    private static void orientation(long timestamp, double[] out, int offset) {
+        double half = 0.5 * timestamp * 1e-9;
+        out[offset] = Math.cos(half);
+        out[offset + 1] = out[offset + 2] = 0;
+        out[offset + 3] = Math.sin(half);
+    }
+
+    @Test
+    public void uniformGrid_interpolatesInterleavedJitteryStreams() {
+        StreamResampler resampler = new StreamResampler(10 * MS, 64);
+        int linear = resampler.addLane(1, StreamResampler.Interpolation.LINEAR);
+        int rotation = resampler.addLane(4, StreamResampler.Interpolation.SLERP);
+        SampleStore output = resampler.then(new SampleStore(resampler.getOutputChannels(), 16));
+
+        Random random = new Random(5);
+        long accelerometer_time = 3 * MS, gyroscope_time = 0;
+        double[] sample = new double[4];
+        // Push in arrival order, the way the two sensors interleave in a log
+        while (accelerometer_time < 2000 * MS || gyroscope_time < 2000 * MS) {
+            if (accelerometer_time <= gyroscope_time) {
+                sample[0] = accelerometer(accelerometer_time);
+                resampler.lane(linear).accept(accelerometer_time, sample, 0);
+                accelerometer_time += 4 * MS + random.nextInt((int) (2 * MS));
+            } else {
+                orientation(gyroscope_time, sample, 0);
+                resampler.lane(rotation).accept(gyroscope_time, sample, 0);
+                gyroscope_time += 5 * MS + random.nextInt((int) (3 * MS));
+            }
+        }
+        resampler.lane(linear).finish();
+        resampler.lane(rotation).finish();
+
+        assertTrue(output.size() > 190);
+        assertEquals(0, resampler.getDroppedSamples());
+        double[] expected = new double[4];
+        for (int index = 0; index < output.size(); ++index) {
+            long timestamp = output.timestamps()[index];
+            assertEquals(output.timestamps()[0] + 10 * MS * index, timestamp);
+            assertEquals(accelerometer(timestamp), output.get(0, index), 1e-9);
+            orientation(timestamp, expected, 0);
+            for (int axis = 0; axis < 4; ++axis) assertEquals(expected[axis], output.get(1 + axis, index), 1e-9);
+        }
+    }
+
+    @Test
+    public void cameraTargets_areInterpolatedInOrderAndEarlyOnesSkipped() {
+        StreamResampler resampler = new StreamResampler(16);
+        int lane = resampler.addLane(1, StreamResampler.Interpolation.LINEAR);
+        SampleStore output = resampler.then(new SampleStore(1, 16));
+
+        resampler.addTarget(5 * MS);
+        double[] sample = new double[1];
+        for (long timestamp = 10 * MS; timestamp <= 100 * MS; timestamp += 10 * MS) {
+            sample[0] = accelerometer(timestamp);
+            resampler.lane(lane).accept(timestamp, sample, 0);
+            if (timestamp == 50 * MS) resampler.addTarget(33 * MS);
+        }
+        resampler.addTarget(66 * MS);
+        resampler.addTarget(150 * MS);
+        resampler.lane(lane).finish();
+
+        assertEquals(2, output.size());
+        assertEquals(33 * MS, output.timestamps()[0]);
+        assertEquals(accelerometer(33 * MS), output.get(0, 0), 1e-9);
+        assertEquals(66 * MS, output.timestamps()[1]);
+    }
+
+    @Test
+    public void stalledLane_boundsTheOtherLanesBuffer() {
+        StreamResampler resampler = new StreamResampler(10 * MS, 8);
+        int fast = resampler.addLane(1, StreamResampler.Interpolation.LINEAR);
+        int stalled = resampler.addLane(1, StreamResampler.Interpolation.LINEAR);
+        SampleStore output = resampler.then(new SampleStore(2, 16));
+
+        double[] sample = {1};
+        resampler.lane(stalled).accept(0, sample, 0);
+        for (long timestamp = 0; timestamp < 1000 * MS; timestamp += 5 * MS) resampler.lane(fast).accept(timestamp, sample, 0);
+        // Grid times the fast lane has dropped the samples for are skipped, which releases half of them as unneeded
+        assertEquals(1, output.size());
+        assertTrue(resampler.getDroppedSamples() > 90);
+
+        // Once the stalled lane moves again the grid continues from the samples still held
+        resampler.lane(stalled).accept(1000 * MS, sample, 0);
+        assertTrue(output.size() > 1);
+    }
+}
\ No newline at end of file